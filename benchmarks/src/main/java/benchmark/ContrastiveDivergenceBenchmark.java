@@ -0,0 +1,66 @@
+package benchmark;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.RBM;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.learn.ContrastiveDivergence;
+import nn.rbm.learn.LearningParameters;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single CD-1 epoch over one batch. shape is "batch x visible x hidden".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContrastiveDivergenceBenchmark {
+
+    @Param({"10x64x32", "100x784x100", "100x784x500", "500x784x500"})
+    public String shape;
+
+    private ContrastiveDivergence contrastiveDivergence;
+
+    private RBM rbm;
+
+    private Matrix batch;
+
+    @Setup
+    public void setup() {
+        Logger.getLogger(ContrastiveDivergence.class).setLevel(Level.WARN);
+
+        final String[] dimensions = shape.split("x");
+        final int rows = Integer.parseInt(dimensions[0]);
+        final int visible = Integer.parseInt(dimensions[1]);
+        final int hidden = Integer.parseInt(dimensions[2]);
+
+        contrastiveDivergence = new ContrastiveDivergence(new LearningParameters().setEpochs(1));
+        rbm = new RandomRBMFactory().build(visible, hidden);
+        batch = DenseMatrix.random(rows, visible).apply(new Round(0.5));
+    }
+
+    @Benchmark
+    public RBM epoch() {
+        contrastiveDivergence.learn(rbm, batch);
+        return rbm;
+    }
+
+}
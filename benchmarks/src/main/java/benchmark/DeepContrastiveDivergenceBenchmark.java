@@ -0,0 +1,64 @@
+package benchmark;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.learn.DeepContrastiveDivergence;
+import nn.rbm.learn.LearningParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inference through the MNIST shaped deep rbm from TestDeepContrastiveDivergence, 784 in, 100 out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeepContrastiveDivergenceBenchmark {
+
+    @Param({"1", "100"})
+    public int rows;
+
+    private DeepContrastiveDivergence deepContrastiveDivergence;
+
+    private DeepRBM deepRBM;
+
+    private Matrix dataSet;
+
+    @Setup
+    public void setup() {
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+                new LayerParameters().setNumRBMS(16).setVisibleUnitsPerRBM(49).setHiddenUnitsPerRBM(10),
+                new LayerParameters().setNumRBMS(8).setVisibleUnitsPerRBM(20).setHiddenUnitsPerRBM(10),
+                new LayerParameters().setNumRBMS(4).setVisibleUnitsPerRBM(20).setHiddenUnitsPerRBM(10),
+                new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(20).setHiddenUnitsPerRBM(10),
+                new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(20).setHiddenUnitsPerRBM(100)
+        };
+        deepRBM = new DeepRBM(layerParameters, new RandomRBMFactory());
+        deepContrastiveDivergence = new DeepContrastiveDivergence(new LearningParameters());
+        dataSet = DenseMatrix.random(rows, deepRBM.getVisibleSize()).apply(new Round(0.5));
+    }
+
+    @Benchmark
+    public Matrix runVisible() {
+        return deepContrastiveDivergence.runVisible(deepRBM, dataSet);
+    }
+
+}
@@ -0,0 +1,76 @@
+package benchmark;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Sigmoid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dense matrix primitives used by every trainer. Square n x n operands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+    @Param({"64", "256", "784"})
+    public int size;
+
+    private final Sigmoid sigmoid = new Sigmoid();
+
+    private Matrix a;
+
+    private Matrix b;
+
+    private Matrix[] pieces;
+
+    @Setup
+    public void setup() {
+        a = DenseMatrix.random(size, size);
+        b = DenseMatrix.random(size, size);
+        pieces = a.splitColumns(4).toArray(new Matrix[4]);
+    }
+
+    @Benchmark
+    public Matrix dot() {
+        return a.dot(b);
+    }
+
+    @Benchmark
+    public Matrix transpose() {
+        // transpose() is a view, copy to measure the materialized transpose the trainers used to pay for
+        return a.transpose().copy();
+    }
+
+    @Benchmark
+    public Matrix apply() {
+        return a.copy().apply(sigmoid);
+    }
+
+    @Benchmark
+    public double[][] concatColumns() {
+        return Matrix.concatColumns(pieces);
+    }
+
+    @Benchmark
+    public List<Matrix> splitColumns() {
+        return a.splitColumns(4);
+    }
+
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import cern.colt.function.tdouble.DoubleFunction;
+import math.functions.LookupSigmoid;
+import math.functions.RationalSigmoid;
+import math.functions.Sigmoid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The exact sigmoid against its approximations, over 65536 activations in [-16, 16).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigmoidBenchmark {
+
+    @Param({"Sigmoid", "LookupSigmoid", "RationalSigmoid"})
+    public String function;
+
+    private DoubleFunction sigmoid;
+
+    private double[] xs;
+
+    @Setup
+    public void setup() {
+        switch(function) {
+            case "LookupSigmoid":
+                sigmoid = new LookupSigmoid();
+                break;
+            case "RationalSigmoid":
+                sigmoid = new RationalSigmoid();
+                break;
+            default:
+                sigmoid = new Sigmoid();
+        }
+        xs = new double[1 << 16];
+        for(int i = 0; i < xs.length; i++) {
+            xs[i] = (i - xs.length / 2) / 2048.0;
+        }
+    }
+
+    @Benchmark
+    public double apply() {
+        double sum = 0.0;
+        for(double x : xs) {
+            sum += sigmoid.apply(x);
+        }
+        return sum;
+    }
+
+}
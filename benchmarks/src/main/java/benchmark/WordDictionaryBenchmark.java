@@ -0,0 +1,47 @@
+package benchmark;
+
+import math.Matrix;
+import nlp.WordDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest word lookup against the bundled 100k word dictionary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WordDictionaryBenchmark {
+
+    private WordDictionary wordDictionary;
+
+    private Matrix wordVector;
+
+    @Setup
+    public void setup() {
+        wordDictionary = new WordDictionary("/data/nlp/english_top100k.txt");
+        wordVector = wordDictionary.getVector("benchmark");
+        if(wordVector == null) {
+            wordVector = wordDictionary.getWordVectors().get(0);
+        }
+    }
+
+    @Benchmark
+    public String getClosestWord() {
+        return wordDictionary.getClosestWord(wordVector);
+    }
+
+}
@@ -0,0 +1,23 @@
+package data.batch;
+
+import math.Matrix;
+
+/**
+ * A source of training mini-batches. Each batch is a Matrix where each row represents a single training set.
+ * Implementations are free to load or generate batches on demand so that the full corpus never has to be resident
+ * in memory at once, e.g. reading them from disk or building them from a generator.
+ */
+public interface BatchSource {
+
+    /**
+     * @return the number of batches available per epoch
+     */
+    int size();
+
+    /**
+     * @param batch index of the batch, 0 <= batch < size()
+     * @return the batch, may be freshly loaded on every call
+     */
+    Matrix get(final int batch);
+
+}
@@ -0,0 +1,30 @@
+package data.batch;
+
+import math.Matrix;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Batch source backed by matrices already resident in memory
+ */
+public class ListBatchSource implements BatchSource {
+
+    private final List<Matrix> batches;
+
+    public ListBatchSource(final Collection<Matrix> batches) {
+        this.batches = new ArrayList<>(batches);
+    }
+
+    @Override
+    public int size() {
+        return batches.size();
+    }
+
+    @Override
+    public Matrix get(final int batch) {
+        return batches.get(batch);
+    }
+
+}
@@ -0,0 +1,127 @@
+package data.mnist;
+
+import data.batch.BatchSource;
+import math.DenseMatrix;
+import math.Matrix;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File backed batch source over an idx3 image file (see MNISTImageLoader for the format).
+ * Only the requested batch is read from disk, the rest of the file is never loaded into memory.
+ * Pixel values are divided by the scale, i.e. 255.0 to normalize to [0,1]
+ * The file is opened once and read with positional reads, so get() may be called concurrently. Close when done.
+ */
+public class MNISTBatchSource implements BatchSource, Closeable {
+
+    public static final int MAGIC_NUMBER = 2051;
+
+    private static final int HEADER_SIZE = 16;
+
+    private final String file;
+
+    private final FileChannel channel;
+
+    private final int batchSize;
+
+    private final double scale;
+
+    private final int numberImages;
+
+    private final int imageSize;
+
+    public MNISTBatchSource(final String file, final int batchSize) {
+        this(file, batchSize, 255.0);
+    }
+
+    public MNISTBatchSource(final String file, final int batchSize, final double scale) {
+        this.file = file;
+        this.batchSize = batchSize;
+        this.scale = scale;
+        try {
+            this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to open " + file, e);
+        }
+        try {
+            final ByteBuffer header = read(0, HEADER_SIZE);
+            final int magicNumber = header.getInt();
+            if(magicNumber != MAGIC_NUMBER) {
+                throw new IllegalArgumentException(file + " is not an idx3 image file, magic number " + magicNumber + " != " + MAGIC_NUMBER);
+            }
+            this.numberImages = header.getInt();
+            this.imageSize = header.getInt() * header.getInt();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new IllegalArgumentException("Failed to read idx3 header from " + file, e);
+        } catch (RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return (numberImages + batchSize - 1) / batchSize;
+    }
+
+    @Override
+    public Matrix get(final int batch) {
+        final int start = batch * batchSize;
+        final int rows = Math.min(batchSize, numberImages - start);
+        final ByteBuffer byteBuffer;
+        try {
+            byteBuffer = read(HEADER_SIZE + (long) start * imageSize, rows * imageSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read batch " + batch + " from " + file, e);
+        }
+
+        final double[][] data = new double[rows][imageSize];
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < imageSize; j++) {
+                data[i][j] = (byteBuffer.get() & 0xFF) / scale;
+            }
+        }
+        return DenseMatrix.make(data);
+    }
+
+    // read length bytes at position, positional reads leave the channel's position alone so callers do not race
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(file + " is truncated, expected " + length + " bytes at " + position);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int getNumberImages() {
+        return numberImages;
+    }
+
+    public int getImageSize() {
+        return imageSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // already failing
+        }
+    }
+
+}
@@ -0,0 +1,324 @@
+package math;
+
+import cern.colt.function.tdouble.DoubleDoubleFunction;
+import cern.colt.function.tdouble.DoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matrix of binary (0/1) values packed into long[] words, e.g. sampled hidden/visible states or 1-bit images.
+ * Any non zero value written to it is stored as 1. Element-wise arithmetic (apply, add, subtract, multiply, ...) is
+ * not done in place, its results need not be 0/1, so they are returned in a new DenseMatrix and this is left unchanged.
+ * Uses 1/64th of the memory of a DenseMatrix, and products with a dense matrix reduce to adding up the dense rows
+ * (or columns) selected by the set bits instead of multiplying.
+ * Products always produce a non binary matrix of the other operand's storage type.
+ */
+public class BinaryMatrix extends Matrix {
+
+    protected BinaryMatrix(BitBackedDoubleMatrix2D bitMatrix2D) {
+        super(bitMatrix2D);
+    }
+
+    /* IMMUTABLE OPERATIONS */
+
+    @Override
+    public Matrix copy() {
+        return make(m.copy());
+    }
+
+    @Override
+    public Matrix transpose() {
+        return make(m.viewDice().copy());
+    }
+
+    @Override
+    public Matrix dot(Matrix m2) {
+        return dot(m2, productLike(m2, rows(), m2.columns()));
+    }
+
+    @Override
+    public Matrix dotTransposeLeft(Matrix m2) {
+        return dotTransposeLeft(m2, productLike(m2, columns(), m2.columns()));
+    }
+
+    @Override
+    public Matrix dotTransposeRight(Matrix m2) {
+        return dotTransposeRight(m2, productLike(m2, rows(), m2.rows()));
+    }
+
+    @Override
+    public Matrix addColumns(final Matrix m2) {
+        final Matrix appended = make(rows(), columns() + m2.columns());
+        appended.data().viewPart(0, 0, rows(), columns()).assign(m);
+        appended.data().viewPart(0, columns(), rows(), m2.columns()).assign(m2.data());
+        return appended;
+    }
+
+    @Override
+    public Matrix addRows(final Matrix m2) {
+        final Matrix appended = make(rows() + m2.rows(), columns());
+        appended.data().viewPart(0, 0, rows(), columns()).assign(m);
+        appended.data().viewPart(rows(), 0, m2.rows(), columns()).assign(m2.data());
+        return appended;
+    }
+
+    @Override
+    public List<Matrix> splitColumns(int numPieces) {
+        List<double[][]> pieces = Matrix.splitColumns(this, numPieces);
+        List<Matrix> mPieces = new ArrayList<>(pieces.size());
+        for(double[][] piece : pieces) {
+            mPieces.add(BinaryMatrix.make(piece));
+        }
+        return mPieces;
+    }
+
+    @Override
+    public Matrix viewRows(int row, int rows) {
+        return new BinaryMatrix((BitBackedDoubleMatrix2D) m.viewPart(row, 0, rows, m.columns()));
+    }
+
+    @Override
+    public Matrix viewColumns(int column, int columns) {
+        return new BinaryMatrix((BitBackedDoubleMatrix2D) m.viewPart(0, column, m.rows(), columns));
+    }
+
+    /**
+     * Copies, the bit packed kernels only apply to matrices with whole rows of words
+     */
+    @Override
+    public List<Matrix> columnPieces(int numPieces) {
+        return splitColumns(numPieces);
+    }
+
+    @Override
+    public Matrix like(int rows, int columns) {
+        return make(rows, columns);
+    }
+
+    @Override
+    public Matrix convert(Matrix m2) {
+        return m2 instanceof BinaryMatrix ? m2 : make(m2);
+    }
+
+    @Override
+    public double sum() {
+        return bits().cardinalityBits();
+    }
+
+    /* MUTABLE OPERATIONS */
+
+    /**
+     * result = this * m2, each result row is the sum of the m2 rows selected by the set bits
+     */
+    @Override
+    public Matrix dot(final Matrix m2, final Matrix result) {
+        final BitBackedDoubleMatrix2D bits = bits();
+        if(!bits.isContiguous() || m2 instanceof BinaryMatrix) {
+            return super.dot(m2, result);
+        }
+        checkProduct(columns(), m2.rows(), rows(), m2.columns(), result);
+
+        final DoubleMatrix2D source = m2.data();
+        final DoubleMatrix2D target = result.data();
+        target.assign(0.0);
+        for(int i = 0; i < rows(); i++) {
+            final int offset = i * bits.wordsPerRow;
+            for(int w = 0; w < bits.wordsPerRow; w++) {
+                long word = bits.words[offset + w];
+                while(word != 0) {
+                    addRow(source, (w << 6) + Long.numberOfTrailingZeros(word), target, i, 1.0);
+                    word &= word - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * result = alpha * this^T * m2 + beta * result, each m2 row i is added to the result rows selected by the set bits
+     * of row i
+     */
+    @Override
+    public Matrix dotTransposeLeft(final Matrix m2, final Matrix result, final double alpha, final double beta) {
+        final BitBackedDoubleMatrix2D bits = bits();
+        if(!bits.isContiguous() || m2 instanceof BinaryMatrix) {
+            return super.dotTransposeLeft(m2, result, alpha, beta);
+        }
+        checkProduct(rows(), m2.rows(), columns(), m2.columns(), result);
+
+        final DoubleMatrix2D source = m2.data();
+        final DoubleMatrix2D target = result.data();
+        if(beta == 0.0) {
+            target.assign(0.0);
+        } else if(beta != 1.0) {
+            target.assign(DoubleFunctions.mult(beta));
+        }
+        for(int i = 0; i < rows(); i++) {
+            final int offset = i * bits.wordsPerRow;
+            for(int w = 0; w < bits.wordsPerRow; w++) {
+                long word = bits.words[offset + w];
+                while(word != 0) {
+                    addRow(source, i, target, (w << 6) + Long.numberOfTrailingZeros(word), alpha);
+                    word &= word - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * result = this * m2^T, each result row is the sum of the m2 columns selected by the set bits
+     */
+    @Override
+    public Matrix dotTransposeRight(final Matrix m2, final Matrix result) {
+        final BitBackedDoubleMatrix2D bits = bits();
+        if(!bits.isContiguous() || m2 instanceof BinaryMatrix) {
+            return super.dotTransposeRight(m2, result);
+        }
+        checkProduct(columns(), m2.columns(), rows(), m2.rows(), result);
+
+        final DoubleMatrix2D source = m2.data();
+        final DoubleMatrix2D target = result.data();
+        target.assign(0.0);
+        for(int i = 0; i < rows(); i++) {
+            final int offset = i * bits.wordsPerRow;
+            for(int w = 0; w < bits.wordsPerRow; w++) {
+                long word = bits.words[offset + w];
+                while(word != 0) {
+                    addColumn(source, (w << 6) + Long.numberOfTrailingZeros(word), target, i);
+                    word &= word - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new DenseMatrix of the results, this is unchanged
+     */
+    @Override
+    public Matrix apply(DoubleFunction function) {
+        return DenseMatrix.make(this).apply(function);
+    }
+
+    /**
+     * @return a new DenseMatrix of the results, this is unchanged
+     */
+    @Override
+    public Matrix apply(Matrix m2, DoubleDoubleFunction function) {
+        return DenseMatrix.make(this).apply(m2, function);
+    }
+
+    private BitBackedDoubleMatrix2D bits() {
+        return (BitBackedDoubleMatrix2D) m;
+    }
+
+    private static Matrix productLike(final Matrix m2, final int rows, final int columns) {
+        return m2 instanceof BinaryMatrix ? DenseMatrix.make(rows, columns) : m2.like(rows, columns);
+    }
+
+    private static void checkProduct(final int inner, final int inner2, final int rows, final int columns, final Matrix result) {
+        if(inner != inner2 || result.rows() != rows || result.columns() != columns) {
+            throw new IllegalArgumentException("Incompatible dimensions: inner " + inner + " vs " + inner2 + ", result " + result.rows() + "x" + result.columns() + " expected " + rows + "x" + columns);
+        }
+    }
+
+    /*
+        target[targetRow] += alpha * source[sourceRow]
+     */
+    private static void addRow(final DoubleMatrix2D source, final int sourceRow, final DoubleMatrix2D target, final int targetRow, final double alpha) {
+        final int columns = source.columns();
+        if(source instanceof DenseDoubleMatrix2D && target instanceof DenseDoubleMatrix2D && !source.isView() && !target.isView()) {
+            final double[] s = ((DenseDoubleMatrix2D) source).elements();
+            final double[] t = ((DenseDoubleMatrix2D) target).elements();
+            final int sOffset = sourceRow * columns;
+            final int tOffset = targetRow * columns;
+            for(int k = 0; k < columns; k++) {
+                t[tOffset + k] += alpha * s[sOffset + k];
+            }
+        } else if(source instanceof FloatBackedDoubleMatrix2D && target instanceof FloatBackedDoubleMatrix2D
+                && ((FloatBackedDoubleMatrix2D) source).isContiguous() && ((FloatBackedDoubleMatrix2D) target).isContiguous()) {
+            final float[] s = ((FloatBackedDoubleMatrix2D) source).elements;
+            final float[] t = ((FloatBackedDoubleMatrix2D) target).elements;
+            final float a = (float) alpha;
+            final int sOffset = sourceRow * columns;
+            final int tOffset = targetRow * columns;
+            for(int k = 0; k < columns; k++) {
+                t[tOffset + k] += a * s[sOffset + k];
+            }
+        } else {
+            for(int k = 0; k < columns; k++) {
+                target.setQuick(targetRow, k, target.getQuick(targetRow, k) + alpha * source.getQuick(sourceRow, k));
+            }
+        }
+    }
+
+    /*
+        target[targetRow] += source[:, sourceColumn]
+     */
+    private static void addColumn(final DoubleMatrix2D source, final int sourceColumn, final DoubleMatrix2D target, final int targetRow) {
+        final int rows = source.rows();
+        if(source instanceof DenseDoubleMatrix2D && target instanceof DenseDoubleMatrix2D && !source.isView() && !target.isView()) {
+            final double[] s = ((DenseDoubleMatrix2D) source).elements();
+            final double[] t = ((DenseDoubleMatrix2D) target).elements();
+            final int sColumns = source.columns();
+            final int tOffset = targetRow * target.columns();
+            for(int k = 0; k < rows; k++) {
+                t[tOffset + k] += s[k * sColumns + sourceColumn];
+            }
+        } else if(source instanceof FloatBackedDoubleMatrix2D && target instanceof FloatBackedDoubleMatrix2D
+                && ((FloatBackedDoubleMatrix2D) source).isContiguous() && ((FloatBackedDoubleMatrix2D) target).isContiguous()) {
+            final float[] s = ((FloatBackedDoubleMatrix2D) source).elements;
+            final float[] t = ((FloatBackedDoubleMatrix2D) target).elements;
+            final int sColumns = source.columns();
+            final int tOffset = targetRow * target.columns();
+            for(int k = 0; k < rows; k++) {
+                t[tOffset + k] += s[k * sColumns + sourceColumn];
+            }
+        } else {
+            for(int k = 0; k < rows; k++) {
+                target.setQuick(targetRow, k, target.getQuick(targetRow, k) + source.getQuick(k, sourceColumn));
+            }
+        }
+    }
+
+    /**
+     * @return a binary copy of the matrix, non zero values become 1
+     */
+    public static Matrix make(Matrix matrix) {
+        return copyOf(matrix.data());
+    }
+
+    public static Matrix make(DoubleMatrix2D m) {
+        if(m instanceof BitBackedDoubleMatrix2D) {
+            return new BinaryMatrix((BitBackedDoubleMatrix2D) m);
+        }
+        return copyOf(m);
+    }
+
+    public static Matrix make(int r, int c) {
+        return new BinaryMatrix(new BitBackedDoubleMatrix2D(r, c));
+    }
+
+    public static Matrix make(double[][] m) {
+        final Matrix matrix = make(Matrix.rows(m), m.length == 0 ? 0 : Matrix.cols(m));
+        matrix.data().assign(m);
+        return matrix;
+    }
+
+    private static Matrix copyOf(DoubleMatrix2D m) {
+        final BitBackedDoubleMatrix2D bitMatrix2D = new BitBackedDoubleMatrix2D(m.rows(), m.columns());
+        bitMatrix2D.assign(m);
+        return new BinaryMatrix(bitMatrix2D);
+    }
+
+    @Override
+    public String toString() {
+        return m.toString();
+    }
+
+}
@@ -0,0 +1,101 @@
+package math;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+
+/**
+ * One dimensional counterpart of BitBackedDoubleMatrix2D, mostly used for row and column views.
+ */
+class BitBackedDoubleMatrix1D extends DoubleMatrix1D {
+
+    private static final long serialVersionUID = 1L;
+
+    final long[] words;
+
+    BitBackedDoubleMatrix1D(final int size) {
+        this(size, new long[BitBackedDoubleMatrix2D.wordsPerRow(size)], 0, 1);
+    }
+
+    BitBackedDoubleMatrix1D(final int size, final long[] words, final int zero, final int stride) {
+        setUp(size, zero, stride);
+        this.words = words;
+    }
+
+    @Override
+    public double getQuick(final int index) {
+        final long bit = zero + (long) index * stride;
+        return ((words[(int) (bit >>> 6)] >>> bit) & 1L) != 0 ? 1.0 : 0.0;
+    }
+
+    @Override
+    public void setQuick(final int index, final double value) {
+        final long bit = zero + (long) index * stride;
+        if(value != 0.0) {
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        } else {
+            words[(int) (bit >>> 6)] &= ~(1L << bit);
+        }
+    }
+
+    @Override
+    public long index(final int rank) {
+        return zero + (long) rank * stride;
+    }
+
+    @Override
+    public Object elements() {
+        return words;
+    }
+
+    @Override
+    public DoubleMatrix1D like(final int size) {
+        return new BitBackedDoubleMatrix1D(size);
+    }
+
+    @Override
+    public DoubleMatrix2D like2D(final int rows, final int columns) {
+        return new BitBackedDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix2D reshape(final int rows, final int columns) {
+        if(rows * columns != size) {
+            throw new IllegalArgumentException("rows * columns != size");
+        }
+        // column major, same as DenseDoubleMatrix1D
+        final DoubleMatrix2D matrix = new BitBackedDoubleMatrix2D(rows, columns);
+        int index = 0;
+        for(int column = 0; column < columns; column++) {
+            for(int row = 0; row < rows; row++) {
+                matrix.setQuick(row, column, getQuick(index++));
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public DoubleMatrix3D reshape(final int slices, final int rows, final int columns) {
+        if(slices * rows * columns != size) {
+            throw new IllegalArgumentException("slices * rows * columns != size");
+        }
+        // there are no 3D binary matrices, copied into a dense matrix
+        final DoubleMatrix3D matrix = new DenseDoubleMatrix3D(slices, rows, columns);
+        int index = 0;
+        for(int slice = 0; slice < slices; slice++) {
+            for(int column = 0; column < columns; column++) {
+                for(int row = 0; row < rows; row++) {
+                    matrix.setQuick(slice, row, column, getQuick(index++));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    protected DoubleMatrix1D viewSelectionLike(final int[] offsets) {
+        return new SelectedDoubleMatrix1D(new BitBackedDoubleMatrix1D((int) Math.min((long) words.length * Long.SIZE, Integer.MAX_VALUE), words, 0, 1), offsets);
+    }
+
+}
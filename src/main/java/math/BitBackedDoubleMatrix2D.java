@@ -0,0 +1,137 @@
+package math;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+import java.util.Arrays;
+
+/**
+ * A Parallel Colt DoubleMatrix2D of 0/1 cells packed 64 to a long. Any non zero value written is stored as 1.
+ * Cells are addressed by bit index (rowZero + row * rowStride + columnZero + column * columnStride) exactly like
+ * DenseDoubleMatrix2D addresses its double[], with every row padded to a whole number of words so that rows can be
+ * scanned word at a time. This keeps Colt's views (dice, part, row) working unchanged. Bit indexes are computed as
+ * longs, a matrix may hold more than 2^31 bits.
+ */
+class BitBackedDoubleMatrix2D extends DoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    final long[] words;
+
+    final int wordsPerRow;
+
+    BitBackedDoubleMatrix2D(final int rows, final int columns) {
+        this(rows, columns, new long[rows * wordsPerRow(columns)], 0, 0, wordsPerRow(columns) * Long.SIZE, 1);
+    }
+
+    BitBackedDoubleMatrix2D(final int rows, final int columns, final long[] words, final int rowZero, final int columnZero, final int rowStride, final int columnStride) {
+        setUp(rows, columns, rowZero, columnZero, rowStride, columnStride);
+        this.words = words;
+        this.wordsPerRow = wordsPerRow(columns);
+    }
+
+    static int wordsPerRow(final int columns) {
+        return (columns + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * contiguous matrices store row r in words [r * wordsPerRow, (r + 1) * wordsPerRow) with column c at bit c
+     */
+    boolean isContiguous() {
+        return rowZero == 0 && columnZero == 0 && columnStride == 1 && rowStride == wordsPerRow * Long.SIZE && words.length == rows * wordsPerRow;
+    }
+
+    @Override
+    public double getQuick(final int row, final int column) {
+        final long bit = rowZero + (long) row * rowStride + columnZero + (long) column * columnStride;
+        return ((words[(int) (bit >>> 6)] >>> bit) & 1L) != 0 ? 1.0 : 0.0;
+    }
+
+    @Override
+    public void setQuick(final int row, final int column, final double value) {
+        final long bit = rowZero + (long) row * rowStride + columnZero + (long) column * columnStride;
+        if(value != 0.0) {
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        } else {
+            words[(int) (bit >>> 6)] &= ~(1L << bit);
+        }
+    }
+
+    @Override
+    public long index(final int row, final int column) {
+        return rowZero + (long) row * rowStride + columnZero + (long) column * columnStride;
+    }
+
+    @Override
+    public Object elements() {
+        return words;
+    }
+
+    @Override
+    public DoubleMatrix2D like(final int rows, final int columns) {
+        return new BitBackedDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(final int size) {
+        return new BitBackedDoubleMatrix1D(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(final int size, final int zero, final int stride) {
+        return new BitBackedDoubleMatrix1D(size, words, zero, stride);
+    }
+
+    @Override
+    public DoubleMatrix1D vectorize() {
+        // column stacked, same as DenseDoubleMatrix2D
+        final DoubleMatrix1D vector = new BitBackedDoubleMatrix1D(rows * columns);
+        int index = 0;
+        for(int column = 0; column < columns; column++) {
+            for(int row = 0; row < rows; row++) {
+                vector.setQuick(index++, getQuick(row, column));
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(final int[] rowOffsets, final int[] columnOffsets) {
+        // Colt's selection offsets are ints, so only the first 2^31 bits can be selected
+        return new SelectedDoubleMatrix2D(new BitBackedDoubleMatrix1D((int) Math.min((long) words.length * Long.SIZE, Integer.MAX_VALUE), words, 0, 1), rowOffsets, columnOffsets);
+    }
+
+    @Override
+    public DoubleMatrix2D assign(final double value) {
+        if(value != 0.0 || !isContiguous()) {
+            return super.assign(value);
+        }
+        Arrays.fill(words, 0L);
+        return this;
+    }
+
+    @Override
+    public DoubleMatrix2D assign(final DoubleMatrix2D other) {
+        if(other instanceof BitBackedDoubleMatrix2D && isContiguous() && ((BitBackedDoubleMatrix2D) other).isContiguous()) {
+            checkShape(other);
+            System.arraycopy(((BitBackedDoubleMatrix2D) other).words, 0, words, 0, words.length);
+            return this;
+        }
+        return super.assign(other);
+    }
+
+    /**
+     * @return number of set cells
+     */
+    long cardinalityBits() {
+        if(!isContiguous()) {
+            return (long) zSum();
+        }
+        long count = 0;
+        for(long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+}
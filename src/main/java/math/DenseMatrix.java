@@ -5,9 +5,12 @@ import cern.colt.function.tdouble.DoubleFunction;
 import cern.colt.matrix.tdouble.DoubleFactory2D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import math.functions.RandomDouble;
+import math.functions.RandomGaussian;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by kenny on 5/24/14.
@@ -34,6 +37,16 @@ public class DenseMatrix extends Matrix {
         return make(DENSE_DOUBLE_ALGEBRA.mult(m, m2.data()));
     }
 
+    @Override
+    public Matrix dotTransposeLeft(Matrix m2) {
+        return make(m.zMult(m2.data(), null, 1.0, 0.0, true, false));
+    }
+
+    @Override
+    public Matrix dotTransposeRight(Matrix m2) {
+        return make(m.zMult(m2.data(), null, 1.0, 0.0, false, true));
+    }
+
     @Override
     public Matrix addColumns(final Matrix m2) {
         return make(DoubleFactory2D.dense.appendColumns(m, m2.data()));
@@ -54,6 +67,26 @@ public class DenseMatrix extends Matrix {
         return mPieces;
     }
 
+    @Override
+    public Matrix viewRows(int row, int rows) {
+        return new DenseMatrix(m.viewPart(row, 0, rows, m.columns()));
+    }
+
+    @Override
+    public Matrix viewColumns(int column, int columns) {
+        return new DenseMatrix(m.viewPart(0, column, m.rows(), columns));
+    }
+
+    @Override
+    public Matrix like(int rows, int columns) {
+        return make(rows, columns);
+    }
+
+    @Override
+    public Matrix convert(Matrix m2) {
+        return m2 instanceof FloatMatrix ? make(m2) : m2;
+    }
+
     /* MUTABLE OPERATIONS */
 
     @Override
@@ -67,7 +100,7 @@ public class DenseMatrix extends Matrix {
     }
 
     public static Matrix make(Matrix matrix) {
-        return make(matrix.data().copy());
+        return new DenseMatrix(DoubleFactory2D.dense.make(matrix.rows(), matrix.columns()).assign(matrix.data()));
     }
 
     public static Matrix make(DoubleMatrix2D m) {
@@ -86,6 +119,20 @@ public class DenseMatrix extends Matrix {
         return new DenseMatrix(DoubleFactory2D.dense.make(r, c).assign(RANDOM_DOUBLE));
     }
 
+    /**
+     * reproducible gaussian(0, 0.1) weights drawn from the given source
+     */
+    public static Matrix randomGaussian(int r, int c, Random random) {
+        return fill(make(r, c), new RandomGaussian(random));
+    }
+
+    /**
+     * reproducible uniform [0, 1) values drawn from the given source
+     */
+    public static Matrix random(int r, int c, Random random) {
+        return fill(make(r, c), new RandomDouble(1.0, random));
+    }
+
     public static Matrix make(double[][] m) {
         return new DenseMatrix(DoubleFactory2D.dense.make(m));
     }
@@ -0,0 +1,90 @@
+package math;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+
+/**
+ * One dimensional counterpart of FloatBackedDoubleMatrix2D, mostly used for row and column views.
+ */
+class FloatBackedDoubleMatrix1D extends DoubleMatrix1D {
+
+    private static final long serialVersionUID = 1L;
+
+    final float[] elements;
+
+    FloatBackedDoubleMatrix1D(final int size) {
+        this(size, new float[size], 0, 1);
+    }
+
+    FloatBackedDoubleMatrix1D(final int size, final float[] elements, final int zero, final int stride) {
+        setUp(size, zero, stride);
+        this.elements = elements;
+    }
+
+    @Override
+    public double getQuick(final int index) {
+        return elements[zero + index * stride];
+    }
+
+    @Override
+    public void setQuick(final int index, final double value) {
+        elements[zero + index * stride] = (float) value;
+    }
+
+    @Override
+    public Object elements() {
+        return elements;
+    }
+
+    @Override
+    public DoubleMatrix1D like(final int size) {
+        return new FloatBackedDoubleMatrix1D(size);
+    }
+
+    @Override
+    public DoubleMatrix2D like2D(final int rows, final int columns) {
+        return new FloatBackedDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix2D reshape(final int rows, final int columns) {
+        if(rows * columns != size) {
+            throw new IllegalArgumentException("rows * columns != size");
+        }
+        // column major, same as DenseDoubleMatrix1D
+        final DoubleMatrix2D matrix = new FloatBackedDoubleMatrix2D(rows, columns);
+        int index = 0;
+        for(int column = 0; column < columns; column++) {
+            for(int row = 0; row < rows; row++) {
+                matrix.setQuick(row, column, getQuick(index++));
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public DoubleMatrix3D reshape(final int slices, final int rows, final int columns) {
+        if(slices * rows * columns != size) {
+            throw new IllegalArgumentException("slices * rows * columns != size");
+        }
+        // there are no 3D float matrices, copied into a dense matrix
+        final DoubleMatrix3D matrix = new DenseDoubleMatrix3D(slices, rows, columns);
+        int index = 0;
+        for(int slice = 0; slice < slices; slice++) {
+            for(int column = 0; column < columns; column++) {
+                for(int row = 0; row < rows; row++) {
+                    matrix.setQuick(slice, row, column, getQuick(index++));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    protected DoubleMatrix1D viewSelectionLike(final int[] offsets) {
+        return new SelectedDoubleMatrix1D(new FloatBackedDoubleMatrix1D(elements.length, elements, 0, 1), offsets);
+    }
+
+}
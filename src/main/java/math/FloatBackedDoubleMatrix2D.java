@@ -0,0 +1,145 @@
+package math;
+
+import cern.colt.function.tdouble.DoubleDoubleFunction;
+import cern.colt.function.tdouble.DoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tfloat.impl.DenseFloatMatrix2D;
+
+import java.util.Arrays;
+
+/**
+ * A Parallel Colt DoubleMatrix2D whose cells are stored in a float[] using the same row major layout and view
+ * strides as DenseDoubleMatrix2D. All of Colt's generic algorithms work on it unchanged while the storage costs half
+ * as much. Element-wise operations between contiguous matrices are done directly on the arrays.
+ */
+class FloatBackedDoubleMatrix2D extends DoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    final float[] elements;
+
+    FloatBackedDoubleMatrix2D(final int rows, final int columns) {
+        this(rows, columns, new float[rows * columns], 0, 0, columns, 1);
+    }
+
+    FloatBackedDoubleMatrix2D(final int rows, final int columns, final float[] elements, final int rowZero, final int columnZero, final int rowStride, final int columnStride) {
+        setUp(rows, columns, rowZero, columnZero, rowStride, columnStride);
+        this.elements = elements;
+    }
+
+    /**
+     * @return a float view sharing the same cells, used for float-native matrix multiplication
+     */
+    DenseFloatMatrix2D floatView() {
+        return new DenseFloatMatrix2D(rows, columns, elements, rowZero, columnZero, rowStride, columnStride, true);
+    }
+
+    boolean isContiguous() {
+        return rowZero == 0 && columnZero == 0 && columnStride == 1 && rowStride == columns && elements.length == rows * columns;
+    }
+
+    @Override
+    public double getQuick(final int row, final int column) {
+        return elements[rowZero + row * rowStride + columnZero + column * columnStride];
+    }
+
+    @Override
+    public void setQuick(final int row, final int column, final double value) {
+        elements[rowZero + row * rowStride + columnZero + column * columnStride] = (float) value;
+    }
+
+    @Override
+    public Object elements() {
+        return elements;
+    }
+
+    @Override
+    public DoubleMatrix2D like(final int rows, final int columns) {
+        return new FloatBackedDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(final int size) {
+        return new FloatBackedDoubleMatrix1D(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(final int size, final int zero, final int stride) {
+        return new FloatBackedDoubleMatrix1D(size, elements, zero, stride);
+    }
+
+    @Override
+    public DoubleMatrix1D vectorize() {
+        // column stacked, same as DenseDoubleMatrix2D
+        final DoubleMatrix1D vector = new FloatBackedDoubleMatrix1D(rows * columns);
+        int index = 0;
+        for(int column = 0; column < columns; column++) {
+            for(int row = 0; row < rows; row++) {
+                vector.setQuick(index++, getQuick(row, column));
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(final int[] rowOffsets, final int[] columnOffsets) {
+        return new SelectedDoubleMatrix2D(new FloatBackedDoubleMatrix1D(elements.length, elements, 0, 1), rowOffsets, columnOffsets);
+    }
+
+    @Override
+    public DoubleMatrix2D assign(final double value) {
+        if(!isContiguous()) {
+            return super.assign(value);
+        }
+        Arrays.fill(elements, (float) value);
+        return this;
+    }
+
+    @Override
+    public DoubleMatrix2D assign(final DoubleFunction function) {
+        if(!isContiguous()) {
+            return super.assign(function);
+        }
+        for(int i = 0; i < elements.length; i++) {
+            elements[i] = (float) function.apply(elements[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public DoubleMatrix2D assign(final DoubleMatrix2D other) {
+        if(other instanceof FloatBackedDoubleMatrix2D && isContiguous() && ((FloatBackedDoubleMatrix2D) other).isContiguous()) {
+            checkShape(other);
+            System.arraycopy(((FloatBackedDoubleMatrix2D) other).elements, 0, elements, 0, elements.length);
+            return this;
+        }
+        return super.assign(other);
+    }
+
+    @Override
+    public DoubleMatrix2D assign(final DoubleMatrix2D other, final DoubleDoubleFunction function) {
+        if(!isContiguous()) {
+            return super.assign(other, function);
+        }
+        if(other instanceof FloatBackedDoubleMatrix2D && ((FloatBackedDoubleMatrix2D) other).isContiguous()) {
+            checkShape(other);
+            final float[] otherElements = ((FloatBackedDoubleMatrix2D) other).elements;
+            for(int i = 0; i < elements.length; i++) {
+                elements[i] = (float) function.apply(elements[i], otherElements[i]);
+            }
+            return this;
+        }
+        if(other instanceof DenseDoubleMatrix2D && !other.isView()) {
+            checkShape(other);
+            final double[] otherElements = ((DenseDoubleMatrix2D) other).elements();
+            for(int i = 0; i < elements.length; i++) {
+                elements[i] = (float) function.apply(elements[i], otherElements[i]);
+            }
+            return this;
+        }
+        return super.assign(other, function);
+    }
+
+}
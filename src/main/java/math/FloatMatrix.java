@@ -0,0 +1,219 @@
+package math;
+
+import cern.colt.function.tdouble.DoubleDoubleFunction;
+import cern.colt.function.tdouble.DoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tfloat.impl.DenseFloatMatrix2D;
+import math.functions.RandomDouble;
+import math.functions.RandomGaussian;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dense matrix stored in single precision. Useful for RBM weights and activations where the extra precision of a
+ * double is wasted, it halves memory use.
+ * Products between float matrices are computed natively in float by Parallel Colt. Mixing with double matrices works,
+ * but goes through Colt's generic (slower) path, so convert data sets once with FloatMatrix.make(Matrix) or
+ * Matrix.convert(Matrix) before using them repeatedly.
+ */
+public class FloatMatrix extends Matrix {
+
+    private volatile DenseFloatMatrix2D floatView;
+
+    private volatile DenseFloatMatrix2D transposedFloatView;
+
+    protected FloatMatrix(FloatBackedDoubleMatrix2D floatMatrix2D) {
+        super(floatMatrix2D);
+    }
+
+    /* IMMUTABLE OPERATIONS */
+
+    @Override
+    public Matrix copy() {
+        return make(m.copy());
+    }
+
+    @Override
+    public Matrix transpose() {
+        return make(m.viewDice().copy());
+    }
+
+    @Override
+    public Matrix dot(Matrix m2) {
+        return dot(m2, make(rows(), m2.columns()));
+    }
+
+    @Override
+    public Matrix dotTransposeLeft(Matrix m2) {
+        return dotTransposeLeft(m2, make(columns(), m2.columns()));
+    }
+
+    @Override
+    public Matrix dotTransposeRight(Matrix m2) {
+        return dotTransposeRight(m2, make(rows(), m2.rows()));
+    }
+
+    @Override
+    public Matrix addColumns(final Matrix m2) {
+        final Matrix appended = make(rows(), columns() + m2.columns());
+        appended.data().viewPart(0, 0, rows(), columns()).assign(m);
+        appended.data().viewPart(0, columns(), rows(), m2.columns()).assign(m2.data());
+        return appended;
+    }
+
+    @Override
+    public Matrix addRows(final Matrix m2) {
+        final Matrix appended = make(rows() + m2.rows(), columns());
+        appended.data().viewPart(0, 0, rows(), columns()).assign(m);
+        appended.data().viewPart(rows(), 0, m2.rows(), columns()).assign(m2.data());
+        return appended;
+    }
+
+    @Override
+    public List<Matrix> splitColumns(int numPieces) {
+        List<double[][]> pieces = Matrix.splitColumns(this, numPieces);
+        List<Matrix> mPieces = new ArrayList<>(pieces.size());
+        for(double[][] piece : pieces) {
+            mPieces.add(FloatMatrix.make(piece));
+        }
+        return mPieces;
+    }
+
+    @Override
+    public Matrix viewRows(int row, int rows) {
+        return new FloatMatrix((FloatBackedDoubleMatrix2D) m.viewPart(row, 0, rows, m.columns()));
+    }
+
+    @Override
+    public Matrix viewColumns(int column, int columns) {
+        return new FloatMatrix((FloatBackedDoubleMatrix2D) m.viewPart(0, column, m.rows(), columns));
+    }
+
+    @Override
+    public Matrix like(int rows, int columns) {
+        return make(rows, columns);
+    }
+
+    @Override
+    public Matrix convert(Matrix m2) {
+        return m2 instanceof FloatMatrix ? m2 : make(m2);
+    }
+
+    /* MUTABLE OPERATIONS */
+
+    @Override
+    public Matrix dot(final Matrix m2, final Matrix result) {
+        if(m2 instanceof FloatMatrix && result instanceof FloatMatrix) {
+            floatView().zMult(((FloatMatrix) m2).floatView(), ((FloatMatrix) result).floatView(), 1.0f, 0.0f, false, false);
+            return result;
+        }
+        return super.dot(m2, result);
+    }
+
+    @Override
+    public Matrix dotTransposeLeft(final Matrix m2, final Matrix result, final double alpha, final double beta) {
+        if(m2 instanceof FloatMatrix && result instanceof FloatMatrix) {
+            transposedFloatView().zMult(((FloatMatrix) m2).floatView(), ((FloatMatrix) result).floatView(), (float) alpha, (float) beta, false, false);
+            return result;
+        }
+        return super.dotTransposeLeft(m2, result, alpha, beta);
+    }
+
+    @Override
+    public Matrix dotTransposeRight(final Matrix m2, final Matrix result) {
+        if(m2 instanceof FloatMatrix && result instanceof FloatMatrix) {
+            floatView().zMult(((FloatMatrix) m2).transposedFloatView(), ((FloatMatrix) result).floatView(), 1.0f, 0.0f, false, false);
+            return result;
+        }
+        return super.dotTransposeRight(m2, result);
+    }
+
+    @Override
+    public Matrix apply(DoubleFunction function) {
+        return make(m.assign(function));
+    }
+
+    @Override
+    public Matrix apply(Matrix m2, DoubleDoubleFunction function) {
+        return make(m.assign(m2.data(), function));
+    }
+
+    // float views of the cells, created once per matrix so products allocate nothing
+    private DenseFloatMatrix2D floatView() {
+        DenseFloatMatrix2D view = floatView;
+        if(view == null) {
+            view = ((FloatBackedDoubleMatrix2D) m).floatView();
+            floatView = view;
+        }
+        return view;
+    }
+
+    private DenseFloatMatrix2D transposedFloatView() {
+        DenseFloatMatrix2D view = transposedFloatView;
+        if(view == null) {
+            view = (DenseFloatMatrix2D) floatView().viewDice();
+            transposedFloatView = view;
+        }
+        return view;
+    }
+
+    /**
+     * @return a float copy of the matrix
+     */
+    public static Matrix make(Matrix matrix) {
+        return copyOf(matrix.data());
+    }
+
+    public static Matrix make(DoubleMatrix2D m) {
+        if(m instanceof FloatBackedDoubleMatrix2D) {
+            return new FloatMatrix((FloatBackedDoubleMatrix2D) m);
+        }
+        return copyOf(m);
+    }
+
+    public static Matrix make(int r, int c) {
+        return new FloatMatrix(new FloatBackedDoubleMatrix2D(r, c));
+    }
+
+    public static Matrix randomGaussian(int r, int c) {
+        return make(r, c).apply(RANDOM_GAUSSIAN);
+    }
+
+    public static Matrix random(int r, int c) {
+        return make(r, c).apply(RANDOM_DOUBLE);
+    }
+
+    /**
+     * reproducible gaussian(0, 0.1) weights drawn from the given source
+     */
+    public static Matrix randomGaussian(int r, int c, Random random) {
+        return fill(make(r, c), new RandomGaussian(random));
+    }
+
+    /**
+     * reproducible uniform [0, 1) values drawn from the given source
+     */
+    public static Matrix random(int r, int c, Random random) {
+        return fill(make(r, c), new RandomDouble(1.0, random));
+    }
+
+    public static Matrix make(double[][] m) {
+        final Matrix matrix = make(Matrix.rows(m), m.length == 0 ? 0 : Matrix.cols(m));
+        matrix.data().assign(m);
+        return matrix;
+    }
+
+    private static Matrix copyOf(DoubleMatrix2D m) {
+        final FloatBackedDoubleMatrix2D floatMatrix2D = new FloatBackedDoubleMatrix2D(m.rows(), m.columns());
+        floatMatrix2D.assign(m);
+        return new FloatMatrix(floatMatrix2D);
+    }
+
+    @Override
+    public String toString() {
+        return m.toString();
+    }
+
+}
@@ -0,0 +1,147 @@
+package math;
+
+import cern.colt.function.tdouble.DoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import math.functions.Sigmoid;
+import math.random.RandomSource;
+
+import java.util.Random;
+
+/**
+ * Fused activation + Bernoulli sampling of a layer of binary units.
+ * Given the activations of a layer (e.g. visible.dot(weights)), a single pass over each row squashes every activation
+ * into a probability in place and samples the unit's state from it with an inline random draw. This replaces the
+ * apply(logistic) -> DenseMatrix.random(...) -> apply(random, ActivationState) chain, i.e. three passes and a random
+ * matrix per call.
+ * An optional bias vector is added to each row's activations in the same pass, so biases need no constant data column.
+ * A unit is on when its probability is >= the random draw, same as ActivationState.
+ * Draws come from the given RandomSource (one sampler per thread), or from the calling thread's source if none is given.
+ */
+public class LayerSampler {
+
+    private final DoubleFunction logisticsFunction;
+
+    private final Random random;
+
+    public LayerSampler() {
+        this(new Sigmoid());
+    }
+
+    public LayerSampler(final DoubleFunction logisticsFunction) {
+        this(logisticsFunction, null);
+    }
+
+    /**
+     * @param random source of the state draws, not thread safe. null for the calling thread's source
+     */
+    public LayerSampler(final DoubleFunction logisticsFunction, final Random random) {
+        this.logisticsFunction = logisticsFunction;
+        this.random = random;
+    }
+
+    /**
+     * squash activations into probabilities in place, without sampling
+     * @return activations, now holding probabilities
+     */
+    public Matrix activate(final Matrix activations) {
+        return activate(activations, null);
+    }
+
+    /**
+     * add bias to each row of activations and squash them into probabilities in place, without sampling
+     * @param bias one per column, may be null
+     * @return activations, now holding probabilities
+     */
+    public Matrix activate(final Matrix activations, final double[] bias) {
+        sample(activations, bias, null);
+        return activations;
+    }
+
+    /**
+     * squash activations into probabilities in place and sample new binary states
+     * @return states, as a new BinaryMatrix
+     */
+    public Matrix sample(final Matrix activations) {
+        return sample(activations, (double[]) null);
+    }
+
+    /**
+     * add bias to each row of activations, squash them into probabilities in place and sample new binary states
+     * @param bias one per column, may be null
+     * @return states, as a new BinaryMatrix
+     */
+    public Matrix sample(final Matrix activations, final double[] bias) {
+        return sample(activations, bias, BinaryMatrix.make(activations.rows(), activations.columns()));
+    }
+
+    /**
+     * squash activations into probabilities in place and sample states into the given matrix
+     * @param states output, may be null to only compute probabilities
+     * @return states
+     */
+    public Matrix sample(final Matrix activations, final Matrix states) {
+        return sample(activations, null, states);
+    }
+
+    /**
+     * add bias to each row of activations, squash them into probabilities in place and sample states into the given matrix
+     * @param bias one per column, may be null
+     * @param states output, may be null to only compute probabilities
+     * @return states
+     */
+    public Matrix sample(final Matrix activations, final double[] bias, final Matrix states) {
+        final DoubleMatrix2D a = activations.data();
+        final DoubleMatrix2D s = states == null ? null : states.data();
+        if(s != null && (s.rows() != a.rows() || s.columns() != a.columns())) {
+            throw new IllegalArgumentException("States (" + s.rows() + "x" + s.columns() + ") must match activations (" + a.rows() + "x" + a.columns() + ")");
+        }
+        if(bias != null && bias.length != a.columns()) {
+            throw new IllegalArgumentException("Bias (" + bias.length + ") must match activations (" + a.rows() + "x" + a.columns() + ")");
+        }
+        final Random random = this.random == null ? RandomSource.current() : this.random;
+
+        final double[] doubles = a instanceof DenseDoubleMatrix2D && !a.isView() ? ((DenseDoubleMatrix2D) a).elements() : null;
+        final float[] floats = a instanceof FloatBackedDoubleMatrix2D && ((FloatBackedDoubleMatrix2D) a).isContiguous() ? ((FloatBackedDoubleMatrix2D) a).elements : null;
+        final BitBackedDoubleMatrix2D bits = s instanceof BitBackedDoubleMatrix2D && ((BitBackedDoubleMatrix2D) s).isContiguous() ? (BitBackedDoubleMatrix2D) s : null;
+
+        final int rows = a.rows();
+        final int columns = a.columns();
+        for(int i = 0; i < rows; i++) {
+            final int offset = i * columns;
+            long word = 0L;
+            for(int j = 0; j < columns; j++) {
+                final double b = bias == null ? 0.0 : bias[j];
+                final double probability;
+                if(doubles != null) {
+                    probability = logisticsFunction.apply(doubles[offset + j] + b);
+                    doubles[offset + j] = probability;
+                } else if(floats != null) {
+                    probability = logisticsFunction.apply(floats[offset + j] + b);
+                    floats[offset + j] = (float) probability;
+                } else {
+                    probability = logisticsFunction.apply(a.getQuick(i, j) + b);
+                    a.setQuick(i, j, probability);
+                }
+
+                if(s == null) { continue; }
+                final boolean on = probability >= random.nextDouble();
+                if(bits != null) {
+                    if(on) { word |= 1L << j; }
+                    if((j & 63) == 63 || j == columns - 1) {
+                        bits.words[i * bits.wordsPerRow + (j >>> 6)] = word;
+                        word = 0L;
+                    }
+                } else {
+                    s.setQuick(i, j, on ? 1.0 : 0.0);
+                }
+            }
+        }
+        return states;
+    }
+
+    public DoubleFunction getLogisticsFunction() {
+        return logisticsFunction;
+    }
+
+}
@@ -2,10 +2,12 @@ package math;
 
 import cern.colt.function.tdouble.DoubleDoubleFunction;
 import cern.colt.function.tdouble.DoubleFunction;
+import cern.colt.function.tdouble.IntIntDoubleFunction;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.SparseDoubleAlgebra;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import math.functions.Power;
 import math.functions.RandomDouble;
 import math.functions.RandomGaussian;
@@ -37,6 +39,9 @@ public abstract class Matrix {
 
     protected DoubleMatrix2D m;
 
+    // m diced, kept so that repeated transposed products do not create a view each time
+    private volatile DoubleMatrix2D transposedView;
+
     protected Matrix(DoubleMatrix2D m) {
         this.m = m;
     }
@@ -49,18 +54,73 @@ public abstract class Matrix {
 
     public abstract Matrix dot(final Matrix m2);
 
+    /**
+     * this^T * m2, computed without materializing the transpose of this
+     */
+    public abstract Matrix dotTransposeLeft(final Matrix m2);
+
+    /**
+     * this * m2^T, computed without materializing the transpose of m2
+     */
+    public abstract Matrix dotTransposeRight(final Matrix m2);
+
     public abstract Matrix addColumns(final Matrix m2);
 
     public abstract Matrix addRows(final Matrix m2);
 
     public abstract List<Matrix> splitColumns(int numPieces);
 
+    /**
+     * @return rows [row, row + rows) of this as a view, sharing this matrix's storage
+     */
+    public abstract Matrix viewRows(int row, int rows);
+
+    /**
+     * @return columns [column, column + columns) of this as a view, sharing this matrix's storage
+     */
+    public abstract Matrix viewColumns(int column, int columns);
+
+    /**
+     * Split the columns into numPieces equal pieces, like splitColumns but as views where the storage type allows it,
+     * so no data is copied
+     */
+    public List<Matrix> columnPieces(int numPieces) {
+        final int cols = columns() / numPieces; // must be evenly splittable
+        final List<Matrix> pieces = new ArrayList<>(numPieces);
+        for(int p = 0; p < numPieces; p++) {
+            pieces.add(viewColumns(p * cols, cols));
+        }
+        return pieces;
+    }
+
+    /**
+     * @return a new zero matrix of the same storage type (dense, sparse, float) as this
+     */
+    public abstract Matrix like(int rows, int columns);
+
+    /**
+     * @return m2 in the same storage type as this, m2 itself if it already is, otherwise a copy
+     */
+    public abstract Matrix convert(Matrix m2);
+
     /* MUTABLE OPERATIONS */
 
     public DoubleMatrix2D data() {
         return m;
     }
 
+    /**
+     * @return a transposed view of data(), created once per matrix
+     */
+    protected DoubleMatrix2D transposedData() {
+        DoubleMatrix2D view = transposedView;
+        if(view == null) {
+            view = m.viewDice();
+            transposedView = view;
+        }
+        return view;
+    }
+
     public double[][] toArray() {
         return m.toArray();
     }
@@ -90,6 +150,41 @@ public abstract class Matrix {
         return m.get(i, j);
     }
 
+    /**
+     * result = this * m2, result must be (this.rows() x m2.columns()) and distinct from both operands
+     * @return result
+     */
+    public Matrix dot(final Matrix m2, final Matrix result) {
+        m.zMult(m2.data(), result.data());
+        return result;
+    }
+
+    /**
+     * result = this^T * m2, result must be (this.columns() x m2.columns()) and distinct from both operands
+     * @return result
+     */
+    public Matrix dotTransposeLeft(final Matrix m2, final Matrix result) {
+        return dotTransposeLeft(m2, result, 1.0, 0.0);
+    }
+
+    /**
+     * result = alpha * this^T * m2 + beta * result, lets results be scaled and accumulated without temporaries
+     * @return result
+     */
+    public Matrix dotTransposeLeft(final Matrix m2, final Matrix result, final double alpha, final double beta) {
+        transposedData().zMult(m2.data(), result.data(), alpha, beta, false, false);
+        return result;
+    }
+
+    /**
+     * result = this * m2^T, result must be (this.rows() x m2.rows()) and distinct from both operands
+     * @return result
+     */
+    public Matrix dotTransposeRight(final Matrix m2, final Matrix result) {
+        m.zMult(m2.transposedData(), result.data(), 1.0, 0.0, false, false);
+        return result;
+    }
+
     public Matrix add(Matrix m2) {
         return apply(m2, ADD);
     }
@@ -128,6 +223,42 @@ public abstract class Matrix {
         return sum;
     }
 
+    /**
+     * sums[j] = alpha * (sum of column j) + beta * sums[j], in place
+     * Dense matrices are summed straight from their backing array, others by their non zero cells.
+     * @return sums
+     */
+    public double[] columnSums(final double[] sums, final double alpha, final double beta) {
+        final int rows = m.rows();
+        final int columns = m.columns();
+        if(sums.length != columns) {
+            throw new IllegalArgumentException("Sums (" + sums.length + ") must match columns (" + columns + ")");
+        }
+        for(int j = 0; j < columns; j++) {
+            sums[j] *= beta;
+        }
+
+        final double[] doubles = m instanceof DenseDoubleMatrix2D && !m.isView() ? ((DenseDoubleMatrix2D) m).elements() : null;
+        final float[] floats = m instanceof FloatBackedDoubleMatrix2D && ((FloatBackedDoubleMatrix2D) m).isContiguous() ? ((FloatBackedDoubleMatrix2D) m).elements : null;
+        if(doubles != null || floats != null) {
+            for(int i = 0; i < rows; i++) {
+                final int offset = i * columns;
+                for(int j = 0; j < columns; j++) {
+                    sums[j] += alpha * (doubles != null ? doubles[offset + j] : floats[offset + j]);
+                }
+            }
+        } else {
+            m.forEachNonZero(new IntIntDoubleFunction() {
+                @Override
+                public double apply(final int i, final int j, final double value) {
+                    sums[j] += alpha * value;
+                    return value;
+                }
+            });
+        }
+        return sums;
+    }
+
     public abstract Matrix apply(final DoubleFunction function);
 
     public abstract Matrix apply(final Matrix m2, final DoubleDoubleFunction function);
@@ -186,6 +317,20 @@ public abstract class Matrix {
         return appended;
     }
 
+    /**
+     * fill sequentially in row major order, so a seeded function produces the same matrix every time
+     * (Colt's assign may split large matrices across threads)
+     */
+    protected static Matrix fill(final Matrix matrix, final DoubleFunction function) {
+        final DoubleMatrix2D data = matrix.data();
+        for(int i = 0; i < data.rows(); i++) {
+            for(int j = 0; j < data.columns(); j++) {
+                data.setQuick(i, j, function.apply(0.0));
+            }
+        }
+        return matrix;
+    }
+
     public static int rows(final double[][] m) {
         return m.length;
     }
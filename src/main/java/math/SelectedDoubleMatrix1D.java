@@ -0,0 +1,109 @@
+package math;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix3D;
+
+/**
+ * One dimensional counterpart of SelectedDoubleMatrix2D, a selection view or a row or column of one.
+ * Cell i is cells[offset + offsets[zero + i * stride]].
+ */
+class SelectedDoubleMatrix1D extends DoubleMatrix1D {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DoubleMatrix1D cells;
+
+    private final int[] offsets;
+
+    private final int offset;
+
+    SelectedDoubleMatrix1D(final DoubleMatrix1D cells, final int[] offsets) {
+        this(cells, offsets.length, 0, 1, offsets, 0);
+    }
+
+    SelectedDoubleMatrix1D(final DoubleMatrix1D cells, final int size, final int zero, final int stride, final int[] offsets, final int offset) {
+        setUp(size, zero, stride);
+        this.cells = cells;
+        this.offsets = offsets;
+        this.offset = offset;
+        this.isNoView = false;
+    }
+
+    @Override
+    public double getQuick(final int index) {
+        return cells.getQuick(offset + offsets[zero + index * stride]);
+    }
+
+    @Override
+    public void setQuick(final int index, final double value) {
+        cells.setQuick(offset + offsets[zero + index * stride], value);
+    }
+
+    @Override
+    public long index(final int rank) {
+        return offset + offsets[zero + rank * stride];
+    }
+
+    @Override
+    public Object elements() {
+        return cells.elements();
+    }
+
+    @Override
+    public DoubleMatrix1D like(final int size) {
+        return cells.like(size);
+    }
+
+    @Override
+    public DoubleMatrix2D like2D(final int rows, final int columns) {
+        return cells.like2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix2D reshape(final int rows, final int columns) {
+        if(rows * columns != size) {
+            throw new IllegalArgumentException("rows * columns != size");
+        }
+        // column major, same as DenseDoubleMatrix1D
+        final DoubleMatrix2D matrix = cells.like2D(rows, columns);
+        int index = 0;
+        for(int column = 0; column < columns; column++) {
+            for(int row = 0; row < rows; row++) {
+                matrix.setQuick(row, column, getQuick(index++));
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public DoubleMatrix3D reshape(final int slices, final int rows, final int columns) {
+        if(slices * rows * columns != size) {
+            throw new IllegalArgumentException("slices * rows * columns != size");
+        }
+        // there is no 3D counterpart of the storage, copied into a dense matrix
+        final DoubleMatrix3D matrix = new DenseDoubleMatrix3D(slices, rows, columns);
+        int index = 0;
+        for(int slice = 0; slice < slices; slice++) {
+            for(int column = 0; column < columns; column++) {
+                for(int row = 0; row < rows; row++) {
+                    matrix.setQuick(slice, row, column, getQuick(index++));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    protected DoubleMatrix1D viewSelectionLike(final int[] offsets) {
+        // viewSelection passes absolute indexes, offset included
+        return new SelectedDoubleMatrix1D(cells, offsets);
+    }
+
+    @Override
+    protected int _offset(final int absRank) {
+        return offsets[absRank];
+    }
+
+}
@@ -0,0 +1,116 @@
+package math;
+
+import cern.colt.matrix.AbstractMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * Selection view (viewSelection, viewSorted) of a matrix with its own storage, the counterpart of Colt's
+ * SelectedDenseDoubleMatrix2D. The storage is accessed through cells, a flat 1D view of it addressed by the same
+ * absolute index as the matrix's own cells, so writes go through to the viewed matrix.
+ */
+class SelectedDoubleMatrix2D extends DoubleMatrix2D {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DoubleMatrix1D cells;
+
+    private int[] rowOffsets;
+
+    private int[] columnOffsets;
+
+    SelectedDoubleMatrix2D(final DoubleMatrix1D cells, final int[] rowOffsets, final int[] columnOffsets) {
+        // rows and columns are ranks into the offsets, not into the storage
+        setUp(rowOffsets.length, columnOffsets.length, 0, 0, 1, 1);
+        this.cells = cells;
+        this.rowOffsets = rowOffsets;
+        this.columnOffsets = columnOffsets;
+        this.isNoView = false;
+    }
+
+    @Override
+    public double getQuick(final int row, final int column) {
+        return cells.getQuick(rowOffsets[rowZero + row * rowStride] + columnOffsets[columnZero + column * columnStride]);
+    }
+
+    @Override
+    public void setQuick(final int row, final int column, final double value) {
+        cells.setQuick(rowOffsets[rowZero + row * rowStride] + columnOffsets[columnZero + column * columnStride], value);
+    }
+
+    @Override
+    public long index(final int row, final int column) {
+        return rowOffsets[rowZero + row * rowStride] + columnOffsets[columnZero + column * columnStride];
+    }
+
+    @Override
+    public Object elements() {
+        return cells.elements();
+    }
+
+    @Override
+    public DoubleMatrix2D like(final int rows, final int columns) {
+        return cells.like2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(final int size) {
+        return cells.like(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(final int size, final int zero, final int stride) {
+        // rows and columns of a selection are selections themselves, see viewRow and viewColumn
+        throw new UnsupportedOperationException("Selection views have no strided 1D views");
+    }
+
+    @Override
+    public DoubleMatrix1D viewRow(final int row) {
+        checkRow(row);
+        return new SelectedDoubleMatrix1D(cells, columns, columnZero, columnStride, columnOffsets, rowOffsets[rowZero + row * rowStride]);
+    }
+
+    @Override
+    public DoubleMatrix1D viewColumn(final int column) {
+        checkColumn(column);
+        return new SelectedDoubleMatrix1D(cells, rows, rowZero, rowStride, rowOffsets, columnOffsets[columnZero + column * columnStride]);
+    }
+
+    @Override
+    public DoubleMatrix1D vectorize() {
+        // column stacked, same as DenseDoubleMatrix2D
+        final DoubleMatrix1D vector = cells.like(rows * columns);
+        int index = 0;
+        for(int column = 0; column < columns; column++) {
+            for(int row = 0; row < rows; row++) {
+                vector.setQuick(index++, getQuick(row, column));
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(final int[] rowOffsets, final int[] columnOffsets) {
+        return new SelectedDoubleMatrix2D(cells, rowOffsets, columnOffsets);
+    }
+
+    @Override
+    protected int _rowOffset(final int absRank) {
+        return rowOffsets[absRank];
+    }
+
+    @Override
+    protected int _columnOffset(final int absRank) {
+        return columnOffsets[absRank];
+    }
+
+    @Override
+    protected AbstractMatrix2D vDice() {
+        super.vDice();
+        final int[] offsets = rowOffsets;
+        rowOffsets = columnOffsets;
+        columnOffsets = offsets;
+        return this;
+    }
+
+}
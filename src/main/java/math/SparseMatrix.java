@@ -34,6 +34,16 @@ public class SparseMatrix extends Matrix {
         return make(DENSE_DOUBLE_ALGEBRA.transpose(this.m));
     }
 
+    @Override
+    public Matrix dotTransposeLeft(Matrix m2) {
+        return make(m.zMult(m2.data(), null, 1.0, 0.0, true, false));
+    }
+
+    @Override
+    public Matrix dotTransposeRight(Matrix m2) {
+        return make(m.zMult(m2.data(), null, 1.0, 0.0, false, true));
+    }
+
     @Override
     public Matrix addColumns(final Matrix m2) {
         return make(DoubleFactory2D.sparse.appendColumns(m, m2.data()));
@@ -54,6 +64,26 @@ public class SparseMatrix extends Matrix {
         return mPieces;
     }
 
+    @Override
+    public Matrix viewRows(int row, int rows) {
+        return new SparseMatrix(m.viewPart(row, 0, rows, m.columns()));
+    }
+
+    @Override
+    public Matrix viewColumns(int column, int columns) {
+        return new SparseMatrix(m.viewPart(0, column, m.rows(), columns));
+    }
+
+    @Override
+    public Matrix like(int rows, int columns) {
+        return make(rows, columns);
+    }
+
+    @Override
+    public Matrix convert(Matrix m2) {
+        return m2;
+    }
+
     /* MUTABLE OPERATIONS */
     @Override
     public Matrix apply(DoubleFunction function) {
@@ -0,0 +1,58 @@
+package math.functions;
+
+import cern.colt.function.tdouble.DoubleFunction;
+
+/**
+ * Sigmoid read from a precomputed table with linear interpolation between entries, avoiding Math.exp per element.
+ * The table covers [-16, 16] at 256 entries per unit (~64KB, shared by all instances), beyond that the tails are
+ * clamped to min/max.
+ * Max absolute error vs 1 / (1 + e^(-x)) is below 3e-7 (interpolation error h^2/8 * max|sigmoid''| ~= 1.8e-7,
+ * clamped tail error sigmoid(-16) ~= 1.1e-7), scaled by (max - min) for the ranged version.
+ */
+public class LookupSigmoid implements DoubleFunction {
+
+    private static final double RANGE = 16.0;
+
+    private static final int RESOLUTION = 256;
+
+    private static final double[] TABLE = new double[(int) (2 * RANGE * RESOLUTION) + 1];
+    static {
+        for(int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = 1.0 / (1.0 + Math.exp(-((double) i / RESOLUTION - RANGE)));
+        }
+    }
+
+    private final double min;
+
+    private final double max;
+
+    public LookupSigmoid() {
+        this(0.0, 1.0);
+    }
+
+    /**
+     * table driven equivalent of RangedSigmoid
+     */
+    public LookupSigmoid(final double min, final double max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public double apply(double x) {
+        if(x <= -RANGE) { return min; }
+        if(x >= RANGE) { return max; }
+
+        final double position = (x + RANGE) * RESOLUTION;
+        final int index = (int) position;
+        final double lower = TABLE[index];
+        final double sigmoid = lower + (TABLE[index + 1] - lower) * (position - index);
+        return min + (max - min) * sigmoid;
+    }
+
+    @Override
+    public String toString() {
+        return "sigmoid(x) ~= min + ((max - min) * lookup(x)), min=" + min + ", max=" + max;
+    }
+
+}
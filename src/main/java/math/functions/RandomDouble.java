@@ -1,29 +1,40 @@
 package math.functions;
 
 import cern.colt.function.tdouble.DoubleFunction;
+import math.random.RandomSource;
 
 import java.util.Random;
 
 /**
  * Created by kenny on 5/24/14.
+ *
+ * Draws from the calling thread's RandomSource unless given a source, matrices may be filled from several threads.
  */
 public class RandomDouble implements DoubleFunction {
 
-    private static final Random RANDOM = new Random();
-
     private final double scalar;
 
+    private final Random random;
+
     public RandomDouble() {
         this(1.0);
     }
 
     public RandomDouble(final double scalar) {
+        this(scalar, null);
+    }
+
+    /**
+     * @param random source to draw from, must only be used by one thread. null for the thread's own source
+     */
+    public RandomDouble(final double scalar, final Random random) {
         this.scalar = scalar;
+        this.random = random;
     }
 
     @Override
     public double apply(double v) {
-        return RANDOM.nextDouble() * scalar;
+        return (random == null ? RandomSource.current() : random).nextDouble() * scalar;
     }
 
 }
@@ -1,19 +1,33 @@
 package math.functions;
 
 import cern.colt.function.tdouble.DoubleFunction;
+import math.random.RandomSource;
 
 import java.util.Random;
 
 /**
  * Created by kenny on 5/24/14.
+ *
+ * Draws from the calling thread's RandomSource unless given a source, matrices may be filled from several threads.
  */
 public class RandomGaussian implements DoubleFunction {
 
-    private static final Random RANDOM = new Random();
+    private final Random random;
+
+    public RandomGaussian() {
+        this(null);
+    }
+
+    /**
+     * @param random source to draw from, must only be used by one thread. null for the thread's own source
+     */
+    public RandomGaussian(final Random random) {
+        this.random = random;
+    }
 
     @Override
     public double apply(double v) {
-        return RANDOM.nextGaussian() * 0.1;
+        return (random == null ? RandomSource.current() : random).nextGaussian() * 0.1;
     }
 
 }
@@ -0,0 +1,48 @@
+package math.functions;
+
+import cern.colt.function.tdouble.DoubleFunction;
+
+/**
+ * Sigmoid computed from a rational (Pade [7/6]) approximation of tanh, using sigmoid(x) = (1 + tanh(x / 2)) / 2.
+ * Only multiplications and a single division, no table and no Math.exp. Clamped to min/max for |x| > 9.94,
+ * where the approximation would start to overshoot.
+ * Max absolute error vs 1 / (1 + e^(-x)) is below 5e-5, scaled by (max - min) for the ranged version.
+ */
+public class RationalSigmoid implements DoubleFunction {
+
+    private static final double CLAMP = 9.94;
+
+    private final double min;
+
+    private final double max;
+
+    public RationalSigmoid() {
+        this(0.0, 1.0);
+    }
+
+    /**
+     * rational approximation equivalent of RangedSigmoid
+     */
+    public RationalSigmoid(final double min, final double max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public double apply(double x) {
+        if(x <= -CLAMP) { return min; }
+        if(x >= CLAMP) { return max; }
+
+        final double y = 0.5 * x;
+        final double y2 = y * y;
+        final double tanh = y * (135135.0 + y2 * (17325.0 + y2 * (378.0 + y2)))
+                              / (135135.0 + y2 * (62370.0 + y2 * (3150.0 + y2 * 28.0)));
+        return min + (max - min) * 0.5 * (1.0 + tanh);
+    }
+
+    @Override
+    public String toString() {
+        return "sigmoid(x) ~= min + ((max - min) * (1 + pade(tanh(x / 2))) / 2), min=" + min + ", max=" + max;
+    }
+
+}
@@ -0,0 +1,141 @@
+package math.random;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fast, seedable and splittable random number generator (SplitMix64, the generator behind java.util.SplittableRandom).
+ * Extends java.util.Random so it can be used anywhere a Random is expected (Collections.shuffle, etc.), but unlike
+ * java.util.Random it has no CAS or synchronization on its state, so an instance must not be shared between threads.
+ * Use one source per thread (current()) or, for reproducible results independent of thread scheduling, one source per
+ * unit of work derived from a seed and stream keys, e.g. new RandomSource(seed, layer, rbm).
+ */
+public class RandomSource extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong(System.nanoTime());
+
+    private static final ThreadLocal<RandomSource> CURRENT = new ThreadLocal<RandomSource>() {
+        @Override
+        protected RandomSource initialValue() {
+            return new RandomSource();
+        }
+    };
+
+    // no field initializers, Random's constructor calls setSeed before they would run
+    private long state;
+
+    private double nextNextGaussian;
+
+    private boolean haveNextNextGaussian;
+
+    /**
+     * unseeded, every instance gets a distinct stream
+     */
+    public RandomSource() {
+        this(mix64(SEED_UNIQUIFIER.addAndGet(GOLDEN_GAMMA)) ^ System.nanoTime());
+    }
+
+    public RandomSource(final long seed) {
+        super(seed);
+        setSeed(seed);
+    }
+
+    /**
+     * independent stream keyed by seed and stream ids, e.g. (seed, layer, rbm). The same keys always produce the same
+     * sequence, regardless of which thread consumes it.
+     */
+    public RandomSource(final long seed, final long... streams) {
+        this(derive(seed, streams));
+    }
+
+    /**
+     * the calling thread's source, for sampling that does not need to be reproducible
+     */
+    public static RandomSource current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * a new independent source, seeded from this one
+     */
+    public RandomSource split() {
+        return new RandomSource(mix64(nextLong() ^ GOLDEN_GAMMA));
+    }
+
+    @Override
+    public void setSeed(final long seed) {
+        this.state = seed;
+        this.haveNextNextGaussian = false;
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    @Override
+    protected int next(final int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Marsaglia polar method, same as Random.nextGaussian() without the synchronization
+     */
+    @Override
+    public double nextGaussian() {
+        if(haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextNextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while(s >= 1 || s == 0);
+        final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextNextGaussian = v2 * multiplier;
+        haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    private static long derive(final long seed, final long... streams) {
+        long derived = mix64(seed);
+        for(long stream : streams) {
+            derived = mix64(derived ^ mix64(stream + GOLDEN_GAMMA));
+        }
+        return derived;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -2,6 +2,7 @@ package nlp.encode;
 
 import math.DenseMatrix;
 import math.Matrix;
+import math.random.RandomSource;
 
 import java.util.Random;
 
@@ -11,7 +12,7 @@ import java.util.Random;
  */
 public class DiscreteRandomWordEncoder implements WordEncoder {
 
-    private final static Random RANDOM = new Random();
+    private final Random random;
 
     private final int dimensions;
 
@@ -20,13 +21,21 @@ public class DiscreteRandomWordEncoder implements WordEncoder {
     }
 
     public DiscreteRandomWordEncoder(int dimensions) {
+        this(dimensions, new RandomSource());
+    }
+
+    /**
+     * @param random source of the word vectors, seed it for a reproducible dictionary
+     */
+    public DiscreteRandomWordEncoder(int dimensions, Random random) {
         this.dimensions = dimensions;
+        this.random = random;
     }
 
     public Matrix encode(String word) {
         Matrix matrix = DenseMatrix.make(1, dimensions);
         for(int i = 0; i < dimensions; i++) {
-            matrix.set(0, i, RANDOM.nextGaussian() > 0 ? 1.0 : 0.0);
+            matrix.set(0, i, random.nextGaussian() > 0 ? 1.0 : 0.0);
         }
         return matrix;
     }
@@ -2,6 +2,7 @@ package nlp.encode;
 
 import math.DenseMatrix;
 import math.Matrix;
+import math.random.RandomSource;
 
 import java.util.Random;
 
@@ -11,7 +12,7 @@ import java.util.Random;
  */
 public class RandomWordEncoder implements WordEncoder {
 
-    private final static Random RANDOM = new Random();
+    private final Random random;
 
     private final int dimensions;
 
@@ -20,13 +21,21 @@ public class RandomWordEncoder implements WordEncoder {
     }
 
     public RandomWordEncoder(int dimensions) {
+        this(dimensions, new RandomSource());
+    }
+
+    /**
+     * @param random source of the word vectors, seed it for a reproducible dictionary
+     */
+    public RandomWordEncoder(int dimensions, Random random) {
         this.dimensions = dimensions;
+        this.random = random;
     }
 
     public Matrix encode(String word) {
         Matrix matrix = DenseMatrix.make(1, dimensions);
         for(int i = 0; i < dimensions; i++) {
-            matrix.set(0, i, RANDOM.nextDouble());
+            matrix.set(0, i, random.nextDouble());
         }
         return matrix;
     }
@@ -2,21 +2,43 @@ package nn.rbm;
 
 import math.DenseMatrix;
 import math.Matrix;
+import math.random.RandomSource;
 
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * Created by kenny on 5/12/14.
  *
+ * Visible and hidden biases are kept as plain vectors next to the weights and added to the activations inside the
+ * sampling kernels, so the data never needs a constant bias column appended. They start at 0.
  */
 public class RBM {
 
-    private static final Random RANDOM = new Random();
-
     private Matrix weights;
 
+    private double[] visibleBias;
+
+    private double[] hiddenBias;
+
     public RBM(final int visibleSize, final int hiddenSize) {
-        this.weights = DenseMatrix.randomGaussian(visibleSize, hiddenSize);
+        this(DenseMatrix.randomGaussian(visibleSize, hiddenSize));
+    }
+
+    /**
+     * @param weights (visible x hidden) weight matrix, its storage type (e.g. FloatMatrix) is used for all buffers
+     *                trainers build for this rbm
+     */
+    public RBM(final Matrix weights) {
+        this(weights, new double[weights.rows()], new double[weights.columns()]);
+    }
+
+    public RBM(final Matrix weights, final double[] visibleBias, final double[] hiddenBias) {
+        if(visibleBias.length != weights.rows() || hiddenBias.length != weights.columns()) {
+            throw new IllegalArgumentException("Biases (" + visibleBias.length + ", " + hiddenBias.length + ") must match weights (" + weights.rows() + "x" + weights.columns() + ")");
+        }
+        this.weights = weights;
+        this.visibleBias = visibleBias;
+        this.hiddenBias = hiddenBias;
     }
 
     public int getVisibleSize() {
@@ -29,7 +51,7 @@ public class RBM {
 
     public void addVisibleNodes(int n) {
 
-        final Matrix weights = DenseMatrix.make(getVisibleSize() + n, getHiddenSize());
+        final Matrix weights = this.weights.like(getVisibleSize() + n, getHiddenSize());
         // copy original values
         for(int i = 0; i < this.weights.rows(); i++) {
             for(int j = 0; j < this.weights.columns(); j++) {
@@ -39,10 +61,11 @@ public class RBM {
         // randomly init new weights;
         for(int i = 0; i < this.weights.rows(); i++) {
             for(int j = this.weights.columns(); j < weights.columns(); j++) {
-                weights.set(i, j, RANDOM.nextGaussian() * 0.1);
+                weights.set(i, j, RandomSource.current().nextGaussian() * 0.1);
             }
         }
         this.weights = weights;
+        this.visibleBias = Arrays.copyOf(visibleBias, getVisibleSize());
     }
 
     public Matrix getWeights() {
@@ -53,6 +76,27 @@ public class RBM {
         this.weights = weights;
     }
 
+    /**
+     * @return the visible biases, trainers update them in place
+     */
+    public double[] getVisibleBias() {
+        return visibleBias;
+    }
+
+    /**
+     * @return the hidden biases, trainers update them in place
+     */
+    public double[] getHiddenBias() {
+        return hiddenBias;
+    }
+
+    /**
+     * @return a deep copy of the weights and biases
+     */
+    public RBM copy() {
+        return new RBM(weights.copy(), visibleBias.clone(), hiddenBias.clone());
+    }
+
     @Override
     public String toString() {
         return "RBM{" +
@@ -34,8 +34,8 @@ public class DeepRBM {
 
         rbmLayers = new RBMLayer[layerParameters.length];
 
-        this.visibleSize = layerParameters[0].getVisibleUnitsPerRBM() * layerParameters[0].getNumRBMS();
-        this.hiddenSize = layerParameters[layerParameters.length - 1].getHiddenUnitsPerRBM() * layerParameters[layerParameters.length - 1].getNumRBMS();
+        this.visibleSize = visibleSize(layerParameters);
+        this.hiddenSize = hiddenSize(layerParameters);
 
         for(int layer = 0; layer < layerParameters.length; layer++) {
             final LayerParameters layerParameter = layerParameters[layer];
@@ -66,9 +66,35 @@ public class DeepRBM {
     }
 
     public DeepRBM(final RBMLayer[] rbmLayers) {
+        this(rbmLayers, layerParameters(rbmLayers));
+    }
+
+    /**
+     * For layers whose rbms should not be touched to find the sizes, e.g. loaded lazily
+     */
+    protected DeepRBM(final RBMLayer[] rbmLayers, final LayerParameters[] layerParameters) {
         this.rbmLayers = rbmLayers;
-        this.visibleSize = rbmLayers[0].size() * rbmLayers[0].getRBM(0).getVisibleSize();
-        this.hiddenSize = rbmLayers[rbmLayers.length - 1].size() * rbmLayers[rbmLayers.length - 1].getRBM(0).getVisibleSize();
+        this.visibleSize = visibleSize(layerParameters);
+        this.hiddenSize = hiddenSize(layerParameters);
+    }
+
+    private static LayerParameters[] layerParameters(final RBMLayer[] rbmLayers) {
+        final LayerParameters[] layerParameters = new LayerParameters[rbmLayers.length];
+        for(int layer = 0; layer < rbmLayers.length; layer++) {
+            final RBM rbm = rbmLayers[layer].getRBM(0);
+            layerParameters[layer] = new LayerParameters().setNumRBMS(rbmLayers[layer].size())
+                    .setVisibleUnitsPerRBM(rbm.getVisibleSize()).setHiddenUnitsPerRBM(rbm.getHiddenSize());
+        }
+        return layerParameters;
+    }
+
+    // the sizes of every constructor, the first layer's visible units and the last layer's hidden units
+    private static int visibleSize(final LayerParameters[] layerParameters) {
+        return layerParameters[0].getNumRBMS() * layerParameters[0].getVisibleUnitsPerRBM();
+    }
+
+    private static int hiddenSize(final LayerParameters[] layerParameters) {
+        return layerParameters[layerParameters.length - 1].getNumRBMS() * layerParameters[layerParameters.length - 1].getHiddenUnitsPerRBM();
     }
 
     public RBMLayer[] getRbmLayers() {
@@ -0,0 +1,22 @@
+package nn.rbm.factory;
+
+import math.FloatMatrix;
+import math.Matrix;
+
+/**
+ * Builds RBMs with single precision weights, trainers then keep all activations and associations in float as well.
+ */
+public class RandomFloatRBMFactory extends RandomRBMFactory {
+
+    public RandomFloatRBMFactory() {}
+
+    public RandomFloatRBMFactory(final long seed) {
+        super(seed);
+    }
+
+    @Override
+    protected Matrix makeWeights(final int numVisibleNodes, final int numHiddenNodes) {
+        return FloatMatrix.make(numVisibleNodes, numHiddenNodes);
+    }
+
+}
@@ -1,22 +1,39 @@
 package nn.rbm.factory;
 
+import math.DenseMatrix;
 import math.Matrix;
+import math.random.RandomSource;
 import nn.rbm.RBM;
 
 import java.util.Random;
 
 /**
  * Created by kenny on 5/12/14.
+ *
+ * Not thread safe, use one factory per thread.
  */
 public class RandomRBMFactory implements RBMFactory {
 
-    private static final Random RANDOM = new Random();
+    private final Random random;
 
-    public RandomRBMFactory() {}
+    public RandomRBMFactory() {
+        this(new RandomSource());
+    }
+
+    /**
+     * reproducible weights, the same seed builds the same sequence of rbms
+     */
+    public RandomRBMFactory(final long seed) {
+        this(new RandomSource(seed));
+    }
+
+    public RandomRBMFactory(final Random random) {
+        this.random = random;
+    }
 
     @Override
     public RBM build(final int numVisibleNodes, final int numHiddenNodes) {
-        final RBM rbm = new RBM(numVisibleNodes, numHiddenNodes);
+        final RBM rbm = new RBM(makeWeights(numVisibleNodes, numHiddenNodes));
 
         final Matrix weights = rbm.getWeights();
         for(int i = 0; i < numVisibleNodes; i++) {
@@ -27,8 +44,12 @@ public class RandomRBMFactory implements RBMFactory {
         return rbm;
     }
 
-    private static double randomWeight() {
-        return RANDOM.nextGaussian() * 0.1;
+    protected Matrix makeWeights(final int numVisibleNodes, final int numHiddenNodes) {
+        return DenseMatrix.make(numVisibleNodes, numHiddenNodes);
+    }
+
+    private double randomWeight() {
+        return random.nextGaussian() * 0.1;
     }
 
 }
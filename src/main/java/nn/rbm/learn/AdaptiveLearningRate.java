@@ -0,0 +1,17 @@
+package nn.rbm.learn;
+
+/**
+ * Per parameter learning rates, each step is divided by the root of the parameter's accumulated squared gradients.
+ */
+public enum AdaptiveLearningRate {
+
+    /** plain learning rate */
+    NONE,
+
+    /** sum of all squared gradients so far, rates only decrease */
+    ADAGRAD,
+
+    /** decaying average of squared gradients, see LearningParameters.setRmsDecay */
+    RMSPROP
+
+}
@@ -61,6 +61,10 @@ public class BackErrorPropagation {
         final Matrix output = DenseMatrix.make(1, rbm.getHiddenSize());
 
         final Matrix weights = rbm.getWeights();
+        final double[] hiddenBias = rbm.getHiddenBias();
+        for (int j = 0; j < rbm.getHiddenSize(); j++) {
+            output.set(0, j, hiddenBias[j]);
+        }
 
         for (int i = 0; i < rbm.getVisibleSize(); i++) {
             for (int j = 0; j < rbm.getHiddenSize(); j++) {
@@ -91,6 +95,11 @@ public class BackErrorPropagation {
                 weights.set(i, j, weights.get(i, j) + learningParameters.getLearningRate() * errors.get(0, j) * input.get(0, i));
             }
         }
+        // the bias is a weight from an input that is always 1
+        final double[] hiddenBias = rbm.getHiddenBias();
+        for (int j = 0; j < rbm.getHiddenSize(); j++) {
+            hiddenBias[j] += learningParameters.getLearningRate() * errors.get(0, j);
+        }
     }
 
     /**
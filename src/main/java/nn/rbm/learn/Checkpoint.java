@@ -0,0 +1,62 @@
+package nn.rbm.learn;
+
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+
+/**
+ * Training state saved by a Checkpointer: the weights and how far training got.
+ * rbms before (layer, rbm) in training order are fully trained, the rbm at (layer, rbm) has trained epoch epochs.
+ * A single RBM trained by ContrastiveDivergence is saved as a DeepRBM of one layer of one rbm.
+ * Optimizer state (momentum velocities, AdaGrad/RMSProp squared gradients) and PCD fantasy particles are not part of
+ * it, they are reset on resume.
+ */
+public class Checkpoint {
+
+    private final DeepRBM deepRBM;
+
+    private final int layer;
+
+    private final int rbm;
+
+    private final int epoch;
+
+    public Checkpoint(final DeepRBM deepRBM, final int layer, final int rbm, final int epoch) {
+        this.deepRBM = deepRBM;
+        this.layer = layer;
+        this.rbm = rbm;
+        this.epoch = epoch;
+    }
+
+    public DeepRBM getDeepRBM() {
+        return deepRBM;
+    }
+
+    /**
+     * @return the rbm being trained when the checkpoint was taken
+     */
+    public RBM getRBM() {
+        return deepRBM.getRbmLayers()[layer].getRBM(rbm);
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    public int getRBMIndex() {
+        return rbm;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" +
+                "layer=" + layer +
+                ", rbm=" + rbm +
+                ", epoch=" + epoch +
+                '}';
+    }
+
+}
@@ -0,0 +1,211 @@
+package nn.rbm.learn;
+
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.RBMLayer;
+import nn.rbm.save.IndexedDeepRBMPersister;
+import org.apache.log4j.Logger;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Periodically saves the weights and progress of a training run, so that it can be resumed after a crash.
+ *
+ * A checkpoint is taken every everyEpochs epochs or every everyMillis, whichever comes first (0 disables either).
+ * The training thread only copies the weights changed since the previous checkpoint, the unchanged rbms of a deep
+ * model are shared with the previous snapshot. Writing happens on a background thread. If training produces
+ * snapshots faster than they are written, only the latest pending one is written. Writes never overlap, so the
+ * executor may be shared with training.
+ *
+ * Files are written to a temporary file and moved into place: path.drbm (IndexedDeepRBMPersister format) and
+ * path.progress (layer,rbm,epoch). The progress file is moved after the weights, so it never claims more than the
+ * weights hold.
+ * One Checkpointer per training run.
+ */
+public class Checkpointer {
+
+    private static final Logger LOGGER = Logger.getLogger(Checkpointer.class);
+
+    private static final IndexedDeepRBMPersister PERSISTER = new IndexedDeepRBMPersister();
+
+    private final String path;
+
+    private final int everyEpochs;
+
+    private final long everyMillis;
+
+    private final WorkStealingExecutor executor;
+
+    // held while writing, a write submitted while another is running waits and then takes the latest snapshot
+    private final Object writeLock = new Object();
+
+    private final AtomicReference<Checkpoint> pending = new AtomicReference<>();
+
+    private volatile CountDownLatch written = new CountDownLatch(0);
+
+    private long lastCheckpointMillis = System.currentTimeMillis();
+
+    // copies of the last snapshot and the training position they were taken at
+    private RBM[][] snapshot;
+
+    private int snapshotPosition;
+
+    private long snapshots;
+
+    private long snapshotNanos;
+
+    /**
+     * @param path file path without extension
+     */
+    public Checkpointer(final String path, final int everyEpochs, final long everyMillis) {
+        this(path, everyEpochs, everyMillis, WorkStealingExecutor.shared());
+    }
+
+    /**
+     * @param executor writes the checkpoints in the background
+     */
+    public Checkpointer(final String path, final int everyEpochs, final long everyMillis, final WorkStealingExecutor executor) {
+        this.path = path;
+        this.everyEpochs = everyEpochs;
+        this.everyMillis = everyMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * @param epoch epochs trained so far of the current rbm
+     */
+    public boolean isDue(final int epoch) {
+        return (everyEpochs > 0 && epoch % everyEpochs == 0)
+                || (everyMillis > 0 && System.currentTimeMillis() - lastCheckpointMillis >= everyMillis);
+    }
+
+    /**
+     * Snapshot a single rbm trained by ContrastiveDivergence
+     */
+    public void checkpoint(final RBM rbm, final int epoch) {
+        checkpoint(new DeepRBM(new RBMLayer[] {new RBMLayer(new RBM[] {rbm})}), 0, 0, epoch);
+    }
+
+    /**
+     * Snapshot a DeepRBM trained greedily, rbm by rbm in layer order. rbms between the previous checkpoint's
+     * position and (layer, rbm) are copied, all others are assumed unchanged since the previous checkpoint.
+     */
+    public void checkpoint(final DeepRBM deepRBM, final int layer, final int rbm, final int epoch) {
+        final long start = System.nanoTime();
+        final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
+        final int position = position(rbmLayers, layer, rbm);
+
+        final RBM[][] copies = new RBM[rbmLayers.length][];
+        final RBMLayer[] snapshotLayers = new RBMLayer[rbmLayers.length];
+        for(int l = 0, p = 0; l < rbmLayers.length; l++) {
+            copies[l] = new RBM[rbmLayers[l].size()];
+            for(int r = 0; r < copies[l].length; r++, p++) {
+                final boolean changed = snapshot == null || (p >= snapshotPosition && p <= position);
+                copies[l][r] = changed ? rbmLayers[l].getRBM(r).copy() : snapshot[l][r];
+            }
+            snapshotLayers[l] = new RBMLayer(copies[l]);
+        }
+        snapshot = copies;
+        snapshotPosition = position;
+        lastCheckpointMillis = System.currentTimeMillis();
+        snapshots++;
+        snapshotNanos += System.nanoTime() - start;
+
+        final Checkpoint checkpoint = new Checkpoint(new DeepRBM(snapshotLayers), layer, rbm, epoch);
+        if(pending.getAndSet(checkpoint) == null) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            written = latch;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized(writeLock) {
+                            write(pending.getAndSet(null));
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Wait for pending checkpoints to be written
+     */
+    public void flush() {
+        try {
+            WorkStealingExecutor.await(written);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the last written checkpoint, null if there is none
+     */
+    public Checkpoint load() {
+        final File progressFile = new File(path + ".progress");
+        if(!progressFile.exists()) {
+            return null;
+        }
+        try {
+            final String[] progress = new String(Files.readAllBytes(progressFile.toPath()), StandardCharsets.UTF_8).trim().split(",");
+            final DeepRBM deepRBM = PERSISTER.load(path + ".drbm");
+            if(deepRBM == null) {
+                return null;
+            }
+            final Checkpoint checkpoint = new Checkpoint(deepRBM, Integer.parseInt(progress[0]), Integer.parseInt(progress[1]), Integer.parseInt(progress[2]));
+            // resuming continues snapshots from here
+            snapshot = null;
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to load checkpoint " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return average time the training thread spent taking a snapshot
+     */
+    public double getMeanSnapshotMillis() {
+        return snapshots == 0 ? 0.0 : snapshotNanos / 1e6 / snapshots;
+    }
+
+    private void write(final Checkpoint checkpoint) {
+        try {
+            final File weights = new File(path + ".drbm");
+            final File weightsTmp = new File(path + ".drbm.tmp");
+            PERSISTER.save(checkpoint.getDeepRBM(), weightsTmp.getPath());
+            Files.move(weightsTmp.toPath(), weights.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            final File progress = new File(path + ".progress");
+            final File progressTmp = new File(path + ".progress.tmp");
+            try(Writer writer = new FileWriter(progressTmp)) {
+                writer.write(checkpoint.getLayer() + "," + checkpoint.getRBMIndex() + "," + checkpoint.getEpoch() + "\n");
+            }
+            Files.move(progressTmp.toPath(), progress.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Wrote " + checkpoint + " to " + path);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to write " + checkpoint + " to " + path, e);
+        }
+    }
+
+    private static int position(final RBMLayer[] rbmLayers, final int layer, final int rbm) {
+        int position = rbm;
+        for(int l = 0; l < layer; l++) {
+            position += rbmLayers[l].size();
+        }
+        return position;
+    }
+
+}
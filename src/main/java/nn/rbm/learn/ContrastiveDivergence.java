@@ -1,40 +1,77 @@
 package nn.rbm.learn;
 
-import cern.colt.function.tdouble.DoubleDoubleFunction;
-import cern.colt.function.tdouble.DoubleFunction;
-import math.DenseMatrix;
+import data.batch.BatchSource;
+import data.batch.ListBatchSource;
+import math.BinaryMatrix;
+import math.LayerSampler;
 import math.Matrix;
-import math.functions.Sigmoid;
-import math.functions.doubledouble.rbm.ActivationState;
 import nn.rbm.RBM;
 import org.apache.log4j.Logger;
 import utils.Clock;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
  * Created by kenny on 5/15/14.
  *
+ * Not thread safe, batch workspaces are cached per instance. Use one instance per training thread.
+ *
  *  * http://blog.echen.me/2011/07/18/introduction-to-restricted-boltzmann-machines/
  */
 public class ContrastiveDivergence {
 
     private static final Logger LOGGER = Logger.getLogger(ContrastiveDivergence.class);
 
-    private static final DoubleDoubleFunction ACTIVATION_STATE = new ActivationState();
-
     private final Clock clock = new Clock();
 
     private final LearningParameters learningParameters;
 
-    private final DoubleFunction logisticsFunction;
+    private final Random random;
+
+    private final LayerSampler sampler;
+
+    // one workspace per batch size, so uneven final batches do not force reallocation every epoch
+    private final Map<Integer, ContrastiveDivergenceWorkspace> workspaces = new HashMap<>();
+
+    // called on the training thread after every epoch, null for none
+    private EpochListener epochListener;
+
+    // null to always train all epochs
+    private EarlyStopping earlyStopping;
+
+    // momentum and adaptive rate buffers of the rbm being trained, kept across learn calls on the same rbm
+    private Optimizer optimizer;
+
+    // persistent chains of the rbm being trained, kept across batches and learn calls on the same rbm. null for CD-k
+    private GibbsChains fantasyParticles;
+
+    private RBM fantasyRBM;
+
+    // runs dayDream's chains, built on first use
+    private GibbsSampler gibbsSampler;
+
+    // epoch being trained, selects the scheduled learning rate
+    private int epoch;
 
     public ContrastiveDivergence(final LearningParameters learningParameters) {
+        this(learningParameters, learningParameters.newRandomSource());
+    }
+
+    /**
+     * @param random source of all sampling and batch shuffling done by this instance
+     */
+    public ContrastiveDivergence(final LearningParameters learningParameters, final Random random) {
         this.learningParameters = learningParameters;
-        this.logisticsFunction = new Sigmoid();
+        this.random = random;
+        this.sampler = new LayerSampler(learningParameters.getLogisticsFunction(), random);
     }
 
     /**
@@ -51,45 +88,207 @@ public class ContrastiveDivergence {
     }
 
     public void learn(final RBM rbm, final Collection<Matrix> dataSets) {
-        final Matrix weights = rbm.getWeights();
+        learn(rbm, toBatchSource(rbm, dataSets), false, 0, learningParameters.getEpochs());
+    }
 
-        clock.start();
-        for(int epoch = 0; epoch < learningParameters.getEpochs(); epoch++) {
+    /**
+     * Learn from a stream of mini-batches. Each epoch every batch is pulled from the source exactly once, so only one
+     * batch needs to be resident in memory at a time. The batch order is shuffled each epoch unless disabled via
+     * LearningParameters.setShuffleBatches(false), in which case the weight updates are the same as learning the
+     * same batches as a Collection.
+     * @param rbm
+     * @param batchSource
+     */
+    public void learn(final RBM rbm, final BatchSource batchSource) {
+        learn(rbm, batchSource, learningParameters.isShuffleBatches(), 0, learningParameters.getEpochs());
+    }
 
-            double error = 0;
-            for(Matrix dataSet : dataSets) {
-                final int numberSamples = dataSet.rows();
+    /**
+     * Continue training the checkpoint's rbm from the checkpoint's epoch.
+     * A resumed run is not identical to an uninterrupted one: sampling restarts from this instance's random source, and
+     * the optimizer state is not saved with the checkpoint, so momentum velocities and AdaGrad/RMSProp squared gradients
+     * start again from zero. Neither are PCD fantasy particles saved, they are seeded again from the first batch.
+     * @return the trained rbm
+     */
+    public RBM resume(final Checkpoint checkpoint, final Matrix dataSet) {
+        final RBM rbm = checkpoint.getRBM();
+        learn(rbm, dataSet, checkpoint.getEpoch());
+        return rbm;
+    }
 
-                // Read training data and sample from the hidden later, positive CD phase, (reality phase)
-                final Matrix positiveHiddenActivations = dataSet.dot(weights);
-                final Matrix positiveHiddenProbabilities = positiveHiddenActivations.copy().apply(logisticsFunction);
-                final Matrix positiveHiddenStates = positiveHiddenProbabilities.apply(DenseMatrix.random(numberSamples, rbm.getHiddenSize()), ACTIVATION_STATE);
+    public RBM resume(final Checkpoint checkpoint, final BatchSource batchSource) {
+        final RBM rbm = checkpoint.getRBM();
+        learn(rbm, batchSource, learningParameters.isShuffleBatches(), checkpoint.getEpoch(), learningParameters.getEpochs());
+        return rbm;
+    }
 
-                // Note that we're using the activation *probabilities* of the hidden states, not the hidden states themselves, when computing associations.
-                // We could also use the states; see section 3 of Hinton's A Practical Guide to Training Restricted Boltzmann Machines" for more.
-                final Matrix positiveAssociations = dataSet.transpose().dot(positiveHiddenProbabilities);
+    /**
+     * Snapshot the weights via the checkpointer whenever it is due, and once more when training finishes.
+     * The final checkpoint is written before learn returns.
+     */
+    public void setCheckpointer(final Checkpointer checkpointer) {
+        setEpochListener(new EpochListener() {
+            @Override
+            public void epochFinished(final RBM rbm, final int epochs, final boolean last) {
+                // a run stopped early is saved as finished, so resuming it does not train further
+                if(last || checkpointer.isDue(epochs)) {
+                    checkpointer.checkpoint(rbm, last ? learningParameters.getEpochs() : epochs);
+                }
+                if(last) {
+                    checkpointer.flush();
+                }
+            }
+        });
+    }
 
-                // Reconstruct the visible units and sample again from the hidden units. negative CD phase, aka the daydreaming phase.
-                final Matrix negativeVisibleActivations = positiveHiddenStates.dot(weights.transpose());
-                final Matrix negativeVisibleProbabilities = negativeVisibleActivations.apply(logisticsFunction);
-                final Matrix negativeHiddenActivations = negativeVisibleProbabilities.dot(weights);
-                final Matrix negativeHiddenProbabilities = negativeHiddenActivations.apply(logisticsFunction);
+    void setEpochListener(final EpochListener epochListener) {
+        this.epochListener = epochListener;
+    }
 
-                // Note, again, that we're using the activation *probabilities* when computing associations, not the states themselves.
-                final Matrix negativeAssociations = negativeVisibleProbabilities.transpose().dot(negativeHiddenProbabilities);
+    /**
+     * Stop training once the error on a validation set stops improving, see EarlyStopping.
+     * The EarlyStopping holds the outcome of the last learn call.
+     */
+    public void setEarlyStopping(final EarlyStopping earlyStopping) {
+        this.earlyStopping = earlyStopping;
+    }
 
-                // Update weights.
-                final Matrix updates = positiveAssociations.subtract(negativeAssociations).divide(numberSamples).multiply(learningParameters.getLearningRate());
-                weights.add(updates);
+    // learn starting after startEpoch epochs were already trained
+    void learn(final RBM rbm, final Matrix dataSet, final int startEpoch) {
+        learn(rbm, dataSet, startEpoch, learningParameters.getEpochs());
+    }
 
-                error += dataSet.copy().subtract(negativeVisibleProbabilities).pow(2).sum();
+    // learn epochs [startEpoch, endEpoch) of a run of learningParameters.getEpochs(), so schedules follow the whole run
+    void learn(final RBM rbm, final Matrix dataSet, final int startEpoch, final int endEpoch) {
+        learn(rbm, toBatchSource(rbm, Arrays.asList(dataSet)), false, startEpoch, endEpoch);
+    }
+
+    private void learn(final RBM rbm, final BatchSource batchSource, final boolean shuffle, final int startEpoch, final int endEpoch) {
+        // an int[] rather than a List<Integer>, iterating the list every epoch creates garbage
+        final int[] batchOrder = new int[batchSource.size()];
+        for(int batch = 0; batch < batchOrder.length; batch++) {
+            batchOrder[batch] = batch;
+        }
+
+        if(earlyStopping != null) {
+            earlyStopping.start(rbm, learningParameters);
+        }
+        clock.start();
+        for(int epoch = startEpoch; epoch < endEpoch; epoch++) {
+            this.epoch = epoch;
+            if(shuffle) {
+                shuffle(batchOrder, random);
+            }
+
+            double error = 0;
+            for(int batch : batchOrder) {
+                error += learnBatch(rbm, batchSource.get(batch));
             }
 
             if(learningParameters.isLog() && epoch % 10 == 0 & epoch > 0) {
                 LOGGER.info("Epoch: " + epoch + "/" + learningParameters.getEpochs() + ", error: " + error + ", time: " + clock.elapsedMillis() + "ms");
             }
+            final boolean stop = earlyStopping != null && earlyStopping.epochFinished(rbm, epoch + 1);
+            if(epochListener != null) {
+                epochListener.epochFinished(rbm, epoch + 1, stop || epoch + 1 == endEpoch);
+            }
             clock.reset();
+            if(stop) {
+                break;
+            }
         }
+        if(earlyStopping != null) {
+            earlyStopping.finish();
+        }
+    }
+
+    // same swaps as Collections.shuffle(List, Random), so seeded runs visit batches in the same order
+    private static void shuffle(final int[] order, final Random random) {
+        for(int i = order.length; i > 1; i--) {
+            final int j = random.nextInt(i);
+            final int swap = order[i - 1];
+            order[i - 1] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private static BatchSource toBatchSource(final RBM rbm, final Collection<Matrix> dataSets) {
+        // convert once up front so the data matches the weights' storage type every epoch
+        final List<Matrix> converted = new ArrayList<>(dataSets.size());
+        for(Matrix dataSet : dataSets) {
+            converted.add(rbm.getWeights().convert(dataSet));
+        }
+        return new ListBatchSource(converted);
+    }
+
+    /*
+        Run a single CD-k or PCD step over a batch and update the weights.
+        All intermediate results are written into a workspace that is reused across epochs.
+        returns the squared reconstruction error of the batch
+     */
+    protected double learnBatch(final RBM rbm, final Matrix batch) {
+        final ContrastiveDivergenceWorkspace workspace = getWorkspace(rbm, batch.rows());
+        final Optimizer optimizer = getOptimizer(rbm);
+        final Matrix dataSet = rbm.getWeights().convert(batch);
+        final double scale = optimizer.gradientScale(epoch) / dataSet.rows();
+
+        final GibbsChains fantasyParticles = getFantasyParticles(rbm);
+        final double fantasyScale = fantasyParticles == null ? scale : optimizer.gradientScale(epoch) / fantasyParticles.getChains();
+
+        final double error = workspace.associate(rbm, dataSet, sampler, scale, learningParameters.getGibbsSteps(), fantasyParticles, fantasyScale);
+
+        // Update weights and biases.
+        optimizer.update(workspace.associations, workspace.visibleBiasAssociations, workspace.hiddenBiasAssociations, epoch);
+
+        return error;
+    }
+
+    Optimizer getOptimizer(final RBM rbm) {
+        if(optimizer == null || !optimizer.fits(rbm)) {
+            optimizer = new Optimizer(learningParameters, rbm);
+        }
+        return optimizer;
+    }
+
+    /**
+     * @return the persistent chains of the rbm, null unless training with PCD
+     */
+    GibbsChains getFantasyParticles(final RBM rbm) {
+        if(!learningParameters.isPersistent()) {
+            return null;
+        }
+        if(fantasyParticles == null || fantasyRBM != rbm
+                || !fantasyParticles.fits(learningParameters.getFantasyParticles(), rbm.getVisibleSize(), rbm.getHiddenSize())) {
+            fantasyParticles = new GibbsChains(learningParameters.getFantasyParticles(), rbm.getWeights(), true);
+            fantasyRBM = rbm;
+        }
+        return fantasyParticles;
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+
+    private ContrastiveDivergenceWorkspace getWorkspace(final RBM rbm, final int rows) {
+        ContrastiveDivergenceWorkspace workspace = workspaces.get(rows);
+        if(workspace == null || !workspace.fits(rows, rbm.getVisibleSize(), rbm.getHiddenSize())) {
+            if(workspace != null) {
+                workspaces.clear(); // rbm dimensions changed, none of the cached workspaces fit anymore
+            }
+            workspace = new ContrastiveDivergenceWorkspace(rows, rbm.getWeights());
+            workspaces.put(rows, workspace);
+        }
+        return workspace;
+    }
+
+    interface EpochListener {
+
+        /**
+         * @param epochs epochs trained so far
+         * @param last true if training ends after this epoch
+         */
+        void epochFinished(RBM rbm, int epochs, boolean last);
+
     }
 
     /*
@@ -99,17 +298,10 @@ public class ContrastiveDivergence {
         units in the data matrix passed in.
      */
     public Matrix runVisible(final RBM rbm, final Matrix dataSet) {
-        final int numberSamples = dataSet.rows();
         final Matrix weights = rbm.getWeights();
 
-        // Calculate the activations of the hidden units.
-        final Matrix hiddenActivations = dataSet.dot(weights);
-        // Calculate the probabilities of turning the hidden units on.
-        final Matrix hiddenProbabilities = hiddenActivations.apply(logisticsFunction);
-        // Turn the hidden units on with their specified probabilities.
-        final Matrix hiddenStates = hiddenProbabilities.apply(DenseMatrix.random(numberSamples, rbm.getHiddenSize()), ACTIVATION_STATE);
-
-        return hiddenStates;
+        // Calculate the activations of the hidden units, then turn them on with their squashed probabilities.
+        return sampler.sample(dataSet.dot(weights), rbm.getHiddenBias());
     }
 
     /*
@@ -119,17 +311,10 @@ public class ContrastiveDivergence {
         units in the data matrix passed in.
      */
     public Matrix runHidden(final RBM rbm, final Matrix dataSet) {
-        final int numberSamples = dataSet.rows();
         final Matrix weights = rbm.getWeights();
 
-        // Calculate the activations of the hidden units.
-        final Matrix visibleActivations = dataSet.dot(weights.transpose());
-        // Calculate the probabilities of turning the visible units on.
-        final Matrix visibleProbabilities = visibleActivations.apply(this.logisticsFunction);
-        // Turn the visible units on with their specified probabilities.
-        final Matrix visibleStates = visibleProbabilities.apply(DenseMatrix.random(numberSamples, rbm.getVisibleSize()), ACTIVATION_STATE);
-
-        return visibleStates;
+        // Calculate the activations of the visible units, then turn them on with their squashed probabilities.
+        return sampler.sample(dataSet.dotTransposeRight(weights), rbm.getVisibleBias());
     }
 
     /*
@@ -137,43 +322,33 @@ public class ContrastiveDivergence {
         (where each step consists of updating all the hidden units, and then updating all of the visible units),
         taking a sample of the visible units at each step.
         Note that we only initialize the network *once*, so these samples are correlated.
-        samples: A matrix, where each row is a sample of the visible units produced while the network was daydreaming.
+        samples: A matrix per step, where each row is a sample of the visible units produced while the network was daydreaming.
+        The first is the dataSet itself. To draw many samples, stream them from a GibbsSampler instead of keeping them.
      */
     public Set<Matrix> dayDream(final RBM rbm, final Matrix dataSet, final int dreamSamples) {
-        final Matrix weights = rbm.getWeights();
-
-        // Take the first sample from a uniform distribution.
-//        Matrix sample = DenseMatrix.make(new double[][]{dataSet.row(RANDOM.nextInt(numberSamples)).toArray()});
-        Matrix sample = dataSet;
-
-        // store all samples history
-        final Set<Matrix> samples = new HashSet<>();
-
-        // Start the alternating Gibbs sampling.
-        // Note that we keep the hidden units binary states, but leave the visible units as real probabilities.
-        // See section 3 of Hinton's "A Practical Guide to Training Restricted Boltzmann Machines" for more on why.
-        for(int i = 0; i < dreamSamples; i++) {
-
-            // Calculate the activations of the hidden units.
-            final Matrix visibleValues = sample;
-            samples.add(visibleValues);
-
-            final Matrix hiddenActivations = visibleValues.dot(weights);
-            // Calculate the probabilities of turning the hidden units on.
-            final Matrix hiddenProbabilities = hiddenActivations.apply(this.logisticsFunction);
-            // Turn the hidden units on with their specified probabilities.
-            final Matrix hiddenStates = hiddenProbabilities.apply(DenseMatrix.random(sample.rows(), rbm.getHiddenSize()), ACTIVATION_STATE);
+        final Set<Matrix> samples = new LinkedHashSet<>();
+        samples.add(dataSet);
+        final Matrix[] dreams = new Matrix[Math.max(0, dreamSamples - 1)];
+        for(int i = 0; i < dreams.length; i++) {
+            dreams[i] = BinaryMatrix.make(dataSet.rows(), rbm.getVisibleSize());
+        }
 
-            // Calculate the activations of the hidden units.
-            final Matrix visibleActivations = hiddenStates.dot(weights.transpose());
-            // Calculate the probabilities of turning the visible units on.
-            final Matrix visibleProbabilities = visibleActivations.apply(this.logisticsFunction);
-            // Turn the visible units on with their specified probabilities.
-            final Matrix visibleStates = visibleProbabilities.apply(DenseMatrix.random(sample.rows(), sample.columns()), ACTIVATION_STATE);
+        // every row of the dataSet is its own chain, blocks of chains land in their rows of each step's sample
+        getGibbsSampler().sample(rbm, dataSet, dreams.length, 0, 1, new GibbsSampler.SampleConsumer() {
+            @Override
+            public void accept(final int chain, final int sample, final Matrix visibleStates, final Matrix visibleProbabilities) {
+                dreams[sample].viewRows(chain, visibleStates.rows()).data().assign(visibleStates.data());
+            }
+        });
+        samples.addAll(Arrays.asList(dreams));
+        return samples;
+    }
 
-            sample = visibleStates;
+    private GibbsSampler getGibbsSampler() {
+        if(gibbsSampler == null) {
+            gibbsSampler = new GibbsSampler(learningParameters, null, random);
         }
-        return samples;
+        return gibbsSampler;
     }
 
 }
@@ -0,0 +1,137 @@
+package nn.rbm.learn;
+
+import cern.colt.function.tdouble.DoubleDoubleFunction;
+import cern.jet.math.tdouble.DoubleFunctions;
+import math.BinaryMatrix;
+import math.LayerSampler;
+import math.Matrix;
+import nn.rbm.RBM;
+
+/**
+ * Preallocated buffers for a single CD-k step over a batch of a fixed size.
+ * Activations are computed directly into the probability buffers and then squashed (and sampled) in place, so together with the
+ * association buffer, learning a batch requires no new matrices once the workspace is built.
+ * Sampled hidden states are bit packed, which also turns the reconstruction product into row additions.
+ * Biases are added inside the sampling kernels, their updates are column sums of buffers the step computes anyway.
+ * The negative phase runs k Gibbs steps from the batch's hidden states in the workspace's own chains, or in a pool of
+ * persistent fantasy particles (PCD) shared by the workspaces of all batch sizes.
+ * A workspace is only valid for the (rows, visible, hidden) dimensions it was built with.
+ */
+public class ContrastiveDivergenceWorkspace {
+
+    private static final DoubleDoubleFunction SQUARED_DIFFERENCE = DoubleFunctions.chain(DoubleFunctions.square, DoubleFunctions.minus);
+
+    private final int rows;
+
+    private final int visibleSize;
+
+    private final int hiddenSize;
+
+    final Matrix positiveHiddenProbabilities;
+
+    final Matrix positiveHiddenStates;
+
+    // one chain per row of the batch, its first visible probabilities are the reconstruction of the batch
+    final GibbsChains chains;
+
+    final Matrix associations;
+
+    final double[] visibleBiasAssociations;
+
+    final double[] hiddenBiasAssociations;
+
+    /**
+     * @param rows batch size
+     * @param weights the rbm's weights, buffers are built with the same dimensions and storage type
+     */
+    public ContrastiveDivergenceWorkspace(final int rows, final Matrix weights) {
+        this.rows = rows;
+        this.visibleSize = weights.rows();
+        this.hiddenSize = weights.columns();
+
+        this.positiveHiddenProbabilities = weights.like(rows, hiddenSize);
+        this.positiveHiddenStates = BinaryMatrix.make(rows, hiddenSize);
+        this.chains = new GibbsChains(rows, weights, false);
+        this.associations = weights.like(visibleSize, hiddenSize);
+        this.visibleBiasAssociations = new double[visibleSize];
+        this.hiddenBiasAssociations = new double[hiddenSize];
+    }
+
+    /**
+        Run the positive and negative CD-1 phases of dataSet against the rbm, leaving
+        associations = (positiveAssociations - negativeAssociations) * scale and the same for both biases,
+        the rbm is not modified.
+        returns the squared reconstruction error of dataSet
+     */
+    double associate(final RBM rbm, final Matrix dataSet, final LayerSampler sampler, final double scale) {
+        return associate(rbm, dataSet, sampler, scale, 1, null, scale);
+    }
+
+    /**
+        Same as CD-1, with gibbsSteps steps in the negative phase, run in the fantasy particles if given.
+        The negative associations of the particles are scaled by fantasyScale instead of scale.
+        returns the squared reconstruction error of dataSet, after gibbsSteps steps, or one with fantasy particles
+     */
+    double associate(final RBM rbm, final Matrix dataSet, final LayerSampler sampler, final double scale,
+                     final int gibbsSteps, final GibbsChains fantasyParticles, final double fantasyScale) {
+        final Matrix weights = rbm.getWeights();
+        // Read training data and sample from the hidden later, positive CD phase, (reality phase)
+        sampler.sample(dataSet.dot(weights, positiveHiddenProbabilities), rbm.getHiddenBias(), positiveHiddenStates);
+
+        // Note that we're using the activation *probabilities* of the hidden states, not the hidden states themselves, when computing associations.
+        // We could also use the states; see section 3 of Hinton's A Practical Guide to Training Restricted Boltzmann Machines" for more.
+        dataSet.dotTransposeLeft(positiveHiddenProbabilities, associations, scale, 0.0);
+
+        // Reconstruct the visible units and sample again from the hidden units. negative CD phase, aka the daydreaming phase.
+        final GibbsChains negative;
+        final double negativeScale;
+        if(fantasyParticles == null) {
+            chains.run(rbm, positiveHiddenStates, sampler, gibbsSteps);
+            negative = chains;
+            negativeScale = scale;
+        } else {
+            // the particles carry on from where the last batch left them, the batch is only reconstructed for its error
+            chains.reconstruct(rbm, positiveHiddenStates, sampler);
+            fantasyParticles.run(rbm, positiveHiddenStates, sampler, gibbsSteps);
+            negative = fantasyParticles;
+            negativeScale = fantasyScale;
+        }
+        final double error = dataSet.data().aggregate(chains.visibleProbabilities.data(), DoubleFunctions.plus, SQUARED_DIFFERENCE);
+        final Matrix negativeVisibleProbabilities = negative.visibleProbabilities;
+        final Matrix negativeHiddenProbabilities = negative.hiddenProbabilities;
+
+        // Note, again, that we're using the activation *probabilities* when computing associations, not the states themselves.
+        negativeVisibleProbabilities.dotTransposeLeft(negativeHiddenProbabilities, associations, -negativeScale, 1.0);
+
+        // bias associations are the same with the other layer held at 1
+        dataSet.columnSums(visibleBiasAssociations, scale, 0.0);
+        negativeVisibleProbabilities.columnSums(visibleBiasAssociations, -negativeScale, 1.0);
+        positiveHiddenProbabilities.columnSums(hiddenBiasAssociations, scale, 0.0);
+        negativeHiddenProbabilities.columnSums(hiddenBiasAssociations, -negativeScale, 1.0);
+
+        return error;
+    }
+
+    static void addTo(final double[] bias, final double[] associations) {
+        for(int i = 0; i < bias.length; i++) {
+            bias[i] += associations[i];
+        }
+    }
+
+    public boolean fits(final int rows, final int visibleSize, final int hiddenSize) {
+        return this.rows == rows && this.visibleSize == visibleSize && this.hiddenSize == hiddenSize;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getVisibleSize() {
+        return visibleSize;
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+}
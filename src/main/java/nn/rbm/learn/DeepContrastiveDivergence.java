@@ -1,35 +1,54 @@
 package nn.rbm.learn;
 
-import cern.colt.function.tdouble.DoubleDoubleFunction;
-import math.DenseMatrix;
 import math.Matrix;
-import math.functions.doubledouble.rbm.ActivationState;
 import nn.rbm.RBM;
 import nn.rbm.deep.DeepRBM;
 import nn.rbm.deep.RBMLayer;
 import org.apache.log4j.Logger;
 import utils.Clock;
+import utils.concurrent.WorkStealingExecutor;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Created by kenny on 5/15/14.
  *
+ * Given an executor, the rbms of a layer run in parallel during runVisible/runHidden and when building the input of
+ * the next layer in training, split by rbm and row block. Training itself stays serial.
  */
 public class DeepContrastiveDivergence {
 
     private static final Logger LOGGER = Logger.getLogger(DeepContrastiveDivergence.class);
 
-    private static final DoubleDoubleFunction ACTIVATION__FUNCTION = new ActivationState();
-
     private final Clock clock = new Clock();
 
-    private final ContrastiveDivergence contrastiveDivergence;
+    private final LayerInference layerInference;
+
+    // runs the validation set through the layers on its own stream, so the training samples do not depend on it
+    private final LayerInference validationInference;
 
     private final LearningParameters learningParameters;
 
+    // null for no checkpoints
+    private Checkpointer checkpointer;
+
+    // null to always train all epochs
+    private EarlyStopping earlyStopping;
+
+    private List<EarlyStopping> rbmEarlyStopping = Collections.emptyList();
+
     public DeepContrastiveDivergence(final LearningParameters learningParameters) {
-        this.contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        this(learningParameters, null);
+    }
+
+    /**
+     * @param executor runs inference, null to run on the calling thread
+     */
+    public DeepContrastiveDivergence(final LearningParameters learningParameters, final WorkStealingExecutor executor) {
+        this.layerInference = new LayerInference(learningParameters, executor);
+        this.validationInference = new LayerInference(learningParameters, executor, learningParameters.newRandomSource(-1));
         this.learningParameters = learningParameters;
     }
 
@@ -39,30 +58,110 @@ public class DeepContrastiveDivergence {
        Train P(v|h1), use h1 for each v to train P(h1|h2), repeat until P(hn-1|hn) is trained
      */
     public void learn(final DeepRBM deepRBM, final Matrix dataSet) {
+        learn(deepRBM, dataSet, 0, 0, 0);
+    }
+
+    /**
+     * Continue training the checkpoint's DeepRBM from the layer, rbm and epoch it was saved at.
+     * The input of the resumed layer is rebuilt by running the data through the trained layers below it.
+     * As with ContrastiveDivergence.resume, momentum velocities and squared gradients are not saved and start from zero,
+     * and PCD fantasy particles are seeded again.
+     * @return the trained DeepRBM
+     */
+    public DeepRBM resume(final Checkpoint checkpoint, final Matrix dataSet) {
+        final DeepRBM deepRBM = checkpoint.getDeepRBM();
+        learn(deepRBM, dataSet, checkpoint.getLayer(), checkpoint.getRBMIndex(), checkpoint.getEpoch());
+        return deepRBM;
+    }
+
+    /**
+     * Snapshot the DeepRBM via the checkpointer whenever it is due, and once more when training finishes.
+     * The final checkpoint is written before learn returns.
+     */
+    public void setCheckpointer(final Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * Stop training each rbm once the error on its part of the validation set stops improving. The validation set
+     * is run through the trained layers below like the training data, each rbm gets its own EarlyStopping via
+     * forValidationSet.
+     */
+    public void setEarlyStopping(final EarlyStopping earlyStopping) {
+        this.earlyStopping = earlyStopping;
+    }
+
+    /**
+     * @return the EarlyStopping of every rbm trained by the last learn or resume call, layer by layer, e.g. for the
+     *         epochs they stopped at. Empty without early stopping
+     */
+    public List<EarlyStopping> getRBMEarlyStopping() {
+        return rbmEarlyStopping;
+    }
+
+    private void learn(final DeepRBM deepRBM, final Matrix dataSet, final int startLayer, final int startRBM, final int startEpoch) {
         final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
 
-        final List<Matrix> trainingData = dataSet.splitColumns(rbmLayers[0].size()); // split dataset across rbms
+        final List<Matrix> trainingData = dataSet.columnPieces(rbmLayers[0].size()); // split dataset across rbms
 
         List<Matrix> samplePieces = trainingData;
+        List<Matrix> validationPieces = earlyStopping != null ? earlyStopping.getValidationSet().columnPieces(rbmLayers[0].size()) : null;
+        final List<EarlyStopping> rbmEarlyStopping = new ArrayList<>();
         clock.reset();
         for(int layer = 0; layer < rbmLayers.length; layer++) {
 
             final RBMLayer rbmLayer = rbmLayers[layer];
             samplePieces = buildSamplesFromActivatedHiddenLayers(samplePieces, layer, rbmLayers);
+            if(validationPieces != null) {
+                validationPieces = buildSamplesFromActivatedHiddenLayers(validationInference, validationPieces, layer, rbmLayers);
+            }
 
-            for(int r = 0; r < rbmLayer.size(); r++) {
+            if(layer < startLayer) {
+                continue; // trained before the checkpoint, only its output is needed
+            }
+            for(int r = layer == startLayer ? startRBM : 0; r < rbmLayer.size(); r++) {
                 final RBM rbm = rbmLayer.getRBM(r);
                 final Matrix splitDataSet = samplePieces.get(r);
-                this.contrastiveDivergence.learn(rbm, splitDataSet);
+                // each rbm samples from its own stream, same as MultiThreadedDeepContrastiveDivergence
+                final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters, learningParameters.newRandomSource(layer, r));
+                if(checkpointer != null) {
+                    contrastiveDivergence.setEpochListener(checkpointListener(deepRBM, layer, r));
+                }
+                if(validationPieces != null) {
+                    final EarlyStopping rbmStopping = earlyStopping.forValidationSet(validationPieces.get(r));
+                    contrastiveDivergence.setEarlyStopping(rbmStopping);
+                    rbmEarlyStopping.add(rbmStopping);
+                }
+                contrastiveDivergence.learn(rbm, splitDataSet, layer == startLayer && r == startRBM ? startEpoch : 0);
             }
 
         }
 
+        this.rbmEarlyStopping = Collections.unmodifiableList(rbmEarlyStopping);
+
+        if(checkpointer != null) {
+            final int lastLayer = rbmLayers.length - 1;
+            checkpointer.checkpoint(deepRBM, lastLayer, rbmLayers[lastLayer].size() - 1, learningParameters.getEpochs());
+            checkpointer.flush();
+        }
+
         if(learningParameters.isLog()) {
             LOGGER.info("All Layers finished Training in " + clock.elapsedSeconds() + "ms");
         }
     }
 
+    private ContrastiveDivergence.EpochListener checkpointListener(final DeepRBM deepRBM, final int layer, final int r) {
+        return new ContrastiveDivergence.EpochListener() {
+            @Override
+            public void epochFinished(final RBM rbm, final int epochs, final boolean last) {
+                // an rbm stopped early is saved as finished, so resuming moves on to the next one
+                if(checkpointer.isDue(epochs) || (last && epochs < learningParameters.getEpochs())) {
+                    checkpointer.checkpoint(deepRBM, layer, r, last ? learningParameters.getEpochs() : epochs);
+                }
+            }
+        };
+    }
+
     /*
         Assuming the RBM has been trained, run the network on a set of visible units to get a sample of the hidden units.
         Parameters, A matrix where each row consists of the states of the visible units.
@@ -72,27 +171,12 @@ public class DeepContrastiveDivergence {
     public Matrix runVisible(final DeepRBM deepRBM, final Matrix dataSet) {
         final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
 
-        final List<Matrix> trainingData = dataSet.splitColumns(rbmLayers[0].size()); // split dataset across rbms
-
-        List<Matrix> samplePieces = trainingData;
-        Matrix[] hiddenStatesArray = new Matrix[0];
-
+        Matrix hiddenStates = dataSet;
         for(int layer = 0; layer < rbmLayers.length; layer++) {
-            final RBMLayer rbmLayer = rbmLayers[layer];
-            hiddenStatesArray = new Matrix[rbmLayer.size()];
-
-            samplePieces = buildSampleData(samplePieces, layer, rbmLayers);
-
-            for(int r = 0; r < rbmLayer.size(); r++) {
-                final RBM rbm = rbmLayer.getRBM(r);
-                final Matrix splitDataSet = samplePieces.get(r);
-                final Matrix hiddenStates = this.contrastiveDivergence.runVisible(rbm, splitDataSet);
-                hiddenStatesArray[r] = hiddenStates;
-            }
+            // split the previous layer's output across rbms, as views over its buffer
+            hiddenStates = layerInference.runVisible(rbmLayers[layer], hiddenStates.columnPieces(rbmLayers[layer].size()));
         }
-
-        return DenseMatrix.make(Matrix.concatColumns(hiddenStatesArray));
-
+        return hiddenStates;
     }
 
     /*
@@ -104,82 +188,30 @@ public class DeepContrastiveDivergence {
     public Matrix runHidden(final DeepRBM deepRBM, final Matrix dataSet) {
         final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
 
-        final List<Matrix> trainingData = dataSet.splitColumns(rbmLayers[rbmLayers.length - 1].size()); // split dataset across rbms
-
-        List<Matrix> samplePieces = trainingData;
-        Matrix[] visibleStatesArray = new Matrix[0];
-
+        Matrix visibleStates = dataSet;
         for(int layer = rbmLayers.length - 1; layer >= 0; layer--) {
-            final RBMLayer rbmLayer = rbmLayers[layer];
-            visibleStatesArray = new Matrix[rbmLayer.size()];
-
-            samplePieces = buildSampleDataReverse(samplePieces, layer, rbmLayers);
-
-            for(int r = 0; r < rbmLayer.size(); r++) {
-                final RBM rbm = rbmLayer.getRBM(r);
-                final Matrix splitDataSet = samplePieces.get(r);
-
-                final Matrix visibleStates = this.contrastiveDivergence.runHidden(rbm, splitDataSet);
-                visibleStatesArray[r] = visibleStates;
-            }
+            visibleStates = layerInference.runHidden(rbmLayers[layer], visibleStates.columnPieces(rbmLayers[layer].size()));
         }
-        return DenseMatrix.make(Matrix.concatColumns(visibleStatesArray));
+        return visibleStates;
     }
 
     /*
         Pass data into visible layers and activate hidden layers.
         return hidden layers
      */
-    private List<Matrix> buildSamplesFromActivatedHiddenLayers(final List<Matrix> sampleData, final int layer, RBMLayer[] rbmLayers) {
-        final RBMLayer rbmLayer = rbmLayers[layer];
-
-        if(layer == 0) {
-            return sampleData;
-        }
-        else {
-            final RBMLayer previousLayer = rbmLayers[layer - 1];
-            Matrix[] previousLayerOutputs = new Matrix[previousLayer.size()];
-            for(int r = 0; r < previousLayer.size(); r++) {
-                final RBM rbm = previousLayer.getRBM(r);
-                previousLayerOutputs[r] = this.contrastiveDivergence.runVisible(rbm, sampleData.get(r));
-            }
-            // combine all outputs off hidden layer, then re-split them to input into the next visual layer
-            return DenseMatrix.make(Matrix.concatColumns(previousLayerOutputs)).splitColumns(rbmLayer.size());
-        }
+    List<Matrix> buildSamplesFromActivatedHiddenLayers(final List<Matrix> sampleData, final int layer, RBMLayer[] rbmLayers) {
+        return buildSamplesFromActivatedHiddenLayers(layerInference, sampleData, layer, rbmLayers);
     }
 
-    private List<Matrix> buildSampleData(final List<Matrix> trainingData, final int layer, final RBMLayer[] rbmLayers) {
+    private static List<Matrix> buildSamplesFromActivatedHiddenLayers(final LayerInference layerInference, final List<Matrix> sampleData, final int layer, RBMLayer[] rbmLayers) {
         final RBMLayer rbmLayer = rbmLayers[layer];
 
         if(layer == 0) {
-            return trainingData;
-        }
-        else {
-            final RBMLayer previousLayer = rbmLayers[layer - 1];
-            Matrix[] previousLayerOutputs = new Matrix[previousLayer.size()];
-            for(int r = 0; r < previousLayer.size(); r++) {
-                previousLayerOutputs[r] = this.contrastiveDivergence.runVisible(previousLayer.getRBM(r), trainingData.get(r));
-                       // previousLayer.getRBM(r).getHidden().getValues() };
-            }
-            // combine all outputs off hidden layer, then re-split them to input into the next visual layer
-            return DenseMatrix.make(Matrix.concatColumns(previousLayerOutputs)).splitColumns(rbmLayer.size());
-        }
-    }
-
-    private List<Matrix> buildSampleDataReverse(final List<Matrix> trainingData, final int layer, final RBMLayer[] rbmLayers) {
-        final RBMLayer rbmLayer = rbmLayers[layer];
-
-        if(layer == rbmLayers.length - 1) {
-            return trainingData;
+            return sampleData;
         }
         else {
-            final RBMLayer previousLayer = rbmLayers[layer + 1];
-            Matrix[] previousLayerInputs = new Matrix[previousLayer.size()];
-            for(int r = 0; r < previousLayer.size(); r++) {
-                previousLayerInputs[r] = this.contrastiveDivergence.runHidden(previousLayer.getRBM(r), trainingData.get(r));
-            }
-            // combine all outputs off hidden layer, then re-split them to input into the next visual layer
-            return DenseMatrix.make(Matrix.concatColumns(previousLayerInputs)).splitColumns(rbmLayer.size());
+            // all outputs of the hidden layer land in one buffer, re-split it as views to input into the next visual layer
+            return layerInference.runVisible(rbmLayers[layer - 1], sampleData).columnPieces(rbmLayer.size());
         }
     }
 
@@ -0,0 +1,241 @@
+package nn.rbm.learn;
+
+import cern.colt.function.tdouble.DoubleDoubleFunction;
+import cern.jet.math.tdouble.DoubleFunctions;
+import math.LayerSampler;
+import math.Matrix;
+import nn.rbm.RBM;
+import org.apache.log4j.Logger;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stops training once the reconstruction error of a held out validation set stops improving.
+ *
+ * Every everyEpochs epochs the weights are copied into a snapshot, whose error is evaluated on a background thread
+ * while training continues. An evaluation counts as an improvement if it lowers the best error so far by at least
+ * minImprovement (relative, e.g. 0.01 for 1%), training stops after patience evaluations in a row without one.
+ * The result of an evaluation is acted on at the next evaluation, so training stops up to everyEpochs epochs later
+ * than it could have, in exchange the decision is the same whatever the timing of the background thread.
+ * The error is the mean squared difference of each row and its mean field reconstruction, no sampling is involved.
+ *
+ * Not thread safe, one instance per rbm being trained. Use forValidationSet to stop other rbms by the same rule.
+ */
+public class EarlyStopping {
+
+    private static final Logger LOGGER = Logger.getLogger(EarlyStopping.class);
+
+    private static final DoubleDoubleFunction SQUARED_DIFFERENCE = DoubleFunctions.chain(DoubleFunctions.square, DoubleFunctions.minus);
+
+    private final Matrix validationSet;
+
+    private final int everyEpochs;
+
+    private final double minImprovement;
+
+    private final int patience;
+
+    private final WorkStealingExecutor executor;
+
+    // snapshot and buffers of the evaluation, reused while the rbm keeps its dimensions
+    private RBM snapshot;
+
+    private Matrix validation;
+
+    private Matrix hidden;
+
+    private Matrix reconstruction;
+
+    private LayerSampler sampler;
+
+    private boolean log;
+
+    private CountDownLatch evaluated = new CountDownLatch(0);
+
+    private volatile double lastError = Double.NaN;
+
+    private int lastEpoch;
+
+    private double bestError;
+
+    private int bestEpoch;
+
+    private int evaluations;
+
+    private int withoutImprovement;
+
+    private int stoppedEpoch;
+
+    /**
+     * @param minImprovement relative decrease of the best error that counts as an improvement
+     * @param patience evaluations without improvement before stopping
+     */
+    public EarlyStopping(final Matrix validationSet, final int everyEpochs, final double minImprovement, final int patience) {
+        this(validationSet, everyEpochs, minImprovement, patience, WorkStealingExecutor.shared());
+    }
+
+    /**
+     * @param executor runs the evaluations in the background, shared by the EarlyStoppings of forValidationSet
+     */
+    public EarlyStopping(final Matrix validationSet, final int everyEpochs, final double minImprovement, final int patience, final WorkStealingExecutor executor) {
+        if(everyEpochs <= 0 || patience <= 0) {
+            throw new IllegalArgumentException("Epochs between evaluations (" + everyEpochs + ") and patience (" + patience + ") must be positive");
+        }
+        this.validationSet = validationSet;
+        this.everyEpochs = everyEpochs;
+        this.minImprovement = minImprovement;
+        this.patience = patience;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the same rule over another validation set, e.g. the validation set as seen by a deeper layer
+     */
+    public EarlyStopping forValidationSet(final Matrix validationSet) {
+        return new EarlyStopping(validationSet, everyEpochs, minImprovement, patience, executor);
+    }
+
+    Matrix getValidationSet() {
+        return validationSet;
+    }
+
+    /**
+     * Reset before training the rbm
+     */
+    void start(final RBM rbm, final LearningParameters learningParameters) {
+        if(snapshot == null || snapshot.getVisibleSize() != rbm.getVisibleSize() || snapshot.getHiddenSize() != rbm.getHiddenSize()) {
+            final Matrix weights = rbm.getWeights();
+            snapshot = new RBM(weights.like(rbm.getVisibleSize(), rbm.getHiddenSize()));
+            validation = weights.convert(validationSet);
+            hidden = weights.like(validationSet.rows(), rbm.getHiddenSize());
+            reconstruction = weights.like(validationSet.rows(), rbm.getVisibleSize());
+        }
+        sampler = new LayerSampler(learningParameters.getLogisticsFunction());
+        log = learningParameters.isLog();
+        lastError = Double.NaN;
+        bestError = Double.POSITIVE_INFINITY;
+        bestEpoch = 0;
+        evaluations = 0;
+        withoutImprovement = 0;
+        stoppedEpoch = 0;
+    }
+
+    /**
+     * Called by the trainer after every epoch
+     * @param epochs epochs trained so far
+     * @return true to stop training
+     */
+    boolean epochFinished(final RBM rbm, final int epochs) {
+        if(epochs % everyEpochs != 0) {
+            return false;
+        }
+        // act on the previous evaluation, it has had everyEpochs epochs to finish
+        if(awaitEvaluation() && withoutImprovement >= patience) {
+            stoppedEpoch = epochs;
+            if(log) {
+                LOGGER.info("Stopped at epoch " + epochs + ", best validation error " + bestError + " at epoch " + bestEpoch);
+            }
+            return true;
+        }
+
+        snapshot.getWeights().data().assign(rbm.getWeights().data());
+        System.arraycopy(rbm.getVisibleBias(), 0, snapshot.getVisibleBias(), 0, rbm.getVisibleSize());
+        System.arraycopy(rbm.getHiddenBias(), 0, snapshot.getHiddenBias(), 0, rbm.getHiddenSize());
+        lastEpoch = epochs;
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        evaluated = latch;
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lastError = evaluate();
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        return false;
+    }
+
+    /**
+     * Called by the trainer when training ends, records the last evaluation
+     */
+    void finish() {
+        awaitEvaluation();
+    }
+
+    // wait for the pending evaluation and score it, returns false if there was none
+    private boolean awaitEvaluation() {
+        try {
+            WorkStealingExecutor.await(evaluated);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the validation error", e);
+        }
+        final double error = lastError;
+        if(Double.isNaN(error)) {
+            return false;
+        }
+        lastError = Double.NaN;
+        evaluations++;
+        if(error < bestError * (1.0 - minImprovement)) {
+            withoutImprovement = 0;
+        } else {
+            withoutImprovement++;
+        }
+        if(error < bestError) {
+            bestError = error;
+            bestEpoch = lastEpoch;
+        }
+        return true;
+    }
+
+    private double evaluate() {
+        final Matrix weights = snapshot.getWeights();
+        sampler.activate(validation.dot(weights, hidden), snapshot.getHiddenBias());
+        sampler.activate(hidden.dotTransposeRight(weights, reconstruction), snapshot.getVisibleBias());
+        return validation.data().aggregate(reconstruction.data(), DoubleFunctions.plus, SQUARED_DIFFERENCE) / validation.rows();
+    }
+
+    /**
+     * @return true if the last training run was stopped early
+     */
+    public boolean isStopped() {
+        return stoppedEpoch > 0;
+    }
+
+    /**
+     * @return epoch the last training run stopped at, 0 if it ran all epochs
+     */
+    public int getStoppedEpoch() {
+        return stoppedEpoch;
+    }
+
+    public double getBestError() {
+        return bestError;
+    }
+
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    @Override
+    public String toString() {
+        return "EarlyStopping{" +
+                "everyEpochs=" + everyEpochs +
+                ", minImprovement=" + minImprovement +
+                ", patience=" + patience +
+                ", evaluations=" + evaluations +
+                ", bestError=" + bestError +
+                ", bestEpoch=" + bestEpoch +
+                ", stoppedEpoch=" + stoppedEpoch +
+                '}';
+    }
+
+}
@@ -0,0 +1,107 @@
+package nn.rbm.learn;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import math.BinaryMatrix;
+import math.LayerSampler;
+import math.Matrix;
+import nn.rbm.RBM;
+
+/**
+ * Preallocated buffers of a set of Gibbs chains, one chain per row, for the negative phase of Contrastive Divergence.
+ * A step reconstructs the visible probabilities from the hidden states and then the hidden probabilities from them,
+ * sampling new hidden states in the same pass, so running the chains allocates nothing.
+ *
+ * Persistent chains (PCD) keep their hidden states between runs and continue from them, they are the fantasy particles.
+ * They start from the hidden states of the first batch they see. Not thread safe, one instance per training thread.
+ */
+public class GibbsChains {
+
+    private final int chains;
+
+    private final int visibleSize;
+
+    private final int hiddenSize;
+
+    private final boolean persistent;
+
+    final Matrix visibleProbabilities;
+
+    final Matrix hiddenProbabilities;
+
+    final Matrix hiddenStates;
+
+    private boolean started;
+
+    /**
+     * @param weights the rbm's weights, buffers are built with the same dimensions and storage type
+     * @param persistent true to continue each run from the states the previous one ended in
+     */
+    public GibbsChains(final int chains, final Matrix weights, final boolean persistent) {
+        this.chains = chains;
+        this.visibleSize = weights.rows();
+        this.hiddenSize = weights.columns();
+        this.persistent = persistent;
+
+        this.visibleProbabilities = weights.like(chains, visibleSize);
+        this.hiddenProbabilities = weights.like(chains, hiddenSize);
+        this.hiddenStates = BinaryMatrix.make(chains, hiddenSize);
+    }
+
+    /**
+     * Run steps Gibbs steps, leaving the probabilities of the last step in visibleProbabilities and hiddenProbabilities.
+     * @param hiddenStates states to start from, one row per chain (rows are reused cyclically if there are fewer).
+     *                     Ignored by persistent chains once they have started
+     */
+    void run(final RBM rbm, final Matrix hiddenStates, final LayerSampler sampler, final int steps) {
+        Matrix states = hiddenStates;
+        if(persistent) {
+            if(!started) {
+                copyRows(hiddenStates, this.hiddenStates);
+                started = true;
+            }
+            states = this.hiddenStates;
+        }
+        final Matrix weights = rbm.getWeights();
+        for(int step = 0; step < steps; step++) {
+            reconstruct(rbm, states, sampler);
+            visibleProbabilities.dot(weights, hiddenProbabilities);
+            // the last step only needs probabilities, unless the chains continue from it
+            if(step < steps - 1 || persistent) {
+                sampler.sample(hiddenProbabilities, rbm.getHiddenBias(), this.hiddenStates);
+                states = this.hiddenStates;
+            } else {
+                sampler.activate(hiddenProbabilities, rbm.getHiddenBias());
+            }
+        }
+    }
+
+    /**
+     * Half a step, visibleProbabilities = the visible probabilities given the hidden states
+     */
+    void reconstruct(final RBM rbm, final Matrix hiddenStates, final LayerSampler sampler) {
+        sampler.activate(hiddenStates.dotTransposeRight(rbm.getWeights(), visibleProbabilities), rbm.getVisibleBias());
+    }
+
+    private static void copyRows(final Matrix from, final Matrix to) {
+        final DoubleMatrix2D source = from.data();
+        final DoubleMatrix2D target = to.data();
+        for(int i = 0; i < target.rows(); i++) {
+            for(int j = 0; j < target.columns(); j++) {
+                target.setQuick(i, j, source.getQuick(i % source.rows(), j));
+            }
+        }
+    }
+
+    public boolean fits(final int chains, final int visibleSize, final int hiddenSize) {
+        return this.chains == chains && this.visibleSize == visibleSize && this.hiddenSize == hiddenSize;
+    }
+
+    public int getChains() {
+        return chains;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+}
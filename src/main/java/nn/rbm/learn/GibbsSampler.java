@@ -0,0 +1,163 @@
+package nn.rbm.learn;
+
+import math.BinaryMatrix;
+import math.LayerSampler;
+import math.Matrix;
+import math.random.RandomSource;
+import nn.rbm.RBM;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Draws samples of the visible units from a trained rbm by running many independent Gibbs chains, one per row of the
+ * start matrix. Chains are split into blocks of BLOCK_CHAINS, each block runs all of its steps as one task with its own
+ * buffers, so blocks never wait on each other. Blocks draw from streams keyed by block, as LayerInference's do, so a
+ * seed fixes the samples whatever runs the blocks.
+ *
+ * The first burnIn steps of every chain are discarded, after that every thinning-th step is handed to the consumer,
+ * samples are not retained. Both layers are sampled as bit packed states, so every product is a sum of weight rows.
+ * Buffers are reused between steps and between calls with the same number of chains.
+ * Not thread safe, one instance per thread.
+ */
+public class GibbsSampler {
+
+    public static final int BLOCK_CHAINS = 64;
+
+    private final LearningParameters learningParameters;
+
+    // null to run serially on the calling thread
+    private final WorkStealingExecutor executor;
+
+    private final Random random;
+
+    private Chains[] blocks = new Chains[0];
+
+    public GibbsSampler(final LearningParameters learningParameters) {
+        this(learningParameters, null);
+    }
+
+    /**
+     * @param executor runs the blocks of chains, null to run on the calling thread
+     */
+    public GibbsSampler(final LearningParameters learningParameters, final WorkStealingExecutor executor) {
+        this(learningParameters, executor, learningParameters.newRandomSource());
+    }
+
+    public GibbsSampler(final LearningParameters learningParameters, final WorkStealingExecutor executor, final Random random) {
+        this.learningParameters = learningParameters;
+        this.executor = executor;
+        this.random = random;
+    }
+
+    /**
+     * Receives the samples of a block of chains. Called concurrently for different blocks when running on an executor.
+     */
+    public interface SampleConsumer {
+
+        /**
+         * @param chain the first chain of the block, row i is chain + i
+         * @param sample index of the sample within each chain, from 0
+         * @param visibleStates the sampled visible states, only valid until the call returns
+         * @param visibleProbabilities the probabilities they were sampled from, only valid until the call returns
+         */
+        void accept(int chain, int sample, Matrix visibleStates, Matrix visibleProbabilities);
+
+    }
+
+    /**
+     * Run a chain from each row of start and hand samplesPerChain samples of each to the consumer, returns once all
+     * samples are consumed
+     * @param start initial visible units, one row per chain
+     * @param burnIn steps discarded before the first sample
+     * @param thinning steps per sample after the burn in, 1 keeps every step
+     */
+    public void sample(final RBM rbm, final Matrix start, final int samplesPerChain, final int burnIn, final int thinning, final SampleConsumer consumer) {
+        if(burnIn < 0 || thinning < 1) {
+            throw new IllegalArgumentException("Burn in (" + burnIn + ") must not be negative and thinning (" + thinning + ") must be at least 1");
+        }
+        final Matrix weights = rbm.getWeights();
+        final Matrix visible = start instanceof BinaryMatrix ? start : weights.convert(start);
+        final int chains = visible.rows();
+        if(chains == 0 || samplesPerChain <= 0) {
+            return;
+        }
+        final int steps = burnIn + samplesPerChain * thinning;
+        final long seed = random.nextLong();
+
+        final Chains[] blocks = getBlocks(rbm, chains);
+        final List<Callable<Void>> tasks = new ArrayList<>(blocks.length);
+        for(int block = 0; block < blocks.length; block++) {
+            final int firstChain = block * BLOCK_CHAINS;
+            final Chains blockChains = blocks[block];
+            final Matrix blockStart = blockChains.size == chains ? visible : visible.viewRows(firstChain, blockChains.size);
+            final LayerSampler sampler = new LayerSampler(learningParameters.getLogisticsFunction(), new RandomSource(seed, block));
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    blockChains.run(rbm, blockStart, sampler, steps, burnIn, thinning, firstChain, consumer);
+                    return null;
+                }
+            });
+        }
+
+        WorkStealingExecutor.invokeAll(executor, tasks);
+    }
+
+    private Chains[] getBlocks(final RBM rbm, final int chains) {
+        final int numberBlocks = (chains + BLOCK_CHAINS - 1) / BLOCK_CHAINS;
+        if(blocks.length != numberBlocks || !blocks[numberBlocks - 1].fits(chains - (numberBlocks - 1) * BLOCK_CHAINS, rbm)) {
+            blocks = new Chains[numberBlocks];
+            for(int block = 0; block < numberBlocks; block++) {
+                blocks[block] = new Chains(Math.min(BLOCK_CHAINS, chains - block * BLOCK_CHAINS), rbm.getWeights());
+            }
+        }
+        return blocks;
+    }
+
+    // buffers of one block of chains
+    private static class Chains {
+
+        private final int size;
+
+        private final Matrix visibleProbabilities;
+
+        private final Matrix visibleStates;
+
+        private final Matrix hiddenProbabilities;
+
+        private final Matrix hiddenStates;
+
+        Chains(final int size, final Matrix weights) {
+            this.size = size;
+            this.visibleProbabilities = weights.like(size, weights.rows());
+            this.visibleStates = BinaryMatrix.make(size, weights.rows());
+            this.hiddenProbabilities = weights.like(size, weights.columns());
+            this.hiddenStates = BinaryMatrix.make(size, weights.columns());
+        }
+
+        void run(final RBM rbm, final Matrix start, final LayerSampler sampler, final int steps, final int burnIn, final int thinning,
+                 final int firstChain, final SampleConsumer consumer) {
+            final Matrix weights = rbm.getWeights();
+            sampler.sample(start.dot(weights, hiddenProbabilities), rbm.getHiddenBias(), hiddenStates);
+            for(int step = 1; step <= steps; step++) {
+                sampler.sample(hiddenStates.dotTransposeRight(weights, visibleProbabilities), rbm.getVisibleBias(), visibleStates);
+                if(step > burnIn && (step - burnIn) % thinning == 0) {
+                    consumer.accept(firstChain, (step - burnIn) / thinning - 1, visibleStates, visibleProbabilities);
+                }
+                if(step < steps) {
+                    sampler.sample(visibleStates.dot(weights, hiddenProbabilities), rbm.getHiddenBias(), hiddenStates);
+                }
+            }
+        }
+
+        boolean fits(final int size, final RBM rbm) {
+            return this.size == size && visibleStates.columns() == rbm.getVisibleSize() && hiddenStates.columns() == rbm.getHiddenSize();
+        }
+
+    }
+
+}
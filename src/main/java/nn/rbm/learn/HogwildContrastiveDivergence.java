@@ -0,0 +1,259 @@
+package nn.rbm.learn;
+
+import data.batch.BatchSource;
+import data.batch.ListBatchSource;
+import math.LayerSampler;
+import math.Matrix;
+import nn.rbm.RBM;
+import org.apache.log4j.Logger;
+import utils.Clock;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hogwild! style asynchronous Contrastive Divergence.
+ * Worker threads each pull random mini-batches and apply their CD-k update straight to the shared weights, without any
+ * locking. Workers read weights that other workers are in the middle of updating and updates may overwrite each other,
+ * in exchange for no synchronization at all.
+ * Updates are dense, even for sparse inputs: the negative phase reconstructs every visible unit, so every update writes
+ * all weights and every concurrent pair of updates collides. Lost updates grow with the number of threads and the
+ * learning rate, so Hogwild suits small batches and rates, where each update moves the weights little.
+ * An epoch is as many batches as the source has, summed over all workers. Batches are drawn with replacement, so the
+ * batch source must support concurrent get(). Statistics for each worker of the last run are kept in getStatistics().
+ * With PCD every worker runs its own pool of fantasy particles.
+ * Momentum, weight decay and adaptive learning rates are applied by every worker with its own Optimizer, so velocities
+ * and squared gradients are per worker, over the updates that worker made. Learning rate schedules follow the epoch of
+ * the batch counter shared by all workers.
+ *
+ * Results are not reproducible, even with a seed, as the interleaving of updates depends on thread scheduling.
+ */
+public class HogwildContrastiveDivergence {
+
+    private static final Logger LOGGER = Logger.getLogger(HogwildContrastiveDivergence.class);
+
+    private final Clock clock = new Clock();
+
+    private final LearningParameters learningParameters;
+
+    private final WorkStealingExecutor executor;
+
+    private final int numberThreads;
+
+    private final int batchSize;
+
+    private List<WorkerStatistics> statistics = Collections.emptyList();
+
+    public HogwildContrastiveDivergence(final LearningParameters learningParameters) {
+        this(learningParameters, WorkStealingExecutor.shared(), WorkStealingExecutor.shared().getParallelism(), 1);
+    }
+
+    /**
+     * @param batchSize rows per update when learning from a matrix, 1 is plain per sample SGD
+     */
+    public HogwildContrastiveDivergence(final LearningParameters learningParameters, final int numberThreads, final int batchSize) {
+        this(learningParameters, WorkStealingExecutor.shared(), numberThreads, batchSize);
+    }
+
+    /**
+     * @param executor runs the workers, each worker holds a thread of it until training finishes
+     * @param numberThreads number of workers
+     */
+    public HogwildContrastiveDivergence(final LearningParameters learningParameters, final WorkStealingExecutor executor, final int numberThreads, final int batchSize) {
+        this.learningParameters = learningParameters;
+        this.executor = executor;
+        this.numberThreads = numberThreads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Learn a matrix of data, each row is a training sample, updates are made batchSize rows at a time
+     */
+    public void learn(final RBM rbm, final Matrix dataSet) {
+        final Matrix converted = rbm.getWeights().convert(dataSet);
+        final List<Matrix> batches = new ArrayList<>();
+        for(int row = 0; row < converted.rows(); row += batchSize) {
+            batches.add(converted.viewRows(row, Math.min(batchSize, converted.rows() - row)));
+        }
+        learn(rbm, new ListBatchSource(batches));
+    }
+
+    public void learn(final RBM rbm, final Collection<Matrix> dataSets) {
+        final List<Matrix> converted = new ArrayList<>(dataSets.size());
+        for(Matrix dataSet : dataSets) {
+            converted.add(rbm.getWeights().convert(dataSet));
+        }
+        learn(rbm, new ListBatchSource(converted));
+    }
+
+    public void learn(final RBM rbm, final BatchSource batchSource) {
+        final long totalBatches = (long) learningParameters.getEpochs() * batchSource.size();
+        final AtomicLong remainingBatches = new AtomicLong(totalBatches);
+
+        final List<WorkerStatistics> statistics = new ArrayList<>(numberThreads);
+        final List<Worker> workers = new ArrayList<>(numberThreads);
+        for(int worker = 0; worker < numberThreads; worker++) {
+            final WorkerStatistics workerStatistics = new WorkerStatistics(worker);
+            statistics.add(workerStatistics);
+            workers.add(new Worker(rbm, batchSource, totalBatches, remainingBatches, learningParameters.newRandomSource(numberThreads, worker), workerStatistics));
+        }
+
+        clock.start();
+        try {
+            executor.runAll(workers); // a failed worker cancels the others and is rethrown
+        } finally {
+            remainingBatches.set(0); // stops workers that ignore the interrupt of a cancel
+        }
+        this.statistics = Collections.unmodifiableList(statistics);
+
+        if(learningParameters.isLog()) {
+            for(WorkerStatistics workerStatistics : statistics) {
+                LOGGER.info(workerStatistics);
+            }
+            LOGGER.info("Finished " + learningParameters.getEpochs() + " epochs on " + numberThreads + " threads in " + clock.elapsedMillis() + "ms");
+        }
+    }
+
+    /**
+     * @return per worker statistics of the last learn call
+     */
+    public List<WorkerStatistics> getStatistics() {
+        return statistics;
+    }
+
+    private class Worker implements Runnable {
+
+        private final RBM rbm;
+
+        private final BatchSource batchSource;
+
+        private final long totalBatches;
+
+        private final AtomicLong remainingBatches;
+
+        private final Random random;
+
+        private final LayerSampler sampler;
+
+        private final WorkerStatistics statistics;
+
+        private final Map<Integer, ContrastiveDivergenceWorkspace> workspaces = new HashMap<>();
+
+        // null for CD-k
+        private final GibbsChains fantasyParticles;
+
+        // this worker's velocities and squared gradients
+        private final Optimizer optimizer;
+
+        Worker(final RBM rbm, final BatchSource batchSource, final long totalBatches, final AtomicLong remainingBatches, final Random random, final WorkerStatistics statistics) {
+            this.rbm = rbm;
+            this.batchSource = batchSource;
+            this.totalBatches = totalBatches;
+            this.remainingBatches = remainingBatches;
+            this.random = random;
+            this.sampler = new LayerSampler(learningParameters.getLogisticsFunction(), random);
+            this.statistics = statistics;
+            this.fantasyParticles = learningParameters.isPersistent() ? new GibbsChains(learningParameters.getFantasyParticles(), rbm.getWeights(), true) : null;
+            this.optimizer = new Optimizer(learningParameters, rbm);
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            try {
+                final Matrix weights = rbm.getWeights();
+                long remaining;
+                while((remaining = remainingBatches.getAndDecrement()) > 0 && !Thread.currentThread().isInterrupted()) {
+                    final int epoch = (int) ((totalBatches - remaining) / batchSource.size());
+                    final Matrix dataSet = weights.convert(batchSource.get(random.nextInt(batchSource.size())));
+                    final ContrastiveDivergenceWorkspace workspace = getWorkspace(dataSet.rows());
+
+                    final double gradientScale = optimizer.gradientScale(epoch);
+                    final double error = workspace.associate(rbm, dataSet, sampler, gradientScale / dataSet.rows(), learningParameters.getGibbsSteps(),
+                            fantasyParticles, fantasyParticles == null ? 0.0 : gradientScale / fantasyParticles.getChains());
+                    // unsynchronized, racing with the other workers' updates by design
+                    optimizer.update(workspace.associations, workspace.visibleBiasAssociations, workspace.hiddenBiasAssociations, epoch);
+
+                    statistics.batches++;
+                    statistics.samples += dataSet.rows();
+                    statistics.error += error;
+                }
+            } finally {
+                statistics.elapsedNanos = System.nanoTime() - start;
+            }
+        }
+
+        private ContrastiveDivergenceWorkspace getWorkspace(final int rows) {
+            ContrastiveDivergenceWorkspace workspace = workspaces.get(rows);
+            if(workspace == null) {
+                workspace = new ContrastiveDivergenceWorkspace(rows, rbm.getWeights());
+                workspaces.put(rows, workspace);
+            }
+            return workspace;
+        }
+
+    }
+
+    /**
+     * Work done by a single worker thread. Only valid once learn has returned.
+     */
+    public static class WorkerStatistics {
+
+        private final int worker;
+
+        private long batches;
+
+        private long samples;
+
+        private double error;
+
+        private long elapsedNanos;
+
+        WorkerStatistics(final int worker) {
+            this.worker = worker;
+        }
+
+        public int getWorker() {
+            return worker;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * @return squared reconstruction error summed over all batches of this worker
+         */
+        public double getError() {
+            return error;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            return "WorkerStatistics{" +
+                    "worker=" + worker +
+                    ", batches=" + batches +
+                    ", samples=" + samples +
+                    ", meanError=" + (samples == 0 ? 0.0 : error / samples) +
+                    ", elapsed=" + getElapsedMillis() + "ms" +
+                    '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package nn.rbm.learn;
+
+import math.LayerSampler;
+import math.Matrix;
+import math.random.RandomSource;
+import nn.rbm.RBM;
+import nn.rbm.deep.RBMLayer;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs every RBM of a layer over its piece of the data, visible to hidden or hidden to visible.
+ * The states of all RBMs are sampled straight into column ranges of one buffer for the whole layer, of the same
+ * storage type as the layer's weights, whose columnPieces are the input of the next layer. So a float network stays
+ * float and nothing is copied or converted between layers.
+ * Work is split by RBM and by blocks of BLOCK_ROWS rows. Every (rbm, block) samples from a stream of its own, keyed by
+ * its position and a seed drawn per call rather than by the thread running it, so the states are reproducible with a
+ * seed, with or without an executor.
+ * Not thread safe, one instance per thread.
+ */
+class LayerInference {
+
+    public static final int BLOCK_ROWS = 256;
+
+    private final LearningParameters learningParameters;
+
+    // null to run serially on the calling thread
+    private final WorkStealingExecutor executor;
+
+    private final Random random;
+
+    LayerInference(final LearningParameters learningParameters, final WorkStealingExecutor executor) {
+        this(learningParameters, executor, learningParameters.newRandomSource());
+    }
+
+    LayerInference(final LearningParameters learningParameters, final WorkStealingExecutor executor, final Random random) {
+        this.learningParameters = learningParameters;
+        this.executor = executor;
+        this.random = random;
+    }
+
+    /**
+     * @return the sampled hidden states of the layer, rbm by rbm
+     */
+    Matrix runVisible(final RBMLayer rbmLayer, final List<Matrix> visible) {
+        return run(rbmLayer, visible, true);
+    }
+
+    /**
+     * @return the sampled visible states of the layer, rbm by rbm
+     */
+    Matrix runHidden(final RBMLayer rbmLayer, final List<Matrix> hidden) {
+        return run(rbmLayer, hidden, false);
+    }
+
+    private Matrix run(final RBMLayer rbmLayer, final List<Matrix> input, final boolean visibleToHidden) {
+        final long seed = random.nextLong();
+        final int rows = input.get(0).rows();
+        int columns = 0;
+        for(int r = 0; r < rbmLayer.size(); r++) {
+            columns += visibleToHidden ? rbmLayer.getRBM(r).getHiddenSize() : rbmLayer.getRBM(r).getVisibleSize();
+        }
+        final Matrix output = rbmLayer.getRBM(0).getWeights().like(rows, columns);
+
+        final List<Callable<Void>> blocks = new ArrayList<>();
+        for(int r = 0, column = 0; r < rbmLayer.size(); r++) {
+            final RBM rbm = rbmLayer.getRBM(r);
+            final Matrix dataSet = input.get(r);
+            final int width = visibleToHidden ? rbm.getHiddenSize() : rbm.getVisibleSize();
+            final Matrix rbmOutput = output.viewColumns(column, width);
+            column += width;
+
+            for(int start = 0, block = 0; start < rows; start += BLOCK_ROWS, block++) {
+                final int blockRows = Math.min(BLOCK_ROWS, rows - start);
+                final Matrix dataBlock = blockRows == rows ? dataSet : dataSet.viewRows(start, blockRows);
+                final Matrix outputBlock = rbmOutput.viewRows(start, blockRows);
+                final Random blockRandom = new RandomSource(seed, r, block);
+                blocks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        final LayerSampler sampler = new LayerSampler(learningParameters.getLogisticsFunction(), blockRandom);
+                        final Matrix weights = rbm.getWeights();
+                        sampler.sample(visibleToHidden ? dataBlock.dot(weights) : dataBlock.dotTransposeRight(weights),
+                                visibleToHidden ? rbm.getHiddenBias() : rbm.getVisibleBias(), outputBlock);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        WorkStealingExecutor.invokeAll(executor, blocks);
+        return output;
+    }
+
+}
@@ -2,6 +2,9 @@ package nn.rbm.learn;
 
 import cern.colt.function.tdouble.DoubleFunction;
 import math.functions.Sigmoid;
+import math.random.RandomSource;
+import nn.rbm.learn.schedule.ConstantSchedule;
+import nn.rbm.learn.schedule.LearningRateSchedule;
 
 /**
  * Created by kenny on 5/15/14.
@@ -18,6 +21,26 @@ public class LearningParameters {
 
     private int memory = 1;
 
+    private boolean shuffleBatches = true;
+
+    private Long seed = null;
+
+    private LearningRateSchedule learningRateSchedule = new ConstantSchedule();
+
+    private double momentum = 0.0;
+
+    private double weightDecay = 0.0;
+
+    private AdaptiveLearningRate adaptiveLearningRate = AdaptiveLearningRate.NONE;
+
+    private double rmsDecay = 0.9;
+
+    private double adaptiveEpsilon = 1e-8;
+
+    private int gibbsSteps = 1;
+
+    private int fantasyParticles = 0;
+
     public double getLearningRate() {
         return learningRate;
     }
@@ -27,10 +50,126 @@ public class LearningParameters {
         return this;
     }
 
+    /**
+     * @return the learning rate of the epoch, according to the schedule
+     */
+    public double getLearningRate(final int epoch) {
+        return learningRateSchedule.learningRate(learningRate, epoch, epochs);
+    }
+
+    public LearningRateSchedule getLearningRateSchedule() {
+        return learningRateSchedule;
+    }
+
+    /**
+     * how the learning rate changes over the epochs, e.g. StepSchedule, ExponentialSchedule or CosineSchedule.
+     * Constant by default
+     */
+    public LearningParameters setLearningRateSchedule(LearningRateSchedule learningRateSchedule) {
+        this.learningRateSchedule = learningRateSchedule;
+        return this;
+    }
+
+    public double getMomentum() {
+        return momentum;
+    }
+
+    /**
+     * fraction of the previous step added to each step, 0 (default) for none, typically 0.5 - 0.9
+     */
+    public LearningParameters setMomentum(double momentum) {
+        this.momentum = momentum;
+        return this;
+    }
+
+    public double getWeightDecay() {
+        return weightDecay;
+    }
+
+    /**
+     * L2 penalty on the weights, biases are not decayed. 0 (default) for none, typically 0.0001 - 0.001
+     */
+    public LearningParameters setWeightDecay(double weightDecay) {
+        this.weightDecay = weightDecay;
+        return this;
+    }
+
+    public AdaptiveLearningRate getAdaptiveLearningRate() {
+        return adaptiveLearningRate;
+    }
+
+    /**
+     * per parameter learning rates, NONE by default. The scheduled learning rate still scales every step
+     */
+    public LearningParameters setAdaptiveLearningRate(AdaptiveLearningRate adaptiveLearningRate) {
+        this.adaptiveLearningRate = adaptiveLearningRate;
+        return this;
+    }
+
+    public double getRmsDecay() {
+        return rmsDecay;
+    }
+
+    /**
+     * weight of the previous average of squared gradients in RMSPROP
+     */
+    public LearningParameters setRmsDecay(double rmsDecay) {
+        this.rmsDecay = rmsDecay;
+        return this;
+    }
+
+    public double getAdaptiveEpsilon() {
+        return adaptiveEpsilon;
+    }
+
+    /**
+     * added to the root of the squared gradients of ADAGRAD and RMSPROP, so steps stay finite
+     */
+    public LearningParameters setAdaptiveEpsilon(double adaptiveEpsilon) {
+        this.adaptiveEpsilon = adaptiveEpsilon;
+        return this;
+    }
+
+    public int getGibbsSteps() {
+        return gibbsSteps;
+    }
+
+    /**
+     * k of CD-k, the Gibbs steps of the negative phase. 1 (default) is plain CD-1
+     */
+    public LearningParameters setGibbsSteps(int gibbsSteps) {
+        if(gibbsSteps < 1) {
+            throw new IllegalArgumentException("Gibbs steps (" + gibbsSteps + ") must be at least 1");
+        }
+        this.gibbsSteps = gibbsSteps;
+        return this;
+    }
+
+    public int getFantasyParticles() {
+        return fantasyParticles;
+    }
+
+    /**
+     * chains of Persistent Contrastive Divergence, kept running across batches and epochs instead of restarting from
+     * the data. 0 (default) for plain CD, typically around the batch size
+     */
+    public LearningParameters setFantasyParticles(int fantasyParticles) {
+        this.fantasyParticles = fantasyParticles;
+        return this;
+    }
+
+    public boolean isPersistent() {
+        return fantasyParticles > 0;
+    }
+
     public DoubleFunction getLogisticsFunction() {
         return logisticsFunction;
     }
 
+    /**
+     * function squashing unit activations into probabilities, e.g. the exact Sigmoid (default),
+     * or the faster LookupSigmoid / RationalSigmoid approximations
+     */
     public LearningParameters setLogisticsFunction(DoubleFunction logisticsFunction) {
         this.logisticsFunction = logisticsFunction;
         return this;
@@ -64,6 +203,59 @@ public class LearningParameters {
         return this;
     }
 
+    public boolean isShuffleBatches() {
+        return shuffleBatches;
+    }
+
+    /**
+     * when learning from a BatchSource, visit the batches in a random order each epoch
+     */
+    public LearningParameters setShuffleBatches(boolean shuffleBatches) {
+        this.shuffleBatches = shuffleBatches;
+        return this;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * seed all sampling and shuffling of the trainers, so that training is reproducible.
+     * Each rbm trained gets its own stream, so results do not depend on the number of threads
+     */
+    public LearningParameters setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param streams keys identifying the consumer, e.g. (layer, rbm)
+     * @return the keyed stream of the seed, or an unseeded source if no seed is set
+     */
+    public RandomSource newRandomSource(final long... streams) {
+        return seed == null ? new RandomSource() : new RandomSource(seed, streams);
+    }
+
+    public LearningParameters copy() {
+        final LearningParameters copy = new LearningParameters()
+                .setLearningRate(learningRate)
+                .setLogisticsFunction(logisticsFunction)
+                .setEpochs(epochs)
+                .setLog(log)
+                .setMemory(memory)
+                .setShuffleBatches(shuffleBatches)
+                .setLearningRateSchedule(learningRateSchedule)
+                .setMomentum(momentum)
+                .setWeightDecay(weightDecay)
+                .setAdaptiveLearningRate(adaptiveLearningRate)
+                .setRmsDecay(rmsDecay)
+                .setAdaptiveEpsilon(adaptiveEpsilon)
+                .setGibbsSteps(gibbsSteps)
+                .setFantasyParticles(fantasyParticles);
+        copy.seed = seed;
+        return copy;
+    }
+
     @Override
     public String toString() {
         return "LearningParameters{" +
@@ -72,6 +264,14 @@ public class LearningParameters {
                 ", epochs=" + epochs +
                 ", log=" + log +
                 ", memory=" + memory +
+                ", shuffleBatches=" + shuffleBatches +
+                ", seed=" + seed +
+                ", learningRateSchedule=" + learningRateSchedule +
+                ", momentum=" + momentum +
+                ", weightDecay=" + weightDecay +
+                ", adaptiveLearningRate=" + adaptiveLearningRate +
+                ", gibbsSteps=" + gibbsSteps +
+                ", fantasyParticles=" + fantasyParticles +
                 '}';
     }
 
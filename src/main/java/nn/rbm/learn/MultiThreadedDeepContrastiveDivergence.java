@@ -1,20 +1,30 @@
 package nn.rbm.learn;
 
 
-import math.DenseMatrix;
 import math.Matrix;
 import nn.rbm.RBM;
 import nn.rbm.deep.DeepRBM;
 import nn.rbm.deep.RBMLayer;
 import org.apache.log4j.Logger;
 import utils.Clock;
-import utils.concurrent.ThreadPoolExecutor;
+import utils.concurrent.TimedTask;
+import utils.concurrent.WorkStealingExecutor;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
  * Created by kenny on 5/22/14.
  *
+ * Greedy layer by layer training, the RBMs of a layer train concurrently.
+ * RBMs of a layer may differ in cost, so they are submitted largest first (visible x hidden x rows x epochs), letting
+ * the small ones fill in around the large ones. An RBM costing more than a thread's fair share of its layer is
+ * trained with ParallelContrastiveDivergence, its batches split into row shards that idle threads steal.
+ * Split RBMs are reproducible with a seed for a given number of threads, all others for any number of threads.
+ * Per layer timings of the last learn call, including thread idle time, are kept in getStatistics().
+ * Building each layer's input and runVisible/runHidden run in parallel across rbms and row blocks.
  */
 public class MultiThreadedDeepContrastiveDivergence {
 
@@ -22,23 +32,37 @@ public class MultiThreadedDeepContrastiveDivergence {
 
     private final Clock clock = new Clock();
 
-    final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor();
+    private final WorkStealingExecutor executor;
 
-    private final DeepContrastiveDivergence deepContrastiveDivergence;
+    // rbms are split as if this many threads train a layer, the executor may have more or fewer
+    private final int threads;
 
-    private final ContrastiveDivergence contrastiveDivergence;
+    private final DeepContrastiveDivergence deepContrastiveDivergence;
 
     private final LearningParameters learningParameters;
 
+    private List<LayerStatistics> statistics = Collections.emptyList();
+
     public MultiThreadedDeepContrastiveDivergence(final LearningParameters learningParameters) {
-        this(learningParameters, 8);
+        this(learningParameters, WorkStealingExecutor.shared());
     }
 
+    /**
+     * @param numberThreads threads to balance each layer over, run on the shared executor
+     */
     public MultiThreadedDeepContrastiveDivergence(final LearningParameters learningParameters, final int numberThreads) {
-        this.contrastiveDivergence = new ContrastiveDivergence(learningParameters);
-        this.deepContrastiveDivergence = new DeepContrastiveDivergence(learningParameters);
+        this(learningParameters, WorkStealingExecutor.shared(), numberThreads);
+    }
+
+    public MultiThreadedDeepContrastiveDivergence(final LearningParameters learningParameters, final WorkStealingExecutor executor) {
+        this(learningParameters, executor, executor.getParallelism());
+    }
+
+    public MultiThreadedDeepContrastiveDivergence(final LearningParameters learningParameters, final WorkStealingExecutor executor, final int numberThreads) {
+        this.deepContrastiveDivergence = new DeepContrastiveDivergence(learningParameters, executor);
         this.learningParameters = learningParameters;
-        this.threadPoolExecutor.setNumThreads(numberThreads);
+        this.executor = executor;
+        this.threads = numberThreads;
     }
 
     /*
@@ -49,26 +73,84 @@ public class MultiThreadedDeepContrastiveDivergence {
     public void learn(final DeepRBM deepRBM, final Matrix dataSet) {
         final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
 
-        final List<Matrix> trainingData = dataSet.splitColumns(rbmLayers[0].size()); // split dataset across rbms
+        final List<Matrix> trainingData = dataSet.columnPieces(rbmLayers[0].size()); // split dataset across rbms
 
         List<Matrix> samplePieces = trainingData;
+        final List<LayerStatistics> statistics = new ArrayList<>(rbmLayers.length);
         clock.reset();
         for(int layer = 0; layer < rbmLayers.length; layer++) {
 
             final RBMLayer rbmLayer = rbmLayers[layer];
-            samplePieces = buildSamplesFromActivatedHiddenLayers(samplePieces, layer, rbmLayers);
+            samplePieces = deepContrastiveDivergence.buildSamplesFromActivatedHiddenLayers(samplePieces, layer, rbmLayers);
+            statistics.add(learnLayer(rbmLayer, samplePieces, layer));
+        }
+        this.statistics = Collections.unmodifiableList(statistics);
+
+        if(learningParameters.isLog()) {
+            LOGGER.info("All Layers finished Training in " + clock.elapsedSeconds() + "s");
+        }
+    }
+
+    /**
+     * @return per layer statistics of the last learn call
+     */
+    public List<LayerStatistics> getStatistics() {
+        return statistics;
+    }
 
-            for(int r = 0; r < rbmLayer.size(); r++) {
-                final RBM rbm = rbmLayer.getRBM(r);
-                final Matrix splitDataSet = samplePieces.get(r);
-                threadPoolExecutor.add(new ContrastiveDivergenceRunner(rbm, splitDataSet, this.learningParameters));
+    private LayerStatistics learnLayer(final RBMLayer rbmLayer, final List<Matrix> samplePieces, final int layer) {
+        final double[] costs = new double[rbmLayer.size()];
+        double totalCost = 0.0;
+        for(int r = 0; r < rbmLayer.size(); r++) {
+            costs[r] = cost(rbmLayer.getRBM(r), samplePieces.get(r));
+            totalCost += costs[r];
+        }
+        final double fairShare = totalCost / threads;
+
+        final List<ContrastiveDivergenceRunner> runners = new ArrayList<>(rbmLayer.size());
+        int split = 0;
+        for(int r = 0; r < rbmLayer.size(); r++) {
+            final int shards = threads > 1 ? (int) Math.min(threads, Math.ceil(costs[r] / fairShare)) : 1;
+            final ContrastiveDivergence contrastiveDivergence;
+            if(shards > 1) {
+                contrastiveDivergence = new ParallelContrastiveDivergence(learningParameters, executor, shards, layer, r);
+                split++;
+            } else {
+                // the rbm's random stream is keyed by its position, not by the thread that happens to run it
+                contrastiveDivergence = new ContrastiveDivergence(learningParameters, learningParameters.newRandomSource(layer, r));
             }
-            threadPoolExecutor.execute();
+            runners.add(new ContrastiveDivergenceRunner(contrastiveDivergence, rbmLayer.getRBM(r), samplePieces.get(r), costs[r], r));
         }
+        // largest first, so the layer is not left waiting on a large rbm started last
+        Collections.sort(runners, new Comparator<ContrastiveDivergenceRunner>() {
+            @Override
+            public int compare(final ContrastiveDivergenceRunner a, final ContrastiveDivergenceRunner b) {
+                return Double.compare(b.cost, a.cost);
+            }
+        });
+
+        final long start = System.nanoTime();
+        // a failed rbm cancels the rest of the layer and is rethrown here
+        final List<TimedTask<Void>> tasks = executor.runAll(runners);
+        final long elapsedMillis = (System.nanoTime() - start) / 1000000;
 
+        long busyMillis = 0;
+        for(int i = 0; i < tasks.size(); i++) {
+            busyMillis += tasks.get(i).getElapsedMillis() + runners.get(i).getShardMillis();
+            if(LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Layer " + layer + ", RBM " + runners.get(i).r + " trained in " + tasks.get(i).getElapsedMillis() + "ms, queued " + tasks.get(i).getQueuedMillis() + "ms");
+            }
+        }
+        final LayerStatistics layerStatistics = new LayerStatistics(layer, rbmLayer.size(), split, executor.getParallelism(), elapsedMillis, busyMillis);
         if(learningParameters.isLog()) {
-            LOGGER.info("All Layers finished Training in " + clock.elapsedSeconds() + "s");
+            LOGGER.info(layerStatistics);
         }
+        return layerStatistics;
+    }
+
+    // multiply-adds of training the rbm, the CD-1 products are all visible x hidden x rows
+    private double cost(final RBM rbm, final Matrix dataSet) {
+        return (double) rbm.getVisibleSize() * rbm.getHiddenSize() * dataSet.rows() * learningParameters.getEpochs();
     }
 
     /*
@@ -91,28 +173,6 @@ public class MultiThreadedDeepContrastiveDivergence {
         return this.deepContrastiveDivergence.runHidden(deepRBM, dataSet);
     }
 
-    /*
-        Pass data into visible layers and activate hidden layers.
-        return hidden layers
-     */
-    private List<Matrix> buildSamplesFromActivatedHiddenLayers(final List<Matrix> sampleData, final int layer, RBMLayer[] rbmLayers) {
-        final RBMLayer rbmLayer = rbmLayers[layer];
-
-        if(layer == 0) {
-            return sampleData;
-        }
-        else {
-            final RBMLayer previousLayer = rbmLayers[layer - 1];
-            Matrix[] previousLayerOutputs = new Matrix[previousLayer.size()];
-            for(int r = 0; r < previousLayer.size(); r++) {
-                final RBM rbm = previousLayer.getRBM(r);
-                previousLayerOutputs[r] = this.contrastiveDivergence.runVisible(rbm, sampleData.get(r));
-            }
-            // combine all outputs off hidden layer, then re-split them to input into the next visual layer
-            return DenseMatrix.make(Matrix.concatColumns(previousLayerOutputs)).splitColumns(rbmLayer.size());
-        }
-    }
-
     private static class ContrastiveDivergenceRunner implements Runnable {
 
         private final ContrastiveDivergence contrastiveDivergence;
@@ -121,19 +181,101 @@ public class MultiThreadedDeepContrastiveDivergence {
 
         private final RBM rbm;
 
-        public ContrastiveDivergenceRunner(final RBM rbm, final Matrix dataSet, final LearningParameters learningParameters) {
-            this.contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        private final double cost;
+
+        private final int r;
+
+        public ContrastiveDivergenceRunner(final ContrastiveDivergence contrastiveDivergence, final RBM rbm, final Matrix dataSet, final double cost, final int r) {
+            this.contrastiveDivergence = contrastiveDivergence;
             this.rbm = rbm;
             this.dataSet = dataSet;
+            this.cost = cost;
+            this.r = r;
         }
 
         @Override
         public void run() {
-            try {
-                this.contrastiveDivergence.learn(rbm, dataSet);
-            } catch(Exception e) {
-                e.printStackTrace();
+            this.contrastiveDivergence.learn(rbm, dataSet);
+        }
+
+        // busy time of a split rbm's shards on other threads
+        long getShardMillis() {
+            if(contrastiveDivergence instanceof ParallelContrastiveDivergence) {
+                return ((ParallelContrastiveDivergence) contrastiveDivergence).getShardMillis();
             }
+            return 0;
+        }
+
+    }
+
+    /**
+     * Timings of training a single layer.
+     * Threads are the executor's, whatever number of threads the layer was balanced for. Idle time is their time during
+     * the layer not spent running an rbm or its shards, threads x elapsed - busy. A split rbm counts as busy while its
+     * shards run, not while it waits for them.
+     */
+    public static class LayerStatistics {
+
+        private final int layer;
+
+        private final int rbms;
+
+        private final int splitRBMs;
+
+        private final int threads;
+
+        private final long elapsedMillis;
+
+        private final long busyMillis;
+
+        LayerStatistics(final int layer, final int rbms, final int splitRBMs, final int threads, final long elapsedMillis, final long busyMillis) {
+            this.layer = layer;
+            this.rbms = rbms;
+            this.splitRBMs = splitRBMs;
+            this.threads = threads;
+            this.elapsedMillis = elapsedMillis;
+            this.busyMillis = busyMillis;
+        }
+
+        public int getLayer() {
+            return layer;
+        }
+
+        public int getRBMs() {
+            return rbms;
+        }
+
+        public int getSplitRBMs() {
+            return splitRBMs;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getBusyMillis() {
+            return busyMillis;
+        }
+
+        public long getIdleMillis() {
+            return Math.max(0, threads * elapsedMillis - busyMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "LayerStatistics{" +
+                    "layer=" + layer +
+                    ", rbms=" + rbms +
+                    ", split=" + splitRBMs +
+                    ", threads=" + threads +
+                    ", elapsed=" + elapsedMillis + "ms" +
+                    ", busy=" + busyMillis + "ms" +
+                    ", idle=" + getIdleMillis() + "ms" +
+                    '}';
         }
 
     }
@@ -0,0 +1,187 @@
+package nn.rbm.learn;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+import math.Matrix;
+import nn.rbm.RBM;
+
+/**
+ * Applies gradient steps to an rbm's weights and biases, with the momentum, weight decay and adaptive learning rates
+ * of LearningParameters. Holds the velocity and squared gradient buffers of one rbm, allocated once, so steps allocate
+ * nothing. The weights' buffers are of the same storage type as the weights, so float weights keep float buffers.
+ *
+ * Trainers compute their gradients already multiplied by gradientScale(epoch): the scheduled learning rate, or 1 with
+ * adaptive rates, which need the raw gradient. Without momentum, decay or adaptive rates a step is a plain addition.
+ * Not thread safe, one instance per rbm being trained.
+ */
+class Optimizer {
+
+    private final LearningParameters learningParameters;
+
+    private final RBM rbm;
+
+    private final int visibleSize;
+
+    private final int hiddenSize;
+
+    // null when unused
+    private final Matrix weightVelocity;
+
+    private final double[] visibleBiasVelocity;
+
+    private final double[] hiddenBiasVelocity;
+
+    private final Matrix weightSquares;
+
+    private final double[] visibleBiasSquares;
+
+    private final double[] hiddenBiasSquares;
+
+    Optimizer(final LearningParameters learningParameters, final RBM rbm) {
+        this.learningParameters = learningParameters;
+        this.rbm = rbm;
+        this.visibleSize = rbm.getVisibleSize();
+        this.hiddenSize = rbm.getHiddenSize();
+
+        final boolean momentum = learningParameters.getMomentum() != 0.0;
+        this.weightVelocity = momentum ? rbm.getWeights().like(visibleSize, hiddenSize) : null;
+        this.visibleBiasVelocity = momentum ? new double[visibleSize] : null;
+        this.hiddenBiasVelocity = momentum ? new double[hiddenSize] : null;
+
+        final boolean adaptive = isAdaptive();
+        this.weightSquares = adaptive ? rbm.getWeights().like(visibleSize, hiddenSize) : null;
+        this.visibleBiasSquares = adaptive ? new double[visibleSize] : null;
+        this.hiddenBiasSquares = adaptive ? new double[hiddenSize] : null;
+    }
+
+    /**
+     * @return true if this optimizer's buffers belong to the rbm, as it is sized now, and match the parameters
+     */
+    boolean fits(final RBM rbm) {
+        return this.rbm == rbm && visibleSize == rbm.getVisibleSize() && hiddenSize == rbm.getHiddenSize()
+                && (weightVelocity != null) == (learningParameters.getMomentum() != 0.0)
+                && (weightSquares != null) == isAdaptive();
+    }
+
+    /**
+     * @return what gradients must be multiplied by before they are passed to update
+     */
+    double gradientScale(final int epoch) {
+        return isAdaptive() ? 1.0 : learningParameters.getLearningRate(epoch);
+    }
+
+    /**
+     * Step the rbm's weights and biases along the scaled gradients
+     */
+    void update(final Matrix weightGradient, final double[] visibleBiasGradient, final double[] hiddenBiasGradient, final int epoch) {
+        final Matrix weights = rbm.getWeights();
+        if(isPlain()) {
+            weights.data().assign(weightGradient.data(), DoubleFunctions.plus);
+            ContrastiveDivergenceWorkspace.addTo(rbm.getVisibleBias(), visibleBiasGradient);
+            ContrastiveDivergenceWorkspace.addTo(rbm.getHiddenBias(), hiddenBiasGradient);
+            return;
+        }
+        final double learningRate = learningParameters.getLearningRate(epoch);
+        // decay is part of the gradient, so it is scaled like the gradient
+        final double decay = learningParameters.getWeightDecay() * (isAdaptive() ? 1.0 : learningRate);
+
+        final double momentum = learningParameters.getMomentum();
+
+        final DoubleMatrix2D w = weights.data();
+        final DoubleMatrix2D g = weightGradient.data();
+        final DoubleMatrix2D v = weightVelocity == null ? null : weightVelocity.data();
+        final DoubleMatrix2D s = weightSquares == null ? null : weightSquares.data();
+        final double[] wDoubles = doubles(w);
+        final double[] gDoubles = doubles(g);
+        final double[] vDoubles = doubles(v);
+        final double[] sDoubles = doubles(s);
+        final float[] wFloats = floats(w);
+        final float[] gFloats = floats(g);
+        final float[] vFloats = floats(v);
+        final float[] sFloats = floats(s);
+        for(int i = 0, k = 0; i < visibleSize; i++) {
+            for(int j = 0; j < hiddenSize; j++, k++) {
+                final double weight = get(w, wDoubles, wFloats, i, j, k);
+                final double gradient = get(g, gDoubles, gFloats, i, j, k) - decay * weight;
+                double step = gradient;
+                if(s != null) {
+                    final double squares = squares(gradient, get(s, sDoubles, sFloats, i, j, k));
+                    set(s, sDoubles, sFloats, i, j, k, squares);
+                    step = adaptiveStep(gradient, squares, learningRate);
+                }
+                if(v != null) {
+                    step = momentum * get(v, vDoubles, vFloats, i, j, k) + step;
+                    set(v, vDoubles, vFloats, i, j, k, step);
+                }
+                set(w, wDoubles, wFloats, i, j, k, weight + step);
+            }
+        }
+        updateBias(rbm.getVisibleBias(), visibleBiasGradient, visibleBiasVelocity, visibleBiasSquares, learningRate);
+        updateBias(rbm.getHiddenBias(), hiddenBiasGradient, hiddenBiasVelocity, hiddenBiasSquares, learningRate);
+    }
+
+    private void updateBias(final double[] bias, final double[] gradient, final double[] velocity, final double[] squares, final double learningRate) {
+        for(int i = 0; i < bias.length; i++) {
+            double step = gradient[i];
+            if(squares != null) {
+                squares[i] = squares(gradient[i], squares[i]);
+                step = adaptiveStep(gradient[i], squares[i], learningRate);
+            }
+            if(velocity != null) {
+                velocity[i] = learningParameters.getMomentum() * velocity[i] + step;
+                step = velocity[i];
+            }
+            bias[i] += step;
+        }
+    }
+
+    // a parameter's squared gradients, accumulated with this gradient
+    private double squares(final double gradient, final double squares) {
+        if(learningParameters.getAdaptiveLearningRate() == AdaptiveLearningRate.ADAGRAD) {
+            return squares + gradient * gradient;
+        }
+        final double rmsDecay = learningParameters.getRmsDecay();
+        return rmsDecay * squares + (1.0 - rmsDecay) * gradient * gradient;
+    }
+
+    // the step of an adaptive rate, before momentum
+    private double adaptiveStep(final double gradient, final double squares, final double learningRate) {
+        return learningRate * gradient / (Math.sqrt(squares) + learningParameters.getAdaptiveEpsilon());
+    }
+
+    /**
+     * @return true if a step is only the addition of the scaled gradients
+     */
+    boolean isPlain() {
+        return weightVelocity == null && !isAdaptive() && learningParameters.getWeightDecay() == 0.0;
+    }
+
+    private boolean isAdaptive() {
+        return learningParameters.getAdaptiveLearningRate() != AdaptiveLearningRate.NONE;
+    }
+
+    // the backing array of a matrix laid out row by row, null for views, other layouts and no matrix
+    private static double[] doubles(final DoubleMatrix2D m) {
+        return m != null && !m.isView() && m.elements() instanceof double[] ? (double[]) m.elements() : null;
+    }
+
+    private static float[] floats(final DoubleMatrix2D m) {
+        return m != null && !m.isView() && m.elements() instanceof float[] ? (float[]) m.elements() : null;
+    }
+
+    // cell (i, j), the k-th row by row, through the backing array when there is one
+    private static double get(final DoubleMatrix2D m, final double[] doubles, final float[] floats, final int i, final int j, final int k) {
+        return doubles != null ? doubles[k] : floats != null ? floats[k] : m.getQuick(i, j);
+    }
+
+    private static void set(final DoubleMatrix2D m, final double[] doubles, final float[] floats, final int i, final int j, final int k, final double value) {
+        if(doubles != null) {
+            doubles[k] = value;
+        } else if(floats != null) {
+            floats[k] = (float) value;
+        } else {
+            m.setQuick(i, j, value);
+        }
+    }
+
+}
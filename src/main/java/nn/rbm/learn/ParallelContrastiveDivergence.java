@@ -0,0 +1,237 @@
+package nn.rbm.learn;
+
+import cern.jet.math.tdouble.DoubleFunctions;
+import math.LayerSampler;
+import math.Matrix;
+import nn.rbm.RBM;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Data parallel Contrastive Divergence for a single RBM.
+ * Each mini-batch is split into row shards that run their CD-k phases concurrently on a work stealing executor, each into its
+ * own workspace. The shards' associations are then reduced into one weight update, split across the pool by weight rows.
+ * The update is the same as for the whole batch at once, only the sampling differs, every shard draws from its own
+ * stream, so with a seed the results are reproducible for a given parallelism.
+ *
+ * Batches smaller than two shards of MIN_SHARD_ROWS run serially, sharding them costs more than it saves.
+ * With PCD the fantasy particles are split into a pool per shard, and a batch only uses the pools of its shards.
+ * So that the particles persist whatever the batch size, PCD batches are never handed to the serial path.
+ * Not thread safe, one instance per training thread.
+ */
+public class ParallelContrastiveDivergence extends ContrastiveDivergence {
+
+    public static final int MIN_SHARD_ROWS = 64;
+
+    private final LearningParameters learningParameters;
+
+    private final WorkStealingExecutor executor;
+
+    private final int parallelism;
+
+    private final LayerSampler[] samplers;
+
+    // shard workspaces per batch size
+    private final Map<Integer, ContrastiveDivergenceWorkspace[]> shardWorkspaces = new HashMap<>();
+
+    // PCD pools of the rbm being trained, one per shard. null for CD-k
+    private GibbsChains[] shardFantasyParticles;
+
+    private RBM fantasyRBM;
+
+    // run time of the shard tasks less the time spent waiting for them, see getShardMillis()
+    private final AtomicLong shardNanos = new AtomicLong();
+
+    public ParallelContrastiveDivergence(final LearningParameters learningParameters) {
+        this(learningParameters, WorkStealingExecutor.shared());
+    }
+
+    /**
+     * @param parallelism shards per batch, run on the shared executor
+     */
+    public ParallelContrastiveDivergence(final LearningParameters learningParameters, final int parallelism) {
+        this(learningParameters, WorkStealingExecutor.shared(), parallelism);
+    }
+
+    public ParallelContrastiveDivergence(final LearningParameters learningParameters, final WorkStealingExecutor executor) {
+        this(learningParameters, executor, executor.getParallelism());
+    }
+
+    /**
+     * @param parallelism maximum shards per batch, usually at most the executor's, less leaves threads for other work
+     * @param streams key of the random streams, e.g. (layer, rbm). Batches too small to shard sample from the same
+     *                stream as ContrastiveDivergence with learningParameters.newRandomSource(streams)
+     */
+    public ParallelContrastiveDivergence(final LearningParameters learningParameters, final WorkStealingExecutor executor, final int parallelism, final long... streams) {
+        super(learningParameters, learningParameters.newRandomSource(streams));
+        this.learningParameters = learningParameters;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.samplers = new LayerSampler[parallelism];
+        final long[] shardStreams = Arrays.copyOf(streams, streams.length + 2);
+        shardStreams[streams.length] = parallelism;
+        for(int shard = 0; shard < parallelism; shard++) {
+            shardStreams[streams.length + 1] = shard;
+            samplers[shard] = new LayerSampler(learningParameters.getLogisticsFunction(), learningParameters.newRandomSource(shardStreams));
+        }
+    }
+
+    @Override
+    protected double learnBatch(final RBM rbm, final Matrix batch) {
+        final int rows = batch.rows();
+        final GibbsChains[] fantasyParticles = getShardFantasyParticles(rbm);
+        final int maxShards = Math.min(parallelism, rows / MIN_SHARD_ROWS);
+        final int shards = fantasyParticles == null ? maxShards : Math.max(1, Math.min(maxShards, fantasyParticles.length));
+        if(fantasyParticles == null && shards < 2) {
+            return super.learnBatch(rbm, batch);
+        }
+
+        final ContrastiveDivergenceWorkspace[] workspaces = getShardWorkspaces(rbm, rows, shards);
+        final Optimizer optimizer = getOptimizer(rbm);
+        final Matrix weights = rbm.getWeights();
+        final Matrix dataSet = weights.convert(batch);
+        // scaled by the whole batch, so the reduced update equals the serial one
+        final double scale = optimizer.gradientScale(getEpoch()) / rows;
+        int chains = 0;
+        for(int shard = 0; fantasyParticles != null && shard < shards; shard++) {
+            chains += fantasyParticles[shard].getChains();
+        }
+        final double fantasyScale = fantasyParticles == null ? scale : optimizer.gradientScale(getEpoch()) / chains;
+        final int gibbsSteps = learningParameters.getGibbsSteps();
+
+        final List<Callable<Double>> associate = new ArrayList<>(shards);
+        for(int shard = 0; shard < shards; shard++) {
+            final ContrastiveDivergenceWorkspace workspace = workspaces[shard];
+            final LayerSampler sampler = samplers[shard];
+            final Matrix shardDataSet = dataSet.viewRows(shardStart(rows, shards, shard), workspace.getRows());
+            final GibbsChains shardFantasyParticles = fantasyParticles == null ? null : fantasyParticles[shard];
+            associate.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return workspace.associate(rbm, shardDataSet, sampler, scale, gibbsSteps, shardFantasyParticles, fantasyScale);
+                }
+            });
+        }
+        double error = 0.0;
+        for(double shardError : invokeAll(associate)) {
+            error += shardError;
+        }
+
+        // weights += sum of shard associations, each task reducing a band of weight rows.
+        // Steps that are more than a sum (momentum, decay, adaptive rates) are reduced into the first shard instead
+        final boolean plain = optimizer.isPlain();
+        final Matrix target = plain ? weights : workspaces[0].associations;
+        final int firstShard = plain ? 0 : 1;
+        final int visibleSize = weights.rows();
+        final int bands = Math.min(parallelism, visibleSize);
+        final List<Callable<Double>> reduce = new ArrayList<>(bands);
+        for(int band = 0; band < bands; band++) {
+            final int start = shardStart(visibleSize, bands, band);
+            final int bandRows = shardStart(visibleSize, bands, band + 1) - start;
+            reduce.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    final Matrix targetBand = target.viewRows(start, bandRows);
+                    for(int shard = firstShard; shard < shards; shard++) {
+                        targetBand.data().assign(workspaces[shard].associations.viewRows(start, bandRows).data(), DoubleFunctions.plus);
+                    }
+                    return 0.0;
+                }
+            });
+        }
+        invokeAll(reduce);
+        // biases are small, reduce them on this thread
+        final double[] visibleBias = plain ? rbm.getVisibleBias() : workspaces[0].visibleBiasAssociations;
+        final double[] hiddenBias = plain ? rbm.getHiddenBias() : workspaces[0].hiddenBiasAssociations;
+        for(int shard = firstShard; shard < shards; shard++) {
+            ContrastiveDivergenceWorkspace.addTo(visibleBias, workspaces[shard].visibleBiasAssociations);
+            ContrastiveDivergenceWorkspace.addTo(hiddenBias, workspaces[shard].hiddenBiasAssociations);
+        }
+        if(!plain) {
+            optimizer.update(workspaces[0].associations, workspaces[0].visibleBiasAssociations, workspaces[0].hiddenBiasAssociations, getEpoch());
+        }
+
+        return error;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return thread time the shards added to that of the thread calling learn so far, their run time less the time
+     *         the calling thread spent waiting for them
+     */
+    long getShardMillis() {
+        return shardNanos.get() / 1000000;
+    }
+
+    private <T> List<T> invokeAll(final List<Callable<T>> tasks) {
+        final List<Callable<T>> timedTasks = new ArrayList<>(tasks.size());
+        for(final Callable<T> task : tasks) {
+            timedTasks.add(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    final long start = System.nanoTime();
+                    try {
+                        return task.call();
+                    } finally {
+                        shardNanos.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            });
+        }
+        final long start = System.nanoTime();
+        try {
+            return executor.invokeAll(timedTasks);
+        } finally {
+            shardNanos.addAndGet(start - System.nanoTime());
+        }
+    }
+
+    // the fantasy particles split into one pool per shard, at most parallelism pools
+    private GibbsChains[] getShardFantasyParticles(final RBM rbm) {
+        if(!learningParameters.isPersistent()) {
+            return null;
+        }
+        final int particles = learningParameters.getFantasyParticles();
+        final int pools = Math.min(parallelism, particles);
+        if(shardFantasyParticles == null || fantasyRBM != rbm || shardFantasyParticles.length != pools
+                || !shardFantasyParticles[0].fits(shardStart(particles, pools, 1), rbm.getVisibleSize(), rbm.getHiddenSize())) {
+            shardFantasyParticles = new GibbsChains[pools];
+            for(int pool = 0; pool < pools; pool++) {
+                shardFantasyParticles[pool] = new GibbsChains(shardStart(particles, pools, pool + 1) - shardStart(particles, pools, pool), rbm.getWeights(), true);
+            }
+            fantasyRBM = rbm;
+        }
+        return shardFantasyParticles;
+    }
+
+    private ContrastiveDivergenceWorkspace[] getShardWorkspaces(final RBM rbm, final int rows, final int shards) {
+        ContrastiveDivergenceWorkspace[] workspaces = shardWorkspaces.get(rows);
+        if(workspaces == null || !workspaces[0].fits(workspaces[0].getRows(), rbm.getVisibleSize(), rbm.getHiddenSize())) {
+            if(workspaces != null) {
+                shardWorkspaces.clear(); // rbm dimensions changed, none of the cached workspaces fit anymore
+            }
+            workspaces = new ContrastiveDivergenceWorkspace[shards];
+            for(int shard = 0; shard < shards; shard++) {
+                workspaces[shard] = new ContrastiveDivergenceWorkspace(shardStart(rows, shards, shard + 1) - shardStart(rows, shards, shard), rbm.getWeights());
+            }
+            shardWorkspaces.put(rows, workspaces);
+        }
+        return workspaces;
+    }
+
+    // first row of the shard when splitting rows into near equal shards
+    private static int shardStart(final int rows, final int shards, final int shard) {
+        return (int) ((long) rows * shard / shards);
+    }
+
+}
@@ -0,0 +1,268 @@
+package nn.rbm.learn;
+
+import math.Matrix;
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.RBMLayer;
+import org.apache.log4j.Logger;
+import utils.Clock;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pipelined greedy training, all layers of the DeepRBM train concurrently, one thread per layer.
+ *
+ * Layer k + 1 does not wait for layer k to finish. Once layer k has trained warmupEpochs epochs it publishes a snapshot
+ * of its weights, and layer k + 1 starts training on the hidden states sampled from that snapshot. Every refreshEpochs
+ * epochs each layer publishes a new snapshot and rebuilds its own input from the latest snapshot below it.
+ * When a layer has run all its epochs on input from a snapshot older than the final weights below it, it refreshes
+ * its input once more and trains another refreshEpochs epochs, so that every layer ends up trained on the output of
+ * the fully trained layer below, as in DeepContrastiveDivergence. Those extra epochs repeat the rates of the last
+ * refreshEpochs epochs, learning rate schedules run once over the layer's epochs, not once per refresh.
+ */
+public class PipelinedDeepContrastiveDivergence {
+
+    private static final Logger LOGGER = Logger.getLogger(PipelinedDeepContrastiveDivergence.class);
+
+    private final Clock clock = new Clock();
+
+    private final WorkStealingExecutor executor;
+
+    private final DeepContrastiveDivergence deepContrastiveDivergence;
+
+    private final LearningParameters learningParameters;
+
+    private final int warmupEpochs;
+
+    private final int refreshEpochs;
+
+    /**
+     * @param warmupEpochs epochs a layer trains before the layer above it starts
+     * @param refreshEpochs epochs between snapshots, i.e. how often a layer rebuilds its input from the layer below
+     */
+    public PipelinedDeepContrastiveDivergence(final LearningParameters learningParameters, final int warmupEpochs, final int refreshEpochs) {
+        this(learningParameters, warmupEpochs, refreshEpochs, WorkStealingExecutor.shared());
+    }
+
+    /**
+     * Layers wait on each other as managed blocks, so the executor adds threads as needed even if smaller than the depth
+     */
+    public PipelinedDeepContrastiveDivergence(final LearningParameters learningParameters, final int warmupEpochs, final int refreshEpochs, final WorkStealingExecutor executor) {
+        if(refreshEpochs < 1 || warmupEpochs < refreshEpochs) {
+            throw new IllegalArgumentException("Refresh epochs (" + refreshEpochs + ") must be >= 1 and <= warmup epochs (" + warmupEpochs + ")");
+        }
+        this.deepContrastiveDivergence = new DeepContrastiveDivergence(learningParameters, executor);
+        this.learningParameters = learningParameters;
+        this.warmupEpochs = warmupEpochs;
+        this.refreshEpochs = refreshEpochs;
+        this.executor = executor;
+    }
+
+    public void learn(final DeepRBM deepRBM, final Matrix dataSet) {
+        final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
+        final Pipeline pipeline = new Pipeline(rbmLayers.length);
+
+        final List<Matrix> trainingData = dataSet.columnPieces(rbmLayers[0].size()); // split dataset across rbms
+        pipeline.publish(-1, new LayerSnapshot(null, trainingData, true));
+
+        clock.reset();
+        clock.start();
+        final List<LayerTrainer> trainers = new ArrayList<>(rbmLayers.length);
+        for(int layer = 0; layer < rbmLayers.length; layer++) {
+            trainers.add(new LayerTrainer(pipeline, rbmLayers, layer));
+        }
+        executor.runAll(trainers); // rethrows the first failed layer
+
+        if(learningParameters.isLog()) {
+            LOGGER.info("All Layers finished Training in " + clock.elapsedSeconds() + "s");
+        }
+    }
+
+    public Matrix runVisible(final DeepRBM deepRBM, final Matrix dataSet) {
+        return this.deepContrastiveDivergence.runVisible(deepRBM, dataSet);
+    }
+
+    public Matrix runHidden(final DeepRBM deepRBM, final Matrix dataSet) {
+        return this.deepContrastiveDivergence.runHidden(deepRBM, dataSet);
+    }
+
+    /*
+        Weights and input of a layer at some point of its training.
+        Layer -1 is the training data itself.
+     */
+    private static class LayerSnapshot {
+
+        private final RBM[] rbms;
+
+        private final List<Matrix> input;
+
+        private final boolean last;
+
+        LayerSnapshot(final RBM[] rbms, final List<Matrix> input, final boolean last) {
+            this.rbms = rbms;
+            this.input = input;
+            this.last = last;
+        }
+
+    }
+
+    private static class Pipeline {
+
+        // snapshot of layer i is at i + 1
+        private final AtomicReferenceArray<LayerSnapshot> snapshots;
+
+        private final CountDownLatch[] published;
+
+        private final CountDownLatch[] finished;
+
+        Pipeline(final int layers) {
+            snapshots = new AtomicReferenceArray<>(layers + 1);
+            published = new CountDownLatch[layers + 1];
+            finished = new CountDownLatch[layers + 1];
+            for(int i = 0; i < published.length; i++) {
+                published[i] = new CountDownLatch(1);
+                finished[i] = new CountDownLatch(1);
+            }
+            finished[0].countDown(); // the training data is final
+        }
+
+        void publish(final int layer, final LayerSnapshot snapshot) {
+            snapshots.set(layer + 1, snapshot);
+            published[layer + 1].countDown();
+        }
+
+        // first snapshot of the layer, blocks until its warmup is done
+        LayerSnapshot awaitFirst(final int layer) throws InterruptedException {
+            WorkStealingExecutor.await(published[layer + 1]);
+            final LayerSnapshot snapshot = snapshots.get(layer + 1);
+            if(snapshot == null) {
+                throw new IllegalStateException("Layer " + layer + " failed before publishing");
+            }
+            return snapshot;
+        }
+
+        LayerSnapshot latest(final int layer) {
+            return snapshots.get(layer + 1);
+        }
+
+        // the final snapshot of the layer, blocks until the layer is done
+        LayerSnapshot awaitLast(final int layer) throws InterruptedException {
+            WorkStealingExecutor.await(finished[layer + 1]);
+            final LayerSnapshot snapshot = snapshots.get(layer + 1);
+            if(snapshot == null || !snapshot.last) {
+                throw new IllegalStateException("Layer " + layer + " failed before finishing");
+            }
+            return snapshot;
+        }
+
+        // unblocks the layers above, if this layer failed they see no final snapshot and fail too
+        void finish(final int layer) {
+            published[layer + 1].countDown();
+            finished[layer + 1].countDown();
+        }
+
+    }
+
+    private class LayerTrainer implements Runnable {
+
+        private final Pipeline pipeline;
+
+        private final RBMLayer[] rbmLayers;
+
+        private final int layer;
+
+        private final ContrastiveDivergence[] contrastiveDivergences;
+
+        // samples the layer's input through the snapshot below
+        private final LayerInference layerInference;
+
+        LayerTrainer(final Pipeline pipeline, final RBMLayer[] rbmLayers, final int layer) {
+            this.pipeline = pipeline;
+            this.rbmLayers = rbmLayers;
+            this.layer = layer;
+
+            // keeps the total epochs, each chunk trains a range of them so schedules follow the whole run
+            final LearningParameters chunkParameters = learningParameters.copy().setLog(false);
+            this.contrastiveDivergences = new ContrastiveDivergence[rbmLayers[layer].size()];
+            for(int r = 0; r < contrastiveDivergences.length; r++) {
+                contrastiveDivergences[r] = new ContrastiveDivergence(chunkParameters, learningParameters.newRandomSource(layer, r));
+            }
+            this.layerInference = new LayerInference(learningParameters, executor, learningParameters.newRandomSource(layer, -1));
+        }
+
+        @Override
+        public void run() {
+            try {
+                LayerSnapshot below = pipeline.awaitFirst(layer - 1);
+                List<Matrix> input = buildInput(below);
+
+                int epochs = 0;
+                while(epochs < learningParameters.getEpochs()) {
+                    train(input, epochs);
+                    epochs += refreshEpochs;
+                    if(epochs >= warmupEpochs) {
+                        pipeline.publish(layer, new LayerSnapshot(snapshotRBMs(), input, false));
+                    }
+
+                    final LayerSnapshot latest = pipeline.latest(layer - 1);
+                    if(latest != below) {
+                        below = latest;
+                        input = buildInput(below);
+                    }
+                }
+
+                // make sure the last epochs ran on the final output of the layer below
+                if(!below.last) {
+                    below = pipeline.awaitLast(layer - 1);
+                    input = buildInput(below);
+                    train(input, Math.max(0, learningParameters.getEpochs() - refreshEpochs));
+                }
+                pipeline.publish(layer, new LayerSnapshot(snapshotRBMs(), input, true));
+
+                if(learningParameters.isLog()) {
+                    LOGGER.info("Layer " + layer + " finished training in " + clock.elapsedSeconds() + "s");
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Layer " + layer + " interrupted", e);
+            } finally {
+                pipeline.finish(layer);
+            }
+        }
+
+        // train refreshEpochs epochs, from startEpoch of the layer's run
+        private void train(final List<Matrix> input, final int startEpoch) {
+            final RBMLayer rbmLayer = rbmLayers[layer];
+            final int endEpoch = Math.min(startEpoch + refreshEpochs, learningParameters.getEpochs());
+            for(int r = 0; r < rbmLayer.size(); r++) {
+                contrastiveDivergences[r].learn(rbmLayer.getRBM(r), input.get(r), startEpoch, endEpoch);
+            }
+        }
+
+        private RBM[] snapshotRBMs() {
+            final RBMLayer rbmLayer = rbmLayers[layer];
+            final RBM[] rbms = new RBM[rbmLayer.size()];
+            for(int r = 0; r < rbms.length; r++) {
+                rbms[r] = rbmLayer.getRBM(r).copy();
+            }
+            return rbms;
+        }
+
+        /*
+            Pass the input of the layer below through its snapshot, then re-split the combined hidden states
+            to input into this layer
+         */
+        private List<Matrix> buildInput(final LayerSnapshot below) {
+            if(layer == 0) {
+                return below.input;
+            }
+            return layerInference.runVisible(new RBMLayer(below.rbms), below.input).columnPieces(rbmLayers[layer].size());
+        }
+
+    }
+
+}
@@ -1,11 +1,8 @@
 package nn.rbm.learn;
 
-import cern.colt.function.tdouble.DoubleDoubleFunction;
-import cern.colt.function.tdouble.DoubleFunction;
 import math.DenseMatrix;
+import math.LayerSampler;
 import math.Matrix;
-import math.functions.Sigmoid;
-import math.functions.doubledouble.rbm.ActivationState;
 import nn.rbm.RBM;
 import org.apache.log4j.Logger;
 import utils.Clock;
@@ -20,19 +17,25 @@ public class RecurrentContrastiveDivergence {
 
     private static final Logger LOGGER = Logger.getLogger(RecurrentContrastiveDivergence.class);
 
-    private static final DoubleDoubleFunction ACTIVATION_STATE = new ActivationState();
-
-    private static final DoubleFunction SIGMOID = new Sigmoid();
-
     private static final Clock CLOCK = new Clock();
 
     private final LearningParameters learningParameters;
 
     private final int memory;
 
+    private final LayerSampler sampler;
+
+    // momentum and adaptive rate buffers of the rbm being trained, and its bias gradients
+    private Optimizer optimizer;
+
+    private double[] visibleBiasAssociations;
+
+    private double[] hiddenBiasAssociations;
+
     public RecurrentContrastiveDivergence(final LearningParameters learningParameters) {
         this.learningParameters = learningParameters;
         this.memory = this.learningParameters.getMemory();
+        this.sampler = new LayerSampler(learningParameters.getLogisticsFunction(), learningParameters.newRandomSource());
     }
 
     /**
@@ -48,7 +51,7 @@ public class RecurrentContrastiveDivergence {
         LOGGER.info("Start Learning single recurrent event of (" + events.size() + " sequences)");
         CLOCK.start();
         for(int epoch = 0; epoch < learningParameters.getEpochs(); epoch++) {
-            final double error = trainEvents(rbm, events);
+            final double error = trainEvents(rbm, events, epoch);
 
             if(epoch % 10 == 0) {
                 LOGGER.info("Epoch: " + epoch + "/" + learningParameters.getEpochs() + ", error: " + error + ", time: " + CLOCK.elapsedMillis() + "ms");
@@ -68,7 +71,7 @@ public class RecurrentContrastiveDivergence {
         for(int epoch = 0; epoch < learningParameters.getEpochs(); epoch++) {
             double error = 0.0;
             for(List<Matrix> events : allEvents) {
-                error += trainEvents(rbm, events);
+                error += trainEvents(rbm, events, epoch);
             }
 
             if(epoch % 1 == 0) {
@@ -78,9 +81,10 @@ public class RecurrentContrastiveDivergence {
         }
     }
 
-    private double trainEvents(final RBM rbm, final List<Matrix> events) {
+    private double trainEvents(final RBM rbm, final List<Matrix> events, final int epoch) {
         final int numberEvents = events.size();
         final Matrix weights = rbm.getWeights();
+        final Optimizer optimizer = getOptimizer(rbm);
 
         double error = 0.0;
         for(int event = 0; event < events.size() - memory; event++) {
@@ -88,31 +92,43 @@ public class RecurrentContrastiveDivergence {
             final Matrix currentAndNextEvent = createTemporalInput(event, events);
 
             // Read training data and sample from the hidden later, positive CD phase, (reality phase)
-            final Matrix positiveHiddenActivations = currentAndNextEvent.dot(weights);
-            final Matrix positiveHiddenProbabilities = positiveHiddenActivations.apply(SIGMOID);
-            final Matrix positiveHiddenStates = positiveHiddenProbabilities.copy().apply(DenseMatrix.random(currentAndNextEvent.rows(), rbm.getHiddenSize()), ACTIVATION_STATE);
+            final Matrix positiveHiddenProbabilities = currentAndNextEvent.dot(weights);
+            final Matrix positiveHiddenStates = sampler.sample(positiveHiddenProbabilities, rbm.getHiddenBias());
 
             // Note that we're using the activation *probabilities* of the hidden states, not the hidden states themselves, when computing associations.
             // We could also use the states; see section 3 of Hinton's A Practical Guide to Training Restricted Boltzmann Machines" for more.
-            final Matrix positiveAssociations = currentAndNextEvent.transpose().dot(positiveHiddenProbabilities);
+            final Matrix positiveAssociations = currentAndNextEvent.dotTransposeLeft(positiveHiddenProbabilities);
 
             // Reconstruct the visible units and sample again from the hidden units. negative CD phase, aka the daydreaming phase.
-            final Matrix negativeVisibleActivations = positiveHiddenStates.dot(weights.transpose());
-            final Matrix negativeVisibleProbabilities = negativeVisibleActivations.apply(SIGMOID);
-            final Matrix negativeHiddenActivations = negativeVisibleProbabilities.dot(weights);
-            final Matrix negativeHiddenProbabilities = negativeHiddenActivations.apply(SIGMOID);
+            final Matrix negativeVisibleProbabilities = sampler.activate(positiveHiddenStates.dotTransposeRight(weights), rbm.getVisibleBias());
+            final Matrix negativeHiddenProbabilities = sampler.activate(negativeVisibleProbabilities.dot(weights), rbm.getHiddenBias());
 
             // Note, again, that we're using the activation *probabilities* when computing associations, not the states themselves.
-            final Matrix negativeAssociations = negativeVisibleProbabilities.transpose().dot(negativeHiddenProbabilities);
+            final Matrix negativeAssociations = negativeVisibleProbabilities.dotTransposeLeft(negativeHiddenProbabilities);
 
-            // Update weights.
-            weights.add(positiveAssociations.subtract(negativeAssociations).divide(numberEvents).multiply(learningParameters.getLearningRate()));
+            // Update weights and biases, the associations are turned into the scaled gradient in place.
+            final double scale = optimizer.gradientScale(epoch) / numberEvents;
+            // bias updates are the column sums of the same probabilities, with the other layer held at 1
+            currentAndNextEvent.columnSums(visibleBiasAssociations, scale, 0.0);
+            negativeVisibleProbabilities.columnSums(visibleBiasAssociations, -scale, 1.0);
+            positiveHiddenProbabilities.columnSums(hiddenBiasAssociations, scale, 0.0);
+            negativeHiddenProbabilities.columnSums(hiddenBiasAssociations, -scale, 1.0);
+            optimizer.update(positiveAssociations.subtract(negativeAssociations).multiply(scale), visibleBiasAssociations, hiddenBiasAssociations, epoch);
 
             error += currentAndNextEvent.subtract(negativeVisibleProbabilities).pow(2).sum();
         }
         return error / events.size();
     }
 
+    private Optimizer getOptimizer(final RBM rbm) {
+        if(optimizer == null || !optimizer.fits(rbm)) {
+            optimizer = new Optimizer(learningParameters, rbm);
+            visibleBiasAssociations = new double[rbm.getVisibleSize()];
+            hiddenBiasAssociations = new double[rbm.getHiddenSize()];
+        }
+        return optimizer;
+    }
+
     private void checkRBMConfigurations(RBM rbm, List<Matrix> events) {
         final int requiredSize = events.get(0).columns() + (events.get(0).columns() * memory);
         if(rbm.getVisibleSize() != requiredSize) {
@@ -150,14 +166,8 @@ public class RecurrentContrastiveDivergence {
 
         final Matrix currentAndNoNextEvent = event.addColumns(DenseMatrix.make(event.rows(), event.columns() * memory)); // append an empty visible layer for next guess
 
-        // Calculate the activations of the hidden units.
-        final Matrix hiddenActivations = currentAndNoNextEvent.dot(weights);
-        // Calculate the probabilities of turning the hidden units on.
-        final Matrix hiddenProbabilities = hiddenActivations.apply(SIGMOID);
-        // Turn the hidden units on with their specified probabilities.
-        final Matrix hiddenStates = hiddenProbabilities.apply(DenseMatrix.random(event.rows(), rbm.getHiddenSize()), ACTIVATION_STATE);
-
-        return hiddenStates;
+        // Calculate the activations of the hidden units, then turn them on with their squashed probabilities.
+        return sampler.sample(currentAndNoNextEvent.dot(weights), rbm.getHiddenBias());
     }
 
 
@@ -171,22 +181,12 @@ public class RecurrentContrastiveDivergence {
             final Matrix currentAndNextEvent = createTemporalInput(event, events);
 
             // run visible
-            // Calculate the activations of the hidden units.
-            final Matrix hiddenActivations = currentAndNextEvent.dot(weights);
-            // Calculate the probabilities of turning the hidden units on.
-            final Matrix hiddenProbabilities = hiddenActivations.apply(SIGMOID);
-            // Turn the hidden units on with their specified probabilities.
-            final Matrix hiddenStates = hiddenProbabilities.apply(DenseMatrix.random(currentAndNextEvent.rows(), rbm.getHiddenSize()), ACTIVATION_STATE);
+            // Turn the hidden units on with their squashed probabilities.
+            final Matrix hiddenStates = sampler.sample(currentAndNextEvent.dot(weights), rbm.getHiddenBias());
 
             // run hidden
-            // Calculate the activations of the hidden units.
-            final Matrix visibleActivations = hiddenStates.dot(weights.transpose());
-            // Calculate the probabilities of turning the visible units on.
-            final Matrix visibleProbabilities = visibleActivations.apply(SIGMOID);
-            // Turn the visible units on with their specified probabilities.
-            final Matrix visibleStates = visibleProbabilities.apply(DenseMatrix.random(hiddenStates.rows(), rbm.getVisibleSize()), ACTIVATION_STATE);
-
-            lastVisibleStates = visibleStates;
+            // Turn the visible units on with their squashed probabilities.
+            lastVisibleStates = sampler.sample(hiddenStates.dotTransposeRight(weights), rbm.getVisibleBias());
 
             event++;
         } while(event < events.size() - memory);
@@ -204,14 +204,8 @@ public class RecurrentContrastiveDivergence {
 
         final Matrix weights = rbm.getWeights();
 
-        // Calculate the activations of the hidden units.
-        final Matrix visibleActivations = hidden.dot(weights.transpose());
-        // Calculate the probabilities of turning the visible units on.
-        final Matrix visibleProbabilities = visibleActivations.apply(SIGMOID);
-        // Turn the visible units on with their specified probabilities.
-        final Matrix visibleStates = visibleProbabilities.apply(DenseMatrix.random(hidden.rows(), rbm.getVisibleSize()), ACTIVATION_STATE);
-
-        return visibleStates;
+        // Calculate the activations of the visible units, then turn them on with their squashed probabilities.
+        return sampler.sample(hidden.dotTransposeRight(weights), rbm.getVisibleBias());
     }
 
 }
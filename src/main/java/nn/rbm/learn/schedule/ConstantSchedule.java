@@ -0,0 +1,18 @@
+package nn.rbm.learn.schedule;
+
+/**
+ * The base learning rate for every epoch
+ */
+public class ConstantSchedule implements LearningRateSchedule {
+
+    @Override
+    public double learningRate(final double baseRate, final int epoch, final int epochs) {
+        return baseRate;
+    }
+
+    @Override
+    public String toString() {
+        return "constant";
+    }
+
+}
@@ -0,0 +1,28 @@
+package nn.rbm.learn.schedule;
+
+/**
+ * Anneal the learning rate from the base rate down to minRate along half a cosine over the run
+ */
+public class CosineSchedule implements LearningRateSchedule {
+
+    private final double minRate;
+
+    public CosineSchedule() {
+        this(0.0);
+    }
+
+    public CosineSchedule(final double minRate) {
+        this.minRate = minRate;
+    }
+
+    @Override
+    public double learningRate(final double baseRate, final int epoch, final int epochs) {
+        return minRate + (baseRate - minRate) * 0.5 * (1.0 + Math.cos(Math.PI * epoch / epochs));
+    }
+
+    @Override
+    public String toString() {
+        return "cosine(min " + minRate + ")";
+    }
+
+}
@@ -0,0 +1,24 @@
+package nn.rbm.learn.schedule;
+
+/**
+ * Multiply the learning rate by decay every epoch
+ */
+public class ExponentialSchedule implements LearningRateSchedule {
+
+    private final double decay;
+
+    public ExponentialSchedule(final double decay) {
+        this.decay = decay;
+    }
+
+    @Override
+    public double learningRate(final double baseRate, final int epoch, final int epochs) {
+        return baseRate * Math.pow(decay, epoch);
+    }
+
+    @Override
+    public String toString() {
+        return "exponential(" + decay + ")";
+    }
+
+}
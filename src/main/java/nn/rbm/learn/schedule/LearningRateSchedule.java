@@ -0,0 +1,14 @@
+package nn.rbm.learn.schedule;
+
+/**
+ * Learning rate of each epoch, derived from the base learning rate of LearningParameters.
+ */
+public interface LearningRateSchedule {
+
+    /**
+     * @param epoch 0 based epoch about to be trained
+     * @param epochs total epochs of the run
+     */
+    double learningRate(double baseRate, int epoch, int epochs);
+
+}
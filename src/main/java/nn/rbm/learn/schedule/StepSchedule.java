@@ -0,0 +1,30 @@
+package nn.rbm.learn.schedule;
+
+/**
+ * Multiply the learning rate by decay every stepEpochs epochs
+ */
+public class StepSchedule implements LearningRateSchedule {
+
+    private final int stepEpochs;
+
+    private final double decay;
+
+    public StepSchedule(final int stepEpochs, final double decay) {
+        if(stepEpochs <= 0) {
+            throw new IllegalArgumentException("Step epochs must be positive, was " + stepEpochs);
+        }
+        this.stepEpochs = stepEpochs;
+        this.decay = decay;
+    }
+
+    @Override
+    public double learningRate(final double baseRate, final int epoch, final int epochs) {
+        return baseRate * Math.pow(decay, epoch / stepEpochs);
+    }
+
+    @Override
+    public String toString() {
+        return "step(every " + stepEpochs + " epochs x " + decay + ")";
+    }
+
+}
@@ -5,13 +5,15 @@ import nn.rbm.RBM;
 import nn.rbm.deep.DeepRBM;
 import nn.rbm.deep.LayerParameters;
 import nn.rbm.deep.RBMLayer;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
+import java.io.Writer;
 
 /**
  * Created by kenny on 5/22/14.
@@ -25,10 +27,8 @@ public class DeepRBMPersister {
     private static final RBMPersister RBM_PERSISTER = new RBMPersister();
 
     public void save(final DeepRBM deepRBM, final String file) {
-        try {
-            LOGGER.info("Saving Deep RBM to " + file);
-            FileWriter writer = new FileWriter(file);
-
+        LOGGER.info("Saving Deep RBM to " + file);
+        try(Writer writer = new BufferedWriter(new FileWriter(file))) {
             // write out layer info
             final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
             for(int l = 0; l < rbmLayers.length; l++) {
@@ -49,34 +49,23 @@ public class DeepRBMPersister {
                     RBM_PERSISTER.writeStringBuilderData(rbmLayers[l].getRBM(r), writer);
                 }
             }
-            writer.close();
         } catch (IOException e) {
             LOGGER.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * Stream the rbms in one by one, memory is only needed for the weights, not the text
+     */
     public DeepRBM load(final String file) {
-        try {
-            List<String> lines = IOUtils.readLines(new FileReader(file));
-
-            final int[] layerInfo = COMMA_TO_INT_ARRAY_DESERIALIZER.apply(lines.get(0));
-            final int layers = layerInfo.length / 3;
-
-            final LayerParameters[] layerParameters = new LayerParameters[layers];
-            for(int l = 0; l < layers; l++) {
-                layerParameters[l] = new LayerParameters().setNumRBMS(layerInfo[l * 3]).setVisibleUnitsPerRBM(layerInfo[l * 3 + 1]).setHiddenUnitsPerRBM(layerInfo[l * 3 + 2]);
-            }
-
-            final RBMLayer[] rbmLayers = new RBMLayer[layers];
+        try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            final LayerParameters[] layerParameters = readLayerParameters(reader);
 
-            int startIndex = 1;
-            for(int l = 0; l < layers; l++) {
+            final RBMLayer[] rbmLayers = new RBMLayer[layerParameters.length];
+            for(int l = 0; l < layerParameters.length; l++) {
                 final RBM[] rbms = new RBM[layerParameters[l].getNumRBMS()];
-                final int length = 1 + layerParameters[l].getVisibleUnitsPerRBM();
-                for(int r = 0; r < layerParameters[l].getNumRBMS(); r++) {
-                    final List<String> rbmData = lines.subList(startIndex, startIndex + length);
-                    rbms[r] = RBM_PERSISTER.buildRBM(rbmData);
-                    startIndex += length;
+                for(int r = 0; r < rbms.length; r++) {
+                    rbms[r] = RBM_PERSISTER.read(reader);
                 }
                 rbmLayers[l] = new RBMLayer(rbms);
             }
@@ -88,6 +77,45 @@ public class DeepRBMPersister {
         }
     }
 
+    /**
+     * Load a single rbm of a saved DeepRBM, the rbms before it are skipped without parsing
+     */
+    public RBM loadRBM(final String file, final int layer, final int r) {
+        try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            final LayerParameters[] layerParameters = readLayerParameters(reader);
+            if(layer < 0 || layer >= layerParameters.length || r < 0 || r >= layerParameters[layer].getNumRBMS()) {
+                throw new IllegalArgumentException("No RBM " + r + " in layer " + layer + " of " + file);
+            }
+            for(int l = 0; l < layer; l++) {
+                for(int skipped = 0; skipped < layerParameters[l].getNumRBMS(); skipped++) {
+                    RBM_PERSISTER.skip(reader);
+                }
+            }
+            for(int skipped = 0; skipped < r; skipped++) {
+                RBM_PERSISTER.skip(reader);
+            }
+            return RBM_PERSISTER.read(reader);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static LayerParameters[] readLayerParameters(final BufferedReader reader) throws IOException {
+        final String line = reader.readLine();
+        if(line == null) {
+            throw new EOFException("Missing Deep RBM layer info");
+        }
+        final int[] layerInfo = COMMA_TO_INT_ARRAY_DESERIALIZER.apply(line);
+        final int layers = layerInfo.length / 3;
+
+        final LayerParameters[] layerParameters = new LayerParameters[layers];
+        for(int l = 0; l < layers; l++) {
+            layerParameters[l] = new LayerParameters().setNumRBMS(layerInfo[l * 3]).setVisibleUnitsPerRBM(layerInfo[l * 3 + 1]).setHiddenUnitsPerRBM(layerInfo[l * 3 + 2]);
+        }
+        return layerParameters;
+    }
+
     private static final Function<String, int[]> COMMA_TO_INT_ARRAY_DESERIALIZER = new Function<String, int[]>() {
         @Override
         public int[] apply(String line) {
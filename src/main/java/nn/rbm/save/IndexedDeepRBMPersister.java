@@ -0,0 +1,155 @@
+package nn.rbm.save;
+
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.deep.RBMLayer;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Saves a DeepRBM as an indexed binary container, so single rbms can be loaded without reading the rest.
+ *
+ * Layout, all little endian:
+ *   int magic ("DRBM"), int version, int layers, int reserved,
+ *   per layer: int rbms, int visible size, int hidden size, padded to a multiple of 8 bytes,
+ *   offset table: long file offset per (layer, rbm), layer by layer,
+ *   then each rbm in the format of BinaryRBMPersister.
+ *
+ * load reads the whole model, open returns a LazyDeepRBM that loads rbms on first access.
+ */
+public class IndexedDeepRBMPersister {
+
+    private static final Logger LOGGER = Logger.getLogger(IndexedDeepRBMPersister.class);
+
+    public static final int MAGIC = 0x4D_42_52_44; // "DRBM" in little endian
+
+    public static final int VERSION = 1;
+
+    private static final BinaryRBMPersister RBM_PERSISTER = new BinaryRBMPersister();
+
+    public void save(final DeepRBM deepRBM, final String file) {
+        LOGGER.info("Saving Deep RBM to " + file);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(0);
+            final FileChannel channel = randomAccessFile.getChannel();
+            final RBMLayer[] rbmLayers = deepRBM.getRbmLayers();
+
+            final ByteBuffer header = ByteBuffer.allocate(headerBytes(rbmLayers)).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rbmLayers.length).putInt(0);
+            for(RBMLayer rbmLayer : rbmLayers) {
+                header.putInt(rbmLayer.size()).putInt(rbmLayer.getRBM(0).getVisibleSize()).putInt(rbmLayer.getRBM(0).getHiddenSize());
+            }
+            header.position(tableStart(rbmLayers.length));
+            long offset = header.capacity();
+            for(RBMLayer rbmLayer : rbmLayers) {
+                for(int r = 0; r < rbmLayer.size(); r++) {
+                    header.putLong(offset);
+                    offset += BinaryRBMPersister.size(rbmLayer.getRBM(r));
+                }
+            }
+            header.flip();
+            while(header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            for(RBMLayer rbmLayer : rbmLayers) {
+                for(int r = 0; r < rbmLayer.size(); r++) {
+                    RBM_PERSISTER.write(rbmLayer.getRBM(r), channel);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    public DeepRBM load(final String file) {
+        try(LazyDeepRBM lazyDeepRBM = open(file, 1)) {
+            final RBMLayer[] lazyLayers = lazyDeepRBM.getRbmLayers();
+            final RBMLayer[] rbmLayers = new RBMLayer[lazyLayers.length];
+            for(int l = 0; l < lazyLayers.length; l++) {
+                final RBM[] rbms = new RBM[lazyLayers[l].size()];
+                for(int r = 0; r < rbms.length; r++) {
+                    rbms[r] = lazyLayers[l].getRBM(r);
+                }
+                rbmLayers[l] = new RBMLayer(rbms);
+            }
+            return new DeepRBM(rbmLayers);
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Open the file for lazy loading, only the layer info and offset table are read
+     * @param maxResidentRBMs rbms kept in memory at most, least recently used rbms are dropped beyond it
+     * @return a DeepRBM to be closed when done
+     * @throws IOException if the file can not be read or is not an indexed Deep RBM
+     */
+    public LazyDeepRBM open(final String file, final int maxResidentRBMs) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final ByteBuffer start = read(channel, 0, 16);
+            if(start.getInt() != MAGIC) {
+                throw new IOException("Not an indexed Deep RBM: " + file);
+            }
+            final int version = start.getInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported indexed Deep RBM version " + version);
+            }
+            final int layers = start.getInt();
+
+            final ByteBuffer layerInfo = read(channel, 16, tableStart(layers) - 16);
+            final LayerParameters[] layerParameters = new LayerParameters[layers];
+            int rbms = 0;
+            for(int l = 0; l < layers; l++) {
+                layerParameters[l] = new LayerParameters().setNumRBMS(layerInfo.getInt()).setVisibleUnitsPerRBM(layerInfo.getInt()).setHiddenUnitsPerRBM(layerInfo.getInt());
+                rbms += layerParameters[l].getNumRBMS();
+            }
+
+            final ByteBuffer table = read(channel, tableStart(layers), rbms * 8);
+            final long[] offsets = new long[rbms + 1];
+            for(int i = 0; i < rbms; i++) {
+                offsets[i] = table.getLong();
+            }
+            offsets[rbms] = channel.size();
+
+            return new LazyDeepRBM(randomAccessFile, layerParameters, offsets, maxResidentRBMs);
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long position, final int bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of indexed Deep RBM");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int tableStart(final int layers) {
+        final int layerInfoEnd = 16 + layers * 12;
+        return (layerInfoEnd + 7) & ~7;
+    }
+
+    private static int headerBytes(final RBMLayer[] rbmLayers) {
+        int rbms = 0;
+        for(RBMLayer rbmLayer : rbmLayers) {
+            rbms += rbmLayer.size();
+        }
+        return tableStart(rbmLayers.length) + rbms * 8;
+    }
+
+}
@@ -0,0 +1,164 @@
+package nn.rbm.save;
+
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.deep.RBMLayer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A DeepRBM backed by a file of IndexedDeepRBMPersister, whose rbms are loaded on first access through
+ * RBMLayer.getRBM. At most maxResidentRBMs rbms are kept, beyond that the least recently used one is dropped and
+ * loaded again from the file when next needed, so models larger than the heap can be served.
+ * Meant for inference, changes to the weights of an rbm are lost once it is dropped.
+ * Thread safe, rbms are read from the file outside the lock so different rbms load concurrently, and threads asking
+ * for an rbm that is being loaded wait for that load. Close it to release the file.
+ */
+public class LazyDeepRBM extends DeepRBM implements Closeable {
+
+    private static final BinaryRBMPersister RBM_PERSISTER = new BinaryRBMPersister();
+
+    private final RandomAccessFile file;
+
+    // file offset of each rbm, layer by layer, followed by the end of the last rbm
+    private final long[] offsets;
+
+    private final Map<Integer, RBM> resident;
+
+    // rbms being read from the file, by index
+    private final Map<Integer, FutureTask<RBM>> loading = new HashMap<>();
+
+    private long loads;
+
+    LazyDeepRBM(final RandomAccessFile file, final LayerParameters[] layerParameters, final long[] offsets, final int maxResidentRBMs) {
+        super(buildLayers(layerParameters), layerParameters);
+        this.file = file;
+        this.offsets = offsets;
+        this.resident = new LinkedHashMap<Integer, RBM>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, RBM> eldest) {
+                return size() > maxResidentRBMs;
+            }
+        };
+        int index = 0;
+        for(RBMLayer rbmLayer : getRbmLayers()) {
+            ((LazyRBMLayer) rbmLayer).bind(this, index);
+            index += rbmLayer.size();
+        }
+    }
+
+    /**
+     * @return number of rbms currently in memory
+     */
+    public synchronized int getResidentRBMs() {
+        return resident.size();
+    }
+
+    /**
+     * @return number of times an rbm was read from the file
+     */
+    public synchronized long getLoads() {
+        return loads;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    RBM getRBM(final int index) {
+        final FutureTask<RBM> load;
+        final boolean loader;
+        synchronized(this) {
+            final RBM rbm = resident.get(index);
+            if(rbm != null) {
+                return rbm;
+            }
+            loader = !loading.containsKey(index);
+            if(loader) {
+                loading.put(index, new FutureTask<>(new Callable<RBM>() {
+                    @Override
+                    public RBM call() throws IOException {
+                        return RBM_PERSISTER.read(file.getChannel(), offsets[index]);
+                    }
+                }));
+            }
+            load = loading.get(index);
+        }
+
+        if(loader) {
+            // outside the lock, other rbms are served and loaded meanwhile
+            load.run();
+            synchronized(this) {
+                loading.remove(index);
+                try {
+                    resident.put(index, load.get());
+                    loads++;
+                } catch (InterruptedException | ExecutionException e) {
+                    // not kept, the next call tries again. Reported below
+                }
+            }
+        }
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading RBM " + index, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load RBM " + index, e.getCause());
+        }
+    }
+
+    private static RBMLayer[] buildLayers(final LayerParameters[] layerParameters) {
+        final RBMLayer[] rbmLayers = new RBMLayer[layerParameters.length];
+        for(int l = 0; l < layerParameters.length; l++) {
+            rbmLayers[l] = new LazyRBMLayer(layerParameters[l].getNumRBMS());
+        }
+        return rbmLayers;
+    }
+
+    /*
+        Holds no rbms itself, getRBM loads them through the DeepRBM's bounded cache
+     */
+    private static class LazyRBMLayer extends RBMLayer {
+
+        private LazyDeepRBM deepRBM;
+
+        private int firstIndex;
+
+        LazyRBMLayer(final int size) {
+            super(new RBM[size]);
+        }
+
+        void bind(final LazyDeepRBM deepRBM, final int firstIndex) {
+            this.deepRBM = deepRBM;
+            this.firstIndex = firstIndex;
+        }
+
+        @Override
+        public RBM getRBM(final int r) {
+            if(r < 0 || r >= size()) {
+                throw new IndexOutOfBoundsException("RBM " + r + " of " + size());
+            }
+            return deepRBM.getRBM(firstIndex + r);
+        }
+
+        @Override
+        public String toString() {
+            return "LazyRBMLayer{" +
+                    "size=" + size() +
+                    '}';
+        }
+
+    }
+
+}
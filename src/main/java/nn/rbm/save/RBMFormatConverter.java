@@ -0,0 +1,59 @@
+package nn.rbm.save;
+
+import nn.rbm.RBM;
+import org.apache.log4j.Logger;
+
+/**
+ * Converts saved RBMs between the CSV format of RBMPersister and the binary format of BinaryRBMPersister.
+ * Usage: RBMFormatConverter input output, the direction is picked from the format of the input.
+ */
+public class RBMFormatConverter {
+
+    private static final Logger LOGGER = Logger.getLogger(RBMFormatConverter.class);
+
+    private final RBMPersister csvPersister = new RBMPersister();
+
+    private final BinaryRBMPersister binaryPersister = new BinaryRBMPersister();
+
+    /**
+     * @return false if the input could not be loaded
+     */
+    public boolean toBinary(final String csvFile, final String binaryFile) {
+        final RBM rbm = csvPersister.load(csvFile);
+        if(rbm == null) {
+            return false;
+        }
+        binaryPersister.save(rbm, binaryFile);
+        return true;
+    }
+
+    /**
+     * @return false if the input could not be loaded
+     */
+    public boolean toCsv(final String binaryFile, final String csvFile) {
+        final RBM rbm = binaryPersister.load(binaryFile);
+        if(rbm == null) {
+            return false;
+        }
+        csvPersister.save(rbm, csvFile);
+        return true;
+    }
+
+    /**
+     * Convert to the other format than the input is in
+     */
+    public boolean convert(final String input, final String output) {
+        return BinaryRBMPersister.isBinary(input) ? toCsv(input, output) : toBinary(input, output);
+    }
+
+    public static void main(String[] args) {
+        if(args.length != 2) {
+            LOGGER.error("Usage: RBMFormatConverter input output");
+            return;
+        }
+        if(!new RBMFormatConverter().convert(args[0], args[1])) {
+            LOGGER.error("Failed to convert " + args[0]);
+        }
+    }
+
+}
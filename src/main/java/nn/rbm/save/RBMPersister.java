@@ -3,9 +3,11 @@ package nn.rbm.save;
 import com.google.common.base.Function;
 import math.Matrix;
 import nn.rbm.RBM;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -14,6 +16,9 @@ import java.util.List;
 
 /**
  * Created by kenny on 5/22/14.
+ *
+ * Layout: a "visible,hidden,1" line, one line of weights per visible unit, then a line of visible and a line of hidden
+ * biases. Files without the trailing 1 in the first line have no bias lines, they load with biases of 0.
  */
 public class RBMPersister {
 
@@ -21,11 +26,11 @@ public class RBMPersister {
 
     private static final char DELIM = ',';
 
+    private static final int HAS_BIASES = 1;
+
     public void save(final RBM rbm, final String file) {
-        try {
-            FileWriter writer = new FileWriter(file);
+        try(Writer writer = new BufferedWriter(new FileWriter(file))) {
             writeStringBuilderData(rbm, writer);
-            writer.close();
         } catch (IOException e) {
             LOGGER.error(e.getMessage(), e);
         }
@@ -44,6 +49,8 @@ public class RBMPersister {
         writer.write(String.valueOf(rbm.getVisibleSize()));
         writer.write(DELIM);
         writer.write(String.valueOf(rbm.getHiddenSize()));
+        writer.write(DELIM);
+        writer.write(String.valueOf(HAS_BIASES));
         writer.write('\n');
 
         final Matrix weights = rbm.getWeights();
@@ -57,17 +64,60 @@ public class RBMPersister {
             }
             writer.write('\n');
         }
+        writeBias(rbm.getVisibleBias(), writer);
+        writeBias(rbm.getHiddenBias(), writer);
+    }
+
+    private static void writeBias(final double[] bias, final Writer writer) throws IOException {
+        for(int i = 0; i < bias.length; i++) {
+            writer.write(String.valueOf(bias[i]));
+            if(i < bias.length - 1) {
+                writer.write(DELIM);
+            }
+        }
+        writer.write('\n');
     }
 
     public RBM load(final String file) {
-        try {
-            return buildRBM(IOUtils.readLines(new FileReader(file)));
+        try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            return read(reader);
         } catch (IOException e) {
             LOGGER.error(e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * Read the next rbm from the reader, one line at a time, so only the weights are held in memory
+     */
+    public RBM read(final BufferedReader reader) throws IOException {
+        final int[] metaData = COMMA_TO_INT_ARRAY_DESERIALIZER.apply(readLine(reader));
+        final int visibleSize = metaData[0];
+        final int hiddenSize = metaData[1];
+
+        final RBM rbm = new RBM(visibleSize, hiddenSize);
+        final Matrix weights = rbm.getWeights();
+        for(int i = 0; i < visibleSize; i++) {
+            parseRow(readLine(reader), weights, i, hiddenSize);
+        }
+        if(hasBiases(metaData)) {
+            parseBias(readLine(reader), rbm.getVisibleBias());
+            parseBias(readLine(reader), rbm.getHiddenBias());
+        }
+        return rbm;
+    }
+
+    /**
+     * Skip the next rbm of the reader without parsing its weights
+     */
+    public void skip(final BufferedReader reader) throws IOException {
+        final int[] metaData = COMMA_TO_INT_ARRAY_DESERIALIZER.apply(readLine(reader));
+        final int lines = metaData[0] + (hasBiases(metaData) ? 2 : 0);
+        for(int i = 0; i < lines; i++) {
+            readLine(reader);
+        }
+    }
+
     public RBM buildRBM(final List<String> lines) {
         final int[] metaData = COMMA_TO_INT_ARRAY_DESERIALIZER.apply(lines.get(0));
         final int visibleSize = metaData[0];
@@ -76,14 +126,52 @@ public class RBMPersister {
         final RBM rbm = new RBM(visibleSize, hiddenSize);
         final Matrix weights = rbm.getWeights();
         for(int i = 0; i < visibleSize; i++) {
-            double[] values = COMMA_TO_DOUBLE_ARRAY_DESERIALIZER.apply(lines.get(i + 1));
-            for(int j = 0; j < hiddenSize; j++) {
-                weights.set(i, j, values[j]);
-            }
+            parseRow(lines.get(i + 1), weights, i, hiddenSize);
+        }
+        if(hasBiases(metaData)) {
+            parseBias(lines.get(visibleSize + 1), rbm.getVisibleBias());
+            parseBias(lines.get(visibleSize + 2), rbm.getHiddenBias());
         }
         return rbm;
     }
 
+    private static boolean hasBiases(final int[] metaData) {
+        return metaData.length > 2 && metaData[2] == HAS_BIASES;
+    }
+
+    private static String readLine(final BufferedReader reader) throws IOException {
+        final String line = reader.readLine();
+        if(line == null) {
+            throw new EOFException("Unexpected end of RBM data");
+        }
+        return line;
+    }
+
+    // parse the comma separated values of the line straight into the row of the weights
+    private static void parseRow(final String line, final Matrix weights, final int row, final int columns) {
+        int start = 0;
+        for(int j = 0; j < columns; j++) {
+            int end = line.indexOf(DELIM, start);
+            if(end < 0) {
+                end = line.length();
+            }
+            weights.set(row, j, Double.parseDouble(line.substring(start, end)));
+            start = end + 1;
+        }
+    }
+
+    private static void parseBias(final String line, final double[] bias) {
+        int start = 0;
+        for(int i = 0; i < bias.length; i++) {
+            int end = line.indexOf(DELIM, start);
+            if(end < 0) {
+                end = line.length();
+            }
+            bias[i] = Double.parseDouble(line.substring(start, end));
+            start = end + 1;
+        }
+    }
+
     private static final Function<String, int[]> COMMA_TO_INT_ARRAY_DESERIALIZER = new Function<String, int[]>() {
         @Override
         public int[] apply(String line) {
@@ -96,16 +184,4 @@ public class RBMPersister {
         }
     };
 
-    private static final Function<String, double[]> COMMA_TO_DOUBLE_ARRAY_DESERIALIZER = new Function<String, double[]>() {
-        @Override
-        public double[] apply(String line) {
-            String[] strValues = line.split(",");
-            double[] doubleValues = new double[strValues.length];
-            for(int i = 0; i < doubleValues.length; i++) {
-                doubleValues[i] = Double.parseDouble(strValues[i]);
-            }
-            return doubleValues;
-        }
-    };
-
 }
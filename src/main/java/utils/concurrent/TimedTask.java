@@ -0,0 +1,47 @@
+package utils.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A Future that records when its task was submitted, started and finished.
+ * Failures of the task are rethrown by get() as an ExecutionException, as for any Future.
+ */
+public class TimedTask<T> extends FutureTask<T> {
+
+    private final long submittedNanos = System.nanoTime();
+
+    private volatile long startedNanos;
+
+    private volatile long finishedNanos;
+
+    public TimedTask(final Callable<T> callable) {
+        super(callable);
+    }
+
+    @Override
+    public void run() {
+        startedNanos = System.nanoTime();
+        try {
+            super.run();
+        } finally {
+            finishedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return time spent waiting for a thread, or so far if not yet started
+     */
+    public long getQueuedMillis() {
+        return ((startedNanos == 0 ? System.nanoTime() : startedNanos) - submittedNanos) / 1000000;
+    }
+
+    /**
+     * @return time spent running, or so far if still running. 0 if not yet started
+     */
+    public long getElapsedMillis() {
+        if(startedNanos == 0) { return 0; }
+        return ((finishedNanos == 0 ? System.nanoTime() : finishedNanos) - startedNanos) / 1000000;
+    }
+
+}
@@ -0,0 +1,194 @@
+package utils.concurrent;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Long lived work stealing executor shared by the multithreaded trainers.
+ * Threads are started once and kept for the life of the executor (daemon threads, they do not keep the JVM alive).
+ * Every submitted task returns a TimedTask that propagates failures and can be cancelled. invokeAll/runAll wait for a
+ * group of tasks, cancel the rest of the group on the first failure and rethrow it.
+ * Tasks may submit and wait for tasks themselves, waiting is done as a managed block so the pool compensates with
+ * extra threads rather than starving.
+ */
+public class WorkStealingExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkStealingExecutor.class);
+
+    private static WorkStealingExecutor shared;
+
+    private final ForkJoinPool pool;
+
+    public WorkStealingExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WorkStealingExecutor(final int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @return the process wide executor, one thread per core
+     */
+    public static synchronized WorkStealingExecutor shared() {
+        if(shared == null) {
+            shared = new WorkStealingExecutor();
+        }
+        return shared;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public <T> TimedTask<T> submit(final Callable<T> callable) {
+        final TimedTask<T> task = new TimedTask<>(callable);
+        pool.execute(task);
+        return task;
+    }
+
+    public TimedTask<Void> submit(final Runnable runnable) {
+        return submit(Executors.<Void>callable(runnable, null));
+    }
+
+    /**
+     * Run all callables and wait for them to finish
+     * @return results in the order of the callables
+     * @throws RuntimeException the first failure of a task (wrapped in IllegalStateException if checked),
+     *         the remaining tasks are cancelled
+     */
+    public <T> List<T> invokeAll(final Collection<? extends Callable<T>> callables) {
+        final List<TimedTask<T>> tasks = new ArrayList<>(callables.size());
+        for(Callable<T> callable : callables) {
+            tasks.add(submit(callable));
+        }
+        final List<T> results = new ArrayList<>(tasks.size());
+        for(TimedTask<T> task : tasks) {
+            results.add(await(task, tasks));
+        }
+        return results;
+    }
+
+    /**
+     * Run all callables on the executor as by invokeAll, or one after the other on the calling thread if the executor
+     * is null. Failures are rethrown the same way in both cases
+     * @return results in the order of the callables
+     */
+    public static <T> List<T> invokeAll(final WorkStealingExecutor executor, final Collection<? extends Callable<T>> callables) {
+        if(executor != null) {
+            return executor.invokeAll(callables);
+        }
+        final List<T> results = new ArrayList<>(callables.size());
+        for(Callable<T> callable : callables) {
+            try {
+                results.add(callable.call());
+            } catch(RuntimeException e) {
+                throw e;
+            } catch(Exception e) {
+                throw new IllegalStateException("Task failed", e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Run all runnables and wait for them to finish, failures are handled as by invokeAll
+     * @return the finished tasks, e.g. for their timings
+     */
+    public List<TimedTask<Void>> runAll(final Collection<? extends Runnable> runnables) {
+        final List<TimedTask<Void>> tasks = new ArrayList<>(runnables.size());
+        for(Runnable runnable : runnables) {
+            tasks.add(submit(runnable));
+        }
+        for(TimedTask<Void> task : tasks) {
+            await(task, tasks);
+        }
+        return tasks;
+    }
+
+    /**
+     * Wait for the latch, as a managed block when called from a task
+     */
+    public static void await(final CountDownLatch latch) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                latch.await();
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return latch.getCount() == 0;
+            }
+        });
+    }
+
+    /**
+     * Stop accepting tasks, running tasks are finished
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static <T> T await(final TimedTask<T> task, final List<? extends TimedTask<?>> group) {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    try {
+                        task.get();
+                    } catch(ExecutionException | CancellationException e) {
+                        // reported below
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return task.isDone();
+                }
+            });
+            return task.get();
+        } catch(InterruptedException e) {
+            cancel(group);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tasks", e);
+        } catch(CancellationException e) {
+            cancel(group);
+            throw e;
+        } catch(ExecutionException e) {
+            cancel(group);
+            final Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Task failed", cause);
+        }
+    }
+
+    private static void cancel(final List<? extends TimedTask<?>> group) {
+        int cancelled = 0;
+        for(TimedTask<?> task : group) {
+            if(task.cancel(true)) {
+                cancelled++;
+            }
+        }
+        if(cancelled > 0) {
+            LOGGER.debug("Cancelled " + cancelled + " of " + group.size() + " tasks");
+        }
+    }
+
+}
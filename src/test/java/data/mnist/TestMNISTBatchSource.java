@@ -0,0 +1,81 @@
+package data.mnist;
+
+import math.Matrix;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestMNISTBatchSource {
+
+    private static final double DELTA = 0.0;
+
+    private static final String FILE = "/tmp/test-images-idx3-ubyte";
+
+    @Test
+    public void batches() throws IOException {
+        // 5 2x2 images, pixel value = image * 4 + pixel
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(FILE))) {
+            out.writeInt(2051);
+            out.writeInt(5);
+            out.writeInt(2);
+            out.writeInt(2);
+            for(int i = 0; i < 5 * 4; i++) {
+                out.writeByte(i);
+            }
+        }
+
+        try(MNISTBatchSource batchSource = new MNISTBatchSource(FILE, 2, 1.0)) {
+            assertBatches(batchSource);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLabelsFile() throws IOException {
+        // idx1 labels file header
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(FILE))) {
+            out.writeInt(2049);
+            out.writeInt(5);
+            for(int i = 0; i < 5; i++) {
+                out.writeByte(i);
+            }
+        }
+        new MNISTBatchSource(FILE, 2, 1.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void truncated() throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(FILE))) {
+            out.writeInt(2051);
+            out.writeInt(5);
+            out.writeInt(2);
+            out.writeInt(2);
+            out.writeByte(0);
+        }
+        try(MNISTBatchSource batchSource = new MNISTBatchSource(FILE, 2, 1.0)) {
+            batchSource.get(0);
+        }
+    }
+
+    private static void assertBatches(final MNISTBatchSource batchSource) {
+        assertEquals(5, batchSource.getNumberImages());
+        assertEquals(4, batchSource.getImageSize());
+        assertEquals(3, batchSource.size());
+
+        final Matrix first = batchSource.get(0);
+        assertEquals(2, first.rows());
+        assertEquals(4, first.columns());
+        assertEquals(0, first.get(0, 0), DELTA);
+        assertEquals(7, first.get(1, 3), DELTA);
+
+        // last batch is partial
+        final Matrix last = batchSource.get(2);
+        assertEquals(1, last.rows());
+        assertEquals(16, last.get(0, 0), DELTA);
+        assertEquals(19, last.get(0, 3), DELTA);
+    }
+
+}
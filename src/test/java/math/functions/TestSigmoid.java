@@ -0,0 +1,41 @@
+package math.functions;
+
+import cern.colt.function.tdouble.DoubleFunction;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSigmoid {
+
+    @Test
+    public void lookupAccuracy() {
+        assertTrue(maxError(new Sigmoid(), new LookupSigmoid()) < 3e-7);
+        assertTrue(maxError(new RangedSigmoid(-1, 1), new LookupSigmoid(-1, 1)) < 6e-7);
+    }
+
+    @Test
+    public void rationalAccuracy() {
+        assertTrue(maxError(new Sigmoid(), new RationalSigmoid()) < 5e-5);
+        assertTrue(maxError(new RangedSigmoid(-1, 1), new RationalSigmoid(-1, 1)) < 1e-4);
+    }
+
+    @Test
+    public void tails() {
+        assertEquals(0.0, new LookupSigmoid().apply(-1000), 0.0);
+        assertEquals(1.0, new LookupSigmoid().apply(1000), 0.0);
+        assertEquals(-1.0, new RationalSigmoid(-1, 1).apply(Double.NEGATIVE_INFINITY), 0.0);
+        assertEquals(1.0, new RationalSigmoid(-1, 1).apply(Double.POSITIVE_INFINITY), 0.0);
+        assertEquals(0.5, new LookupSigmoid().apply(0), 0.0);
+        assertEquals(0.5, new RationalSigmoid().apply(0), 0.0);
+    }
+
+    private static double maxError(final DoubleFunction exact, final DoubleFunction approximation) {
+        double max = 0.0;
+        for(double x = -40.0; x <= 40.0; x += 0.0007) {
+            max = Math.max(max, Math.abs(exact.apply(x) - approximation.apply(x)));
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,164 @@
+package math.matrix;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import math.BinaryMatrix;
+import math.DenseMatrix;
+import math.FloatMatrix;
+import math.Matrix;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestBinaryMatrix {
+
+    private static final double DELTA = 1e-9;
+
+    private static final Random RANDOM = new Random(0);
+
+    @Test
+    public void setGet() {
+        Matrix m = BinaryMatrix.make(3, 70); // spans two words per row
+        m.set(0, 0, 1.0);
+        m.set(1, 64, 1.0);
+        m.set(2, 69, 0.3); // any non zero is a 1
+        assertEquals(1, m.get(0, 0), 0.0);
+        assertEquals(1, m.get(1, 64), 0.0);
+        assertEquals(1, m.get(2, 69), 0.0);
+        assertEquals(0, m.get(1, 63), 0.0);
+        assertEquals(3, m.sum(), 0.0);
+
+        assertArrayEquals(new double[]{0, 1, 0}, m.data().viewColumn(64).toArray(), 0.0);
+
+        m.set(1, 64, 0.0);
+        assertEquals(0, m.get(1, 64), 0.0);
+        assertEquals(2, m.sum(), 0.0);
+        assertEquals(1, m.row(2).toArray()[69], 0.0);
+    }
+
+    @Test
+    public void transpose() {
+        Matrix m = BinaryMatrix.make(new double[][]{{1, 0, 0}, {1, 1, 0}});
+        Matrix t = m.transpose();
+        assertTrue(t instanceof BinaryMatrix);
+        assertEquals(3, t.rows());
+        assertEquals(1, t.get(0, 1), 0.0);
+        assertEquals(0, t.get(2, 1), 0.0);
+    }
+
+    @Test
+    public void arithmetic() {
+        Matrix m = BinaryMatrix.make(new double[][]{{0, 1}, {1, 0}});
+        Matrix difference = m.subtract(DenseMatrix.make(new double[][]{{1, 1}, {0, 0}}));
+        assertTrue(difference instanceof DenseMatrix);
+        assertArrayEquals(new double[]{-1, 0}, difference.toArray()[0], 0.0);
+        assertArrayEquals(new double[]{1, 0}, difference.toArray()[1], 0.0);
+        assertEquals(0.5, m.multiply(0.5).get(0, 1), 0.0);
+        // not in place
+        assertEquals(1, m.get(0, 1), 0.0);
+        assertTrue(m instanceof BinaryMatrix);
+    }
+
+    @Test
+    public void productsMatchDense() {
+        final double[][] states = randomBits(5, 130);
+        final Matrix binary = BinaryMatrix.make(states);
+        final Matrix dense = DenseMatrix.make(states);
+
+        final Matrix weights = DenseMatrix.make(randomValues(130, 7));
+        assertMatrixEquals(dense.dot(weights), binary.dot(weights));
+
+        final Matrix weightsT = DenseMatrix.make(randomValues(9, 130));
+        assertMatrixEquals(dense.dotTransposeRight(weightsT), binary.dotTransposeRight(weightsT));
+
+        final Matrix probabilities = DenseMatrix.make(randomValues(5, 4));
+        assertMatrixEquals(dense.dotTransposeLeft(probabilities), binary.dotTransposeLeft(probabilities));
+
+        final Matrix accumulated = DenseMatrix.make(randomValues(130, 4));
+        final Matrix expected = accumulated.copy();
+        dense.dotTransposeLeft(probabilities, expected, 0.5, -1.0);
+        binary.dotTransposeLeft(probabilities, accumulated, 0.5, -1.0);
+        assertMatrixEquals(expected, accumulated);
+
+        // float weights stay float
+        final Matrix floatWeights = FloatMatrix.make(weights);
+        final Matrix floatProduct = binary.dot(floatWeights);
+        assertTrue(floatProduct instanceof FloatMatrix);
+        assertMatrixEquals(dense.dot(floatWeights), floatProduct, 1e-5);
+    }
+
+    @Test
+    public void columns() {
+        final Matrix m = BinaryMatrix.make(new double[][]{{1, 0, 0, 1}, {0, 1, 1, 0}});
+        final Matrix appended = m.addColumns(m);
+        assertEquals(8, appended.columns());
+        assertEquals(1, appended.get(0, 7), 0.0);
+        assertEquals(1, appended.get(1, 5), 0.0);
+        assertEquals(2, m.splitColumns(2).size());
+        assertEquals(1, m.splitColumns(2).get(1).get(0, 1), 0.0);
+        assertEquals(1, m.viewColumns(1, 2).get(1, 1), 0.0);
+        assertEquals(0, m.viewColumns(1, 2).get(0, 1), 0.0);
+        assertEquals(1, m.columnPieces(2).get(1).get(0, 1), 0.0);
+    }
+
+    private static void assertMatrixEquals(Matrix expected, Matrix actual) {
+        assertMatrixEquals(expected, actual, DELTA);
+    }
+
+    private static void assertMatrixEquals(Matrix expected, Matrix actual, double delta) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for(int i = 0; i < expected.rows(); i++) {
+            for(int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), delta);
+            }
+        }
+    }
+
+    private static double[][] randomBits(int rows, int columns) {
+        final double[][] bits = new double[rows][columns];
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < columns; j++) {
+                bits[i][j] = RANDOM.nextBoolean() ? 1.0 : 0.0;
+            }
+        }
+        return bits;
+    }
+
+    private static double[][] randomValues(int rows, int columns) {
+        final double[][] values = new double[rows][columns];
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < columns; j++) {
+                values[i][j] = RANDOM.nextGaussian();
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void selection() {
+        Matrix m = BinaryMatrix.make(3, 70);
+        m.set(2, 65, 1.0);
+        m.set(0, 3, 1.0);
+        DoubleMatrix2D selection = m.data().viewSelection(new int[]{2, 0}, new int[]{65, 3});
+        assertEquals(1, selection.getQuick(0, 0), 0.0);
+        assertEquals(1, selection.getQuick(1, 1), 0.0);
+        assertEquals(0, selection.viewDice().getQuick(1, 0), 0.0);
+        assertArrayEquals(new double[]{0, 1}, selection.viewRow(1).toArray(), 0.0);
+
+        // writes go through to the matrix
+        selection.setQuick(1, 0, 1.0);
+        assertEquals(1, m.get(0, 65), 0.0);
+        selection.viewColumn(1).viewSelection(new int[]{0}).setQuick(0, 1.0);
+        assertEquals(1, m.get(2, 3), 0.0);
+        assertEquals(4, m.sum(), 0.0);
+
+        assertEquals(0, m.data().viewRow(1).viewSelection(new int[]{65}).getQuick(0), 0.0);
+        assertEquals(1, m.data().viewRow(2).viewSelection(new int[]{65}).getQuick(0), 0.0);
+        assertEquals(1, m.data().viewRow(2).reshape(2, 5, 7).getQuick(1, 0, 6), 0.0);
+    }
+
+}
@@ -3,8 +3,12 @@ package math.matrix;
 import math.DenseMatrix;
 import math.Matrix;
 import org.junit.Test;
+import utils.Allocations;
+
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by kenny on 5/24/14.
@@ -32,6 +36,68 @@ public class TestDenseMatrix {
         assertEquals(154, d.get(1,1), DELTA);
     }
 
+    @Test
+    public void dotTransposeLeft() {
+        // m * n
+        Matrix a = DenseMatrix.make(new double[][]{{1, 4}, {2, 5}, {3, 6}});
+        // m * p
+        Matrix b = DenseMatrix.make(new double[][]{{7, 8}, {9, 10}, {11, 12}});
+
+        // a^T * b should be [[58 64][139 154]]
+        Matrix d = a.dotTransposeLeft(b);
+        assertEquals(2, d.rows());
+        assertEquals(2, d.columns());
+        assertEquals(58, d.get(0, 0), DELTA);
+        assertEquals(64, d.get(0, 1), DELTA);
+        assertEquals(139, d.get(1, 0), DELTA);
+        assertEquals(154, d.get(1, 1), DELTA);
+
+        // into, scaled and accumulated
+        Matrix result = DenseMatrix.make(new double[][]{{1, 1}, {1, 1}});
+        Matrix r = a.dotTransposeLeft(b, result, 2.0, 1.0);
+        assertTrue(r == result);
+        assertEquals(117, result.get(0, 0), DELTA);
+        assertEquals(129, result.get(0, 1), DELTA);
+        assertEquals(279, result.get(1, 0), DELTA);
+        assertEquals(309, result.get(1, 1), DELTA);
+    }
+
+    @Test
+    public void dotTransposeRight() {
+        // n * m
+        Matrix a = DenseMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        // p * m
+        Matrix b = DenseMatrix.make(new double[][]{{7, 9, 11}, {8, 10, 12}});
+
+        // a * b^T should be [[58 64][139 154]]
+        Matrix d = a.dotTransposeRight(b);
+        assertEquals(58, d.get(0, 0), DELTA);
+        assertEquals(64, d.get(0, 1), DELTA);
+        assertEquals(139, d.get(1, 0), DELTA);
+        assertEquals(154, d.get(1, 1), DELTA);
+
+        Matrix result = DenseMatrix.make(2, 2);
+        a.dotTransposeRight(b, result);
+        assertEquals(58, result.get(0, 0), DELTA);
+        assertEquals(154, result.get(1, 1), DELTA);
+    }
+
+    @Test
+    public void dotInto() {
+        Matrix a = DenseMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        Matrix b = DenseMatrix.make(new double[][]{{7, 8}, {9, 10}, {11, 12}});
+        Matrix result = DenseMatrix.make(2, 2);
+
+        final long allocated = Allocations.allocatedBytes();
+        a.dot(b, result);
+        assertEquals(0, Allocations.allocatedBytes() - allocated);
+
+        assertEquals(58, result.get(0, 0), DELTA);
+        assertEquals(64, result.get(0, 1), DELTA);
+        assertEquals(139, result.get(1, 0), DELTA);
+        assertEquals(154, result.get(1, 1), DELTA);
+    }
+
     @Test
     public void transpose() {
         Matrix m = DenseMatrix.make(new double[][]{{1, 0, 0}, {1, 1, 0}, {1, 1, 1}});
@@ -114,6 +180,21 @@ public class TestDenseMatrix {
         assertEquals(4, d[1][1], DELTA);
     }
 
+    @Test
+    public void columnPieces() {
+        Matrix m = DenseMatrix.make(new double[][]{{1, 2, 3, 4}, {5, 6, 7, 8}});
+        List<Matrix> pieces = m.columnPieces(2);
+        assertEquals(2, pieces.size());
+        assertEquals(2, pieces.get(1).columns());
+        assertEquals(3, pieces.get(1).get(0, 0), DELTA);
+        assertEquals(8, pieces.get(1).get(1, 1), DELTA);
+
+        // views, writes go through to the matrix
+        pieces.get(1).viewRows(1, 1).set(0, 0, 70);
+        assertEquals(70, m.get(1, 2), DELTA);
+        assertEquals(70, pieces.get(1).dot(DenseMatrix.make(new double[][]{{1}, {0}})).get(1, 0), DELTA);
+    }
+
     @Test
     public void addColumns() {
         Matrix a = DenseMatrix.make(new double[][]{{1, 2}, {3, 4}});
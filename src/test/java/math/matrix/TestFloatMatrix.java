@@ -0,0 +1,143 @@
+package math.matrix;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.DoubleMatrix3D;
+import math.DenseMatrix;
+import math.FloatMatrix;
+import math.Matrix;
+import math.functions.Sigmoid;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestFloatMatrix {
+
+    private static final double DELTA = 0.0;
+
+    @Test
+    public void dot() {
+        Matrix a = FloatMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        Matrix b = FloatMatrix.make(new double[][]{{7, 8}, {9, 10}, {11, 12}});
+
+        Matrix d = a.dot(b);
+        assertTrue(d instanceof FloatMatrix);
+        assertEquals(58, d.get(0, 0), DELTA);
+        assertEquals(64, d.get(0, 1), DELTA);
+        assertEquals(139, d.get(1, 0), DELTA);
+        assertEquals(154, d.get(1, 1), DELTA);
+
+        // mixed with double
+        Matrix e = DenseMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}}).dot(b);
+        assertEquals(58, e.get(0, 0), DELTA);
+        assertEquals(154, e.get(1, 1), DELTA);
+    }
+
+    @Test
+    public void dotTranspose() {
+        Matrix a = FloatMatrix.make(new double[][]{{1, 4}, {2, 5}, {3, 6}});
+        Matrix b = FloatMatrix.make(new double[][]{{7, 8}, {9, 10}, {11, 12}});
+        Matrix left = a.dotTransposeLeft(b);
+        assertEquals(58, left.get(0, 0), DELTA);
+        assertEquals(154, left.get(1, 1), DELTA);
+
+        Matrix c = FloatMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        Matrix d = FloatMatrix.make(new double[][]{{7, 9, 11}, {8, 10, 12}});
+        Matrix right = c.dotTransposeRight(d);
+        assertEquals(58, right.get(0, 0), DELTA);
+        assertEquals(64, right.get(0, 1), DELTA);
+        assertEquals(139, right.get(1, 0), DELTA);
+        assertEquals(154, right.get(1, 1), DELTA);
+    }
+
+    @Test
+    public void transpose() {
+        Matrix m = FloatMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        Matrix t = m.transpose();
+        assertEquals(3, t.rows());
+        assertEquals(2, t.columns());
+        assertEquals(4, t.get(0, 1), DELTA);
+        assertEquals(3, t.get(2, 0), DELTA);
+    }
+
+    @Test
+    public void elementWise() {
+        Matrix m = FloatMatrix.make(new double[][]{{1, 2}, {3, 4}});
+        Matrix m2 = DenseMatrix.make(new double[][]{{1, 2}, {3, 4}});
+        m.add(m2);
+        assertEquals(2, m.get(0, 0), DELTA);
+        assertEquals(8, m.get(1, 1), DELTA);
+
+        m.subtract(FloatMatrix.make(m2));
+        assertEquals(1, m.get(0, 0), DELTA);
+        assertEquals(4, m.get(1, 1), DELTA);
+
+        assertEquals(30, m.copy().pow(2).sum(), DELTA);
+        assertEquals(10, m.sum(), DELTA);
+
+        m.apply(new Sigmoid());
+        assertEquals(1.0 / (1.0 + Math.exp(-1)), m.get(0, 0), 1e-7);
+    }
+
+    @Test
+    public void columns() {
+        Matrix a = FloatMatrix.make(new double[][]{{1, 2}, {3, 4}});
+        Matrix b = FloatMatrix.make(new double[][]{{5, 6}, {7, 8}});
+        Matrix m = a.addColumns(b);
+        assertEquals(4, m.columns());
+        assertEquals(7, m.get(1, 2), DELTA);
+
+        List<Matrix> pieces = m.splitColumns(2);
+        assertEquals(2, pieces.size());
+        assertEquals(3, pieces.get(0).get(1, 0), DELTA);
+        assertEquals(8, pieces.get(1).get(1, 1), DELTA);
+
+        double[][] concat = Matrix.concatColumns(pieces.get(0), pieces.get(1));
+        assertEquals(6, concat[0][3], DELTA);
+    }
+
+    @Test
+    public void convert() {
+        Matrix f = FloatMatrix.make(2, 2);
+        Matrix d = DenseMatrix.make(new double[][]{{0.5, 1}, {2, 4}});
+        Matrix converted = f.convert(d);
+        assertTrue(converted instanceof FloatMatrix);
+        assertEquals(0.5, converted.get(0, 0), DELTA);
+        assertTrue(f.convert(converted) == converted);
+        assertTrue(d.convert(converted) instanceof DenseMatrix);
+    }
+
+    @Test
+    public void selection() {
+        Matrix m = FloatMatrix.make(new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}});
+        DoubleMatrix2D selection = m.data().viewSelection(new int[]{2, 0}, new int[]{1, 2});
+        assertEquals(8, selection.getQuick(0, 0), DELTA);
+        assertEquals(3, selection.getQuick(1, 1), DELTA);
+        assertEquals(9, selection.viewDice().getQuick(1, 0), DELTA);
+        assertEquals(3, selection.viewRow(1).getQuick(1), DELTA);
+        assertEquals(8, selection.viewColumn(0).viewSelection(new int[]{0}).getQuick(0), DELTA);
+
+        // writes go through to the matrix
+        selection.setQuick(1, 0, 10);
+        assertEquals(10, m.get(0, 1), DELTA);
+        selection.viewRow(0).viewSelection(new int[]{1}).setQuick(0, 11);
+        assertEquals(11, m.get(2, 2), DELTA);
+
+        DoubleMatrix1D row = m.data().viewRow(1).viewSelection(new int[]{2, 0});
+        assertEquals(6, row.getQuick(0), DELTA);
+        assertEquals(4, row.getQuick(1), DELTA);
+        assertEquals(4, m.data().viewSorted(0).getQuick(1, 0), DELTA);
+    }
+
+    @Test
+    public void reshape() {
+        Matrix m = FloatMatrix.make(new double[][]{{1, 2, 3, 4, 5, 6, 7, 8}});
+        DoubleMatrix3D reshaped = m.data().viewRow(0).reshape(2, 2, 2);
+        DoubleMatrix3D expected = DenseMatrix.make(new double[][]{{1, 2, 3, 4, 5, 6, 7, 8}}).data().viewRow(0).reshape(2, 2, 2);
+        assertEquals(expected, reshaped);
+    }
+
+}
@@ -0,0 +1,80 @@
+package math.matrix;
+
+import math.BinaryMatrix;
+import math.DenseMatrix;
+import math.FloatMatrix;
+import math.LayerSampler;
+import math.Matrix;
+import math.functions.Sigmoid;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLayerSampler {
+
+    private static final double DELTA = 1e-6;
+
+    private final LayerSampler sampler = new LayerSampler(new Sigmoid());
+
+    @Test
+    public void activate() {
+        final Matrix activations = DenseMatrix.make(new double[][] {{0.0, 2.0}, {-2.0, 100.0}});
+        sampler.activate(activations);
+        assertEquals(0.5, activations.get(0, 0), DELTA);
+        assertEquals(1.0 / (1.0 + Math.exp(-2.0)), activations.get(0, 1), DELTA);
+        assertEquals(1.0 / (1.0 + Math.exp(2.0)), activations.get(1, 0), DELTA);
+        assertEquals(1.0, activations.get(1, 1), DELTA);
+    }
+
+    @Test
+    public void sampleExtremes() {
+        // saturated probabilities always sample the same state, across word boundaries of the packed states
+        final int columns = 130;
+        final Matrix activations = DenseMatrix.make(3, columns);
+        for(int j = 0; j < columns; j++) {
+            activations.set(0, j, 1000.0);
+            activations.set(1, j, -1000.0);
+            activations.set(2, j, j % 2 == 0 ? 1000.0 : -1000.0);
+        }
+        final Matrix states = sampler.sample(activations);
+        for(int j = 0; j < columns; j++) {
+            assertEquals(1.0, states.get(0, j), 0.0);
+            assertEquals(0.0, states.get(1, j), 0.0);
+            assertEquals(j % 2 == 0 ? 1.0 : 0.0, states.get(2, j), 0.0);
+        }
+        assertEquals(1.0, activations.get(0, 0), DELTA);
+    }
+
+    @Test
+    public void sampleMean() {
+        final Matrix activations = FloatMatrix.make(200, 100); // all zero, probability 0.5
+        final Matrix states = sampler.sample(activations, DenseMatrix.make(200, 100));
+        assertEquals(0.5, activations.get(0, 0), DELTA);
+        assertEquals(0.5, states.sum() / (200 * 100), 0.02);
+    }
+
+    @Test
+    public void bias() {
+        // the bias is added per column, for dense, float and view activations alike
+        final double[] bias = new double[] {1000.0, -1000.0, 0.0};
+        for(Matrix activations : new Matrix[] {DenseMatrix.make(4, 3), FloatMatrix.make(4, 3), DenseMatrix.make(8, 3).viewRows(2, 4)}) {
+            final Matrix states = sampler.sample(activations, bias);
+            for(int i = 0; i < 4; i++) {
+                assertEquals(1.0, states.get(i, 0), 0.0);
+                assertEquals(0.0, states.get(i, 1), 0.0);
+                assertEquals(0.5, activations.get(i, 2), DELTA);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void biasMismatch() {
+        sampler.activate(DenseMatrix.make(2, 3), new double[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dimensionMismatch() {
+        sampler.sample(DenseMatrix.make(2, 3), BinaryMatrix.make(3, 2));
+    }
+
+}
@@ -0,0 +1,50 @@
+package math.random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRandomSource {
+
+    @Test
+    public void seeded() {
+        final RandomSource a = new RandomSource(42);
+        final RandomSource b = new RandomSource(42);
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(a.nextLong(), b.nextLong());
+            assertEquals(a.nextGaussian(), b.nextGaussian(), 0.0);
+        }
+        assertEquals(new RandomSource(42, 1, 2).nextLong(), new RandomSource(42, 1, 2).nextLong());
+        assertTrue(new RandomSource(42, 1, 2).nextLong() != new RandomSource(42, 2, 1).nextLong());
+        assertTrue(new RandomSource().nextLong() != new RandomSource().nextLong());
+    }
+
+    @Test
+    public void split() {
+        final RandomSource parent = new RandomSource(42);
+        final RandomSource child = parent.split();
+        assertTrue(parent.nextLong() != child.nextLong());
+        assertEquals(new RandomSource(42).split().nextLong(), new RandomSource(42).split().nextLong());
+    }
+
+    @Test
+    public void distributions() {
+        final RandomSource random = new RandomSource(42);
+        final int n = 100000;
+        double sum = 0.0, gaussianSum = 0.0, gaussianSquares = 0.0;
+        for(int i = 0; i < n; i++) {
+            final double d = random.nextDouble();
+            assertTrue(d >= 0.0 && d < 1.0);
+            assertTrue(random.nextInt(10) < 10);
+            sum += d;
+            final double g = random.nextGaussian();
+            gaussianSum += g;
+            gaussianSquares += g * g;
+        }
+        assertEquals(0.5, sum / n, 0.01);
+        assertEquals(0.0, gaussianSum / n, 0.01);
+        assertEquals(1.0, gaussianSquares / n, 0.02);
+    }
+
+}
@@ -0,0 +1,125 @@
+package nn.rbm.learn;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.factory.RandomRBMFactory;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestCheckpointer {
+
+    private static final double DELTA = 0.0;
+
+    private static final LayerParameters[] LAYER_PARAMETERS = new LayerParameters[] {
+        new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(4).setHiddenUnitsPerRBM(3),
+        new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(6).setHiddenUnitsPerRBM(2)
+    };
+
+    @Test
+    public void noCheckpoint() {
+        delete("/tmp/checkpoint_none");
+        assertNull(new Checkpointer("/tmp/checkpoint_none", 1, 0).load());
+    }
+
+    @Test
+    public void contrastiveDivergence() {
+        delete("/tmp/checkpoint_rbm");
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(20).setSeed(1).setLog(false);
+        final RBM rbm = new RandomRBMFactory(1).build(8, 4);
+        final Matrix dataSet = DenseMatrix.random(10, 8).apply(new Round(0.5));
+
+        final Checkpointer checkpointer = new Checkpointer("/tmp/checkpoint_rbm", 5, 0);
+        assertFalse(checkpointer.isDue(4));
+        assertTrue(checkpointer.isDue(5));
+
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        contrastiveDivergence.setCheckpointer(checkpointer);
+        contrastiveDivergence.learn(rbm, dataSet);
+
+        // the final checkpoint is written before learn returns
+        final Checkpoint checkpoint = checkpointer.load();
+        assertEquals(20, checkpoint.getEpoch());
+        assertMatrixEquals(rbm.getWeights(), checkpoint.getRBM().getWeights());
+
+        // nothing left to train
+        assertMatrixEquals(rbm.getWeights(), new ContrastiveDivergence(learningParameters).resume(checkpoint, dataSet).getWeights());
+    }
+
+    @Test
+    public void deepContrastiveDivergence() {
+        delete("/tmp/checkpoint_deep_rbm");
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(10).setSeed(2).setLog(false);
+        final DeepRBM deepRBM = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(2));
+        final Matrix dataSet = DenseMatrix.random(10, 8).apply(new Round(0.5));
+
+        final Checkpointer checkpointer = new Checkpointer("/tmp/checkpoint_deep_rbm", 3, 0);
+        final DeepContrastiveDivergence deepContrastiveDivergence = new DeepContrastiveDivergence(learningParameters);
+        deepContrastiveDivergence.setCheckpointer(checkpointer);
+        deepContrastiveDivergence.learn(deepRBM, dataSet);
+
+        final Checkpoint checkpoint = checkpointer.load();
+        assertEquals(1, checkpoint.getLayer());
+        assertEquals(0, checkpoint.getRBMIndex());
+        assertEquals(10, checkpoint.getEpoch());
+        assertDeepRBMEquals(deepRBM, checkpoint.getDeepRBM());
+    }
+
+    @Test
+    public void resume() {
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(10).setSeed(3).setLog(false);
+        final Matrix dataSet = DenseMatrix.random(10, 8).apply(new Round(0.5));
+        final DeepRBM initial = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(3));
+
+        // crashed while training the second rbm of the first layer
+        final DeepRBM deepRBM = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(3));
+        new DeepContrastiveDivergence(learningParameters).resume(new Checkpoint(deepRBM, 0, 1, 4), dataSet);
+
+        assertMatrixEquals(initial.getRbmLayers()[0].getRBM(0).getWeights(), deepRBM.getRbmLayers()[0].getRBM(0).getWeights());
+        assertFalse(equals(initial.getRbmLayers()[0].getRBM(1).getWeights(), deepRBM.getRbmLayers()[0].getRBM(1).getWeights()));
+        assertFalse(equals(initial.getRbmLayers()[1].getRBM(0).getWeights(), deepRBM.getRbmLayers()[1].getRBM(0).getWeights()));
+    }
+
+    private static void delete(final String path) {
+        new File(path + ".drbm").delete();
+        new File(path + ".progress").delete();
+    }
+
+    private static void assertDeepRBMEquals(final DeepRBM expected, final DeepRBM actual) {
+        assertEquals(expected.getRbmLayers().length, actual.getRbmLayers().length);
+        for(int l = 0; l < expected.getRbmLayers().length; l++) {
+            assertEquals(expected.getRbmLayers()[l].size(), actual.getRbmLayers()[l].size());
+            for(int r = 0; r < expected.getRbmLayers()[l].size(); r++) {
+                assertMatrixEquals(expected.getRbmLayers()[l].getRBM(r).getWeights(), actual.getRbmLayers()[l].getRBM(r).getWeights());
+            }
+        }
+    }
+
+    private static void assertMatrixEquals(final Matrix expected, final Matrix actual) {
+        assertTrue(equals(expected, actual));
+    }
+
+    private static boolean equals(final Matrix expected, final Matrix actual) {
+        if(expected.rows() != actual.rows() || expected.columns() != actual.columns()) {
+            return false;
+        }
+        for(int i = 0; i < expected.rows(); i++) {
+            for(int j = 0; j < expected.columns(); j++) {
+                if(Math.abs(expected.get(i, j) - actual.get(i, j)) > DELTA) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -1,5 +1,6 @@
 package nn.rbm.learn;
 
+import data.batch.ListBatchSource;
 import data.image.Image;
 import data.image.decode.Matrix1BitImageDecoder;
 import data.image.decode.Matrix24BitImageDecoder;
@@ -12,10 +13,12 @@ import data.mnist.MNISTImageLoader;
 import math.DenseMatrix;
 import math.Matrix;
 import nn.rbm.RBM;
+import nn.rbm.factory.RandomFloatRBMFactory;
 import nn.rbm.factory.RandomRBMFactory;
 import org.apache.log4j.Logger;
 import org.junit.Ignore;
 import org.junit.Test;
+import utils.Allocations;
 import utils.PrettyPrint;
 
 import java.util.ArrayList;
@@ -23,6 +26,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Created by kenny on 5/12/14.
  */
@@ -48,6 +54,116 @@ public class TestContrastiveDivergence {
     }
 
 
+    @Test
+    public void trainBatchSource() {
+        final Matrix trainingData = buildBetterSampleTrainingData();
+        final List<Matrix> batches = new ArrayList<>();
+        for(int i = 0; i < trainingData.rows(); i += 2) {
+            batches.add(DenseMatrix.make(new double[][] { trainingData.row(i).toArray(), trainingData.row(i + 1).toArray() }));
+        }
+
+        // unshuffled, a batch source makes the same updates as the same batches as a collection
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(5000).setLog(false).setSeed(11).setShuffleBatches(false);
+        final RBM streamed = new RandomRBMFactory(11).build(6, 3);
+        new ContrastiveDivergence(learningParameters).learn(streamed, new ListBatchSource(batches));
+        final RBM collected = new RandomRBMFactory(11).build(6, 3);
+        new ContrastiveDivergence(learningParameters).learn(collected, batches);
+
+        assertEquals(collected.getWeights().data(), streamed.getWeights().data());
+        assertTrue(Arrays.equals(collected.getVisibleBias(), streamed.getVisibleBias()));
+        assertTrue(Arrays.equals(collected.getHiddenBias(), streamed.getHiddenBias()));
+    }
+
+    @Test
+    public void trainFloat() {
+        final RBM rbm = new RandomFloatRBMFactory().build(6, 3);
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(new LearningParameters().setEpochs(5000).setLog(false));
+
+        contrastiveDivergence.learn(rbm, buildBetterSampleTrainingData());
+
+        final Matrix testData = DenseMatrix.make(new double[][]{{0, 0, 0, 1, 1, 0}, {0, 0, 1, 1, 0, 0}});
+        final Matrix hidden = contrastiveDivergence.runVisible(rbm, testData);
+        final Matrix visual = contrastiveDivergence.runHidden(rbm, hidden);
+        LOGGER.info(visual);
+    }
+
+    @Test
+    public void seededIsReproducible() {
+        final Matrix[] weights = new Matrix[2];
+        for(int i = 0; i < weights.length; i++) {
+            final RBM rbm = new RandomRBMFactory(42).build(6, 3);
+            new ContrastiveDivergence(new LearningParameters().setEpochs(500).setLog(false).setSeed(7)).learn(rbm, buildBetterSampleTrainingData());
+            weights[i] = rbm.getWeights();
+        }
+        assertEquals(weights[0].data(), weights[1].data());
+    }
+
+    @Test
+    public void learnsBiases() {
+        // the first unit is always on and the last always off, without any constant column in the data
+        final Matrix trainingData = DenseMatrix.make(new double[][] {{1, 1, 0, 1, 0, 0}, {1, 0, 1, 0, 1, 0}, {1, 1, 1, 0, 0, 0}, {1, 0, 0, 1, 1, 0}});
+        final RBM rbm = new RandomRBMFactory(3).build(6, 3);
+        new ContrastiveDivergence(new LearningParameters().setEpochs(2000).setLog(false).setSeed(3)).learn(rbm, trainingData);
+
+        assertTrue(rbm.getVisibleBias()[0] > 1.0);
+        assertTrue(rbm.getVisibleBias()[5] < -1.0);
+    }
+
+    @Test
+    public void learnsBiasesWithCDk() {
+        final Matrix trainingData = DenseMatrix.make(new double[][] {{1, 1, 0, 1, 0, 0}, {1, 0, 1, 0, 1, 0}, {1, 1, 1, 0, 0, 0}, {1, 0, 0, 1, 1, 0}});
+        final RBM rbm = new RandomRBMFactory(3).build(6, 3);
+        new ContrastiveDivergence(new LearningParameters().setEpochs(2000).setLog(false).setSeed(3).setGibbsSteps(3)).learn(rbm, trainingData);
+
+        assertTrue(rbm.getVisibleBias()[0] > 1.0);
+        assertTrue(rbm.getVisibleBias()[5] < -1.0);
+    }
+
+    @Test
+    public void persistentChains() {
+        final Matrix trainingData = DenseMatrix.make(new double[][] {{1, 1, 0, 1, 0, 0}, {1, 0, 1, 0, 1, 0}, {1, 1, 1, 0, 0, 0}, {1, 0, 0, 1, 1, 0}});
+        final RBM rbm = new RandomRBMFactory(3).build(6, 3);
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(1).setLog(false).setSeed(3).setFantasyParticles(10);
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        contrastiveDivergence.learn(rbm, trainingData);
+        final GibbsChains fantasyParticles = contrastiveDivergence.getFantasyParticles(rbm);
+        assertEquals(10, fantasyParticles.getChains());
+
+        // the particles carry on across learn calls, and running them allocates nothing: a learn call allocates
+        // the same for one epoch as for thousands
+        long allocated = Allocations.allocatedBytes();
+        contrastiveDivergence.learn(rbm, trainingData);
+        final long oneEpoch = Allocations.allocatedBytes() - allocated;
+        learningParameters.setEpochs(2000);
+        allocated = Allocations.allocatedBytes();
+        contrastiveDivergence.learn(rbm, trainingData);
+        assertTrue(Allocations.allocatedBytes() - allocated - oneEpoch < 2000);
+        assertTrue(fantasyParticles == contrastiveDivergence.getFantasyParticles(rbm));
+
+        assertTrue(rbm.getVisibleBias()[0] > 1.0);
+        assertTrue(rbm.getVisibleBias()[5] < -1.0);
+    }
+
+    @Test
+    public void learnDoesNotAllocatePerEpoch() {
+        final RBM rbm = RBM_FACTORY.build(6, 3);
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(1).setLog(false);
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        final Matrix trainingData = buildBetterSampleTrainingData();
+
+        // first pass builds the workspace
+        contrastiveDivergence.learn(rbm, trainingData);
+
+        // a learn call allocates the same for one epoch as for a thousand, less than a byte per epoch
+        long allocated = Allocations.allocatedBytes();
+        contrastiveDivergence.learn(rbm, trainingData);
+        final long oneEpoch = Allocations.allocatedBytes() - allocated;
+        learningParameters.setEpochs(1000);
+        allocated = Allocations.allocatedBytes();
+        contrastiveDivergence.learn(rbm, trainingData);
+        assertTrue(Allocations.allocatedBytes() - allocated - oneEpoch < 1000);
+    }
+
     @Test
     public void daydream() {
         final RBM rbm = RBM_FACTORY.build(6, 4);
@@ -5,9 +5,12 @@ import data.image.decode.Matrix24BitImageDecoder;
 import data.image.encode.Matrix24BitImageEncoder;
 import data.mnist.MNISTImageLoader;
 import math.DenseMatrix;
+import math.FloatMatrix;
 import math.Matrix;
+import math.functions.Round;
 import nn.rbm.deep.DeepRBM;
 import nn.rbm.deep.LayerParameters;
+import nn.rbm.factory.RandomFloatRBMFactory;
 import nn.rbm.factory.RandomRBMFactory;
 import org.apache.log4j.Logger;
 import org.junit.Test;
@@ -16,6 +19,9 @@ import utils.PrettyPrint;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Created by kenny on 5/27/14.
  */
@@ -93,6 +99,29 @@ public class TestDeepContrastiveDivergence {
         }
     }
 
+    @Test
+    public void floatLayersStayFloat() {
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+                new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(4).setHiddenUnitsPerRBM(3),     // 8 in, 6 out
+                new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(6).setHiddenUnitsPerRBM(2)      // 6 in, 2 out
+        };
+        final DeepRBM deepRBM = new DeepRBM(layerParameters, new RandomFloatRBMFactory(3));
+        final DeepContrastiveDivergence deepContrastiveDivergence = new DeepContrastiveDivergence(new LearningParameters().setEpochs(5).setLog(false).setSeed(3));
+        final Matrix dataSet = DenseMatrix.random(10, 8).apply(new Round(0.5));
+        deepContrastiveDivergence.learn(deepRBM, dataSet);
+
+        // the second layer's input are views over the first layer's float states, used without conversion
+        final List<Matrix> input = deepContrastiveDivergence.buildSamplesFromActivatedHiddenLayers(FloatMatrix.make(dataSet).columnPieces(2), 1, deepRBM.getRbmLayers());
+        assertEquals(1, input.size());
+        assertTrue(input.get(0) instanceof FloatMatrix);
+        assertTrue(deepRBM.getRbmLayers()[1].getRBM(0).getWeights().convert(input.get(0)) == input.get(0));
+
+        final Matrix hidden = deepContrastiveDivergence.runVisible(deepRBM, dataSet);
+        assertTrue(hidden instanceof FloatMatrix);
+        assertEquals(2, hidden.columns());
+        assertTrue(deepContrastiveDivergence.runHidden(deepRBM, hidden) instanceof FloatMatrix);
+    }
+
     @Test
     public void imageSmall24BitDeepRBM() {
         // 100 * 63 * 24 input (151200)
@@ -0,0 +1,100 @@
+package nn.rbm.learn;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.factory.RandomRBMFactory;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestEarlyStopping {
+
+    @Test
+    public void stopsWhenErrorPlateaus() {
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(5000).setSeed(5).setLog(false);
+        final Matrix dataSet = DenseMatrix.random(20, 8).apply(new Round(0.5));
+        final Matrix validationSet = dataSet.viewRows(0, 10).copy();
+
+        final EarlyStopping earlyStopping = new EarlyStopping(validationSet, 10, 0.01, 3);
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        contrastiveDivergence.setEarlyStopping(earlyStopping);
+        contrastiveDivergence.learn(new RandomRBMFactory(5).build(8, 4), dataSet);
+
+        assertTrue(earlyStopping.isStopped());
+        assertTrue(earlyStopping.getStoppedEpoch() < 5000);
+        assertEquals(0, earlyStopping.getStoppedEpoch() % 10);
+        assertTrue(earlyStopping.getBestEpoch() < earlyStopping.getStoppedEpoch());
+        assertEquals(earlyStopping.getStoppedEpoch() / 10 - 1, earlyStopping.getEvaluations());
+    }
+
+    @Test
+    public void runsAllEpochsWhileImproving() {
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(20).setSeed(6).setLog(false);
+        final Matrix dataSet = DenseMatrix.random(20, 8).apply(new Round(0.5));
+
+        final EarlyStopping earlyStopping = new EarlyStopping(dataSet, 5, 0.0, 100);
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        contrastiveDivergence.setEarlyStopping(earlyStopping);
+        contrastiveDivergence.learn(new RandomRBMFactory(6).build(8, 4), dataSet);
+
+        assertFalse(earlyStopping.isStopped());
+        // the evaluation of the last epoch is recorded before learn returns
+        assertEquals(4, earlyStopping.getEvaluations());
+    }
+
+    @Test
+    public void seededIsReproducible() {
+        final Matrix dataSet = DenseMatrix.random(20, 8).apply(new Round(0.5));
+        final Matrix validationSet = DenseMatrix.random(10, 8).apply(new Round(0.5));
+
+        final RBM first = train(dataSet, validationSet);
+        final RBM second = train(dataSet, validationSet);
+        for(int i = 0; i < 8; i++) {
+            for(int j = 0; j < 4; j++) {
+                assertEquals(first.getWeights().get(i, j), second.getWeights().get(i, j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void deepContrastiveDivergence() {
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+            new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(4).setHiddenUnitsPerRBM(3),
+            new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(6).setHiddenUnitsPerRBM(2)
+        };
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(2000).setSeed(7).setLog(false);
+        final Matrix dataSet = DenseMatrix.random(20, 8).apply(new Round(0.5));
+
+        final DeepContrastiveDivergence deepContrastiveDivergence = new DeepContrastiveDivergence(learningParameters);
+        deepContrastiveDivergence.setEarlyStopping(new EarlyStopping(dataSet.viewRows(0, 10).copy(), 10, 0.01, 3));
+        final DeepRBM deepRBM = new DeepRBM(layerParameters, new RandomRBMFactory(7));
+        deepContrastiveDivergence.learn(deepRBM, dataSet);
+
+        // every rbm of both layers had its own EarlyStopping, and each stopped well short of 2000 epochs
+        final List<EarlyStopping> rbmEarlyStopping = deepContrastiveDivergence.getRBMEarlyStopping();
+        assertEquals(3, rbmEarlyStopping.size());
+        for(EarlyStopping stopping : rbmEarlyStopping) {
+            assertTrue(stopping.isStopped());
+            assertTrue(stopping.getStoppedEpoch() > 0 && stopping.getStoppedEpoch() < 2000);
+        }
+        assertEquals(2, deepContrastiveDivergence.runVisible(deepRBM, dataSet).columns());
+    }
+
+    private static RBM train(final Matrix dataSet, final Matrix validationSet) {
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(3000).setSeed(8).setLog(false);
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+        contrastiveDivergence.setEarlyStopping(new EarlyStopping(validationSet, 10, 0.01, 2));
+        final RBM rbm = new RandomRBMFactory(8).build(8, 4);
+        contrastiveDivergence.learn(rbm, dataSet);
+        return rbm;
+    }
+
+}
@@ -0,0 +1,110 @@
+package nn.rbm.learn;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import math.random.RandomSource;
+import nn.rbm.RBM;
+import nn.rbm.factory.RandomRBMFactory;
+import org.junit.Test;
+import utils.Allocations;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestGibbsSampler {
+
+    private static final int CHAINS = 150; // three blocks, the last one partial
+
+    @Test
+    public void burnInAndThinning() {
+        final RBM rbm = new RandomRBMFactory(1).build(10, 6);
+        final Matrix start = DenseMatrix.random(CHAINS, 10, new RandomSource(1)).apply(new Round(0.5));
+        final AtomicIntegerArray rows = new AtomicIntegerArray(5);
+
+        new GibbsSampler(new LearningParameters().setSeed(1), new WorkStealingExecutor(4)).sample(rbm, start, 5, 3, 2, new GibbsSampler.SampleConsumer() {
+            @Override
+            public void accept(final int chain, final int sample, final Matrix visibleStates, final Matrix visibleProbabilities) {
+                assertEquals(0, chain % GibbsSampler.BLOCK_CHAINS);
+                assertEquals(visibleStates.rows(), visibleProbabilities.rows());
+                rows.addAndGet(sample, visibleStates.rows());
+            }
+        });
+        // every chain yields each of its samples once
+        for(int sample = 0; sample < 5; sample++) {
+            assertEquals(CHAINS, rows.get(sample));
+        }
+    }
+
+    @Test
+    public void parallelMatchesSerial() {
+        final RBM rbm = new RandomRBMFactory(2).build(10, 6);
+        final Matrix start = DenseMatrix.random(CHAINS, 10, new RandomSource(2)).apply(new Round(0.5));
+
+        final double[][] serial = lastSamples(new GibbsSampler(new LearningParameters().setSeed(2)), rbm, start);
+        final double[][] parallel = lastSamples(new GibbsSampler(new LearningParameters().setSeed(2), new WorkStealingExecutor(4)), rbm, start);
+        for(int i = 0; i < CHAINS; i++) {
+            for(int j = 0; j < 10; j++) {
+                assertEquals(serial[i][j], parallel[i][j], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void reusesBuffers() {
+        final RBM rbm = new RandomRBMFactory(3).build(10, 6);
+        final Matrix start = DenseMatrix.random(GibbsSampler.BLOCK_CHAINS, 10, new RandomSource(3)).apply(new Round(0.5));
+        final GibbsSampler gibbsSampler = new GibbsSampler(new LearningParameters().setSeed(3));
+        final AtomicInteger samples = new AtomicInteger();
+        final GibbsSampler.SampleConsumer consumer = new GibbsSampler.SampleConsumer() {
+            @Override
+            public void accept(final int chain, final int sample, final Matrix visibleStates, final Matrix visibleProbabilities) {
+                samples.incrementAndGet();
+            }
+        };
+
+        gibbsSampler.sample(rbm, start, 1, 0, 1, consumer);
+        // a run allocates the same for one sample as for a thousand, less than a byte per step
+        long allocated = Allocations.allocatedBytes();
+        gibbsSampler.sample(rbm, start, 1, 0, 1, consumer);
+        final long oneSample = Allocations.allocatedBytes() - allocated;
+        allocated = Allocations.allocatedBytes();
+        gibbsSampler.sample(rbm, start, 1000, 100, 1, consumer);
+        assertTrue(Allocations.allocatedBytes() - allocated - oneSample < 1000 * 100);
+        assertEquals(1002, samples.get());
+    }
+
+    @Test
+    public void dayDream() {
+        final RBM rbm = new RandomRBMFactory(4).build(6, 3);
+        final Matrix dataSet = DenseMatrix.random(4, 6, new RandomSource(4)).apply(new Round(0.5));
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(new LearningParameters().setEpochs(100).setLog(false).setSeed(4));
+
+        // the data, then one sample per further step
+        assertEquals(10, contrastiveDivergence.dayDream(rbm, dataSet, 10).size());
+        for(Matrix sample : contrastiveDivergence.dayDream(rbm, dataSet, 3)) {
+            assertEquals(4, sample.rows());
+            assertTrue(sample.sum() <= 4 * 6);
+        }
+    }
+
+    private static double[][] lastSamples(final GibbsSampler gibbsSampler, final RBM rbm, final Matrix start) {
+        final double[][] last = new double[start.rows()][];
+        gibbsSampler.sample(rbm, start, 3, 2, 1, new GibbsSampler.SampleConsumer() {
+            @Override
+            public void accept(final int chain, final int sample, final Matrix visibleStates, final Matrix visibleProbabilities) {
+                if(sample == 2) {
+                    for(int i = 0; i < visibleStates.rows(); i++) {
+                        last[chain + i] = visibleStates.row(i).toArray();
+                    }
+                }
+            }
+        });
+        return last;
+    }
+
+}
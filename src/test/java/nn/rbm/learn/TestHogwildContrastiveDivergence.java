@@ -0,0 +1,106 @@
+package nn.rbm.learn;
+
+import data.image.Image;
+import data.image.encode.Matrix8BitImageEncoder;
+import math.DenseMatrix;
+import math.Matrix;
+import nlp.WordDictionary;
+import nn.rbm.RBM;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.learn.schedule.CosineSchedule;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Convergence of hogwild training against serial ContrastiveDivergence for the same number of epochs.
+ */
+public class TestHogwildContrastiveDivergence {
+
+    private static final Logger LOGGER = Logger.getLogger(TestHogwildContrastiveDivergence.class);
+
+    @Test
+    public void words() {
+        final List<Matrix> words = new WordDictionary("/data/nlp/english_top100k.txt").getWordVectors().subList(0, 500);
+        final Matrix dataSet = DenseMatrix.make(words.size(), words.get(0).columns());
+        for(int i = 0; i < words.size(); i++) {
+            for(int j = 0; j < dataSet.columns(); j++) {
+                dataSet.set(i, j, words.get(i).get(0, j));
+            }
+        }
+        compare("words", dataSet, 100, 200);
+    }
+
+    @Test
+    public void imageRows() {
+        // every pixel row of the image is a sample
+        final Image image = new Image("/data/fighter_jet_small.jpg");
+        final Matrix encoded = new Matrix8BitImageEncoder().encode(image);
+        final int columns = encoded.columns() / image.height();
+        final Matrix dataSet = DenseMatrix.make(image.height(), columns);
+        for(int i = 0; i < dataSet.rows(); i++) {
+            for(int j = 0; j < columns; j++) {
+                dataSet.set(i, j, encoded.get(0, i * columns + j));
+            }
+        }
+        compare("image rows", dataSet, 100, 100);
+    }
+
+    @Test
+    public void learnsWithOptimizer() {
+        // two repeated patterns, each worker applies momentum and decay through its own optimizer
+        final Matrix dataSet = DenseMatrix.make(200, 32);
+        for(int i = 0; i < dataSet.rows(); i++) {
+            for(int j = 0; j < dataSet.columns(); j++) {
+                dataSet.set(i, j, (i % 2 == 0) == (j < 16) ? 1.0 : 0.0);
+            }
+        }
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(100).setLog(false)
+                .setMomentum(0.5).setWeightDecay(0.0001).setLearningRateSchedule(new CosineSchedule());
+        final RBM rbm = new RandomRBMFactory(42).build(32, 8);
+        final double initialError = reconstructionError(rbm, dataSet);
+        new HogwildContrastiveDivergence(learningParameters, 4, 10).learn(rbm, dataSet);
+        assertTrue(reconstructionError(rbm, dataSet) < initialError / 10);
+    }
+
+    private void compare(final String name, final Matrix dataSet, final int hiddenSize, final int epochs) {
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(epochs).setLog(false);
+        final RBM initial = new RandomRBMFactory(42).build(dataSet.columns(), hiddenSize);
+        final double initialError = reconstructionError(initial, dataSet);
+
+        final RBM serial = new RandomRBMFactory(42).build(dataSet.columns(), hiddenSize);
+        final List<Matrix> batches = new ArrayList<>(); // same batch size as hogwild
+        for(int i = 0; i < dataSet.rows(); i += 10) {
+            batches.add(dataSet.viewRows(i, Math.min(10, dataSet.rows() - i)));
+        }
+        new ContrastiveDivergence(learningParameters).learn(serial, batches);
+        final double serialError = reconstructionError(serial, dataSet);
+
+        final RBM hogwild = new RandomRBMFactory(42).build(dataSet.columns(), hiddenSize);
+        final HogwildContrastiveDivergence hogwildContrastiveDivergence = new HogwildContrastiveDivergence(learningParameters, 4, 10);
+        hogwildContrastiveDivergence.learn(hogwild, dataSet);
+        final double hogwildError = reconstructionError(hogwild, dataSet);
+
+        long hogwildBatches = 0;
+        for(HogwildContrastiveDivergence.WorkerStatistics statistics : hogwildContrastiveDivergence.getStatistics()) {
+            LOGGER.info(statistics);
+            hogwildBatches += statistics.getBatches();
+        }
+        assertEquals((long) epochs * batches.size(), hogwildBatches);
+
+        LOGGER.info(name + " reconstruction error, initial: " + initialError + ", serial: " + serialError + ", hogwild: " + hogwildError);
+        assertTrue(hogwildError < Math.min(initialError, 2 * serialError));
+    }
+
+    private static double reconstructionError(final RBM rbm, final Matrix dataSet) {
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(new LearningParameters());
+        final Matrix visible = contrastiveDivergence.runHidden(rbm, contrastiveDivergence.runVisible(rbm, dataSet));
+        return dataSet.copy().subtract(visible).pow(2).sum() / dataSet.rows();
+    }
+
+}
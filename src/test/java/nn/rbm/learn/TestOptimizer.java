@@ -0,0 +1,135 @@
+package nn.rbm.learn;
+
+import math.DenseMatrix;
+import math.FloatMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.RBM;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.learn.schedule.CosineSchedule;
+import nn.rbm.learn.schedule.ExponentialSchedule;
+import nn.rbm.learn.schedule.StepSchedule;
+import org.junit.Test;
+import utils.Allocations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestOptimizer {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void plain() {
+        final RBM rbm = new RBM(DenseMatrix.make(new double[][] {{1.0}}));
+        final Optimizer optimizer = new Optimizer(new LearningParameters().setLearningRate(0.1), rbm);
+        assertEquals(0.1, optimizer.gradientScale(0), DELTA);
+
+        optimizer.update(DenseMatrix.make(new double[][] {{0.5}}), new double[] {0.25}, new double[] {-0.25}, 0);
+        assertEquals(1.5, rbm.getWeights().get(0, 0), DELTA);
+        assertEquals(0.25, rbm.getVisibleBias()[0], DELTA);
+        assertEquals(-0.25, rbm.getHiddenBias()[0], DELTA);
+    }
+
+    @Test
+    public void momentum() {
+        final RBM rbm = new RBM(DenseMatrix.make(new double[][] {{0.0}}));
+        final Optimizer optimizer = new Optimizer(new LearningParameters().setMomentum(0.5), rbm);
+
+        optimizer.update(DenseMatrix.make(new double[][] {{1.0}}), new double[] {1.0}, new double[] {0.0}, 0);
+        optimizer.update(DenseMatrix.make(new double[][] {{1.0}}), new double[] {1.0}, new double[] {0.0}, 1);
+        // second step is 1 + 0.5 * 1
+        assertEquals(2.5, rbm.getWeights().get(0, 0), DELTA);
+        assertEquals(2.5, rbm.getVisibleBias()[0], DELTA);
+    }
+
+    @Test
+    public void weightDecay() {
+        final RBM rbm = new RBM(FloatMatrix.make(1, 1));
+        rbm.getWeights().set(0, 0, 1.0);
+        rbm.getVisibleBias()[0] = 1.0;
+        final Optimizer optimizer = new Optimizer(new LearningParameters().setLearningRate(0.1).setWeightDecay(0.5), rbm);
+
+        optimizer.update(FloatMatrix.make(1, 1), new double[1], new double[1], 0);
+        assertEquals(0.95, rbm.getWeights().get(0, 0), 1e-6);
+        // biases are not decayed
+        assertEquals(1.0, rbm.getVisibleBias()[0], DELTA);
+    }
+
+    @Test
+    public void adaptive() {
+        final LearningParameters learningParameters = new LearningParameters().setLearningRate(0.1).setAdaptiveLearningRate(AdaptiveLearningRate.ADAGRAD).setAdaptiveEpsilon(0.0);
+        final RBM rbm = new RBM(DenseMatrix.make(new double[][] {{0.0, 0.0}}));
+        final Optimizer optimizer = new Optimizer(learningParameters, rbm);
+        assertEquals(1.0, optimizer.gradientScale(0), DELTA);
+
+        // steps are normalized per weight, whatever the size of its gradient
+        optimizer.update(DenseMatrix.make(new double[][] {{4.0, -0.01}}), new double[1], new double[2], 0);
+        assertEquals(0.1, rbm.getWeights().get(0, 0), DELTA);
+        assertEquals(-0.1, rbm.getWeights().get(0, 1), DELTA);
+        // and shrink as squares accumulate, 4 / sqrt(32)
+        optimizer.update(DenseMatrix.make(new double[][] {{4.0, 0.0}}), new double[1], new double[2], 1);
+        assertEquals(0.1 + 0.1 / Math.sqrt(2.0), rbm.getWeights().get(0, 0), DELTA);
+
+        // rmsprop, first step is the gradient over sqrt((1 - decay) * gradient^2)
+        learningParameters.setAdaptiveLearningRate(AdaptiveLearningRate.RMSPROP).setRmsDecay(0.75);
+        final RBM rmsRBM = new RBM(DenseMatrix.make(new double[][] {{0.0}}));
+        new Optimizer(learningParameters, rmsRBM).update(DenseMatrix.make(new double[][] {{3.0}}), new double[1], new double[1], 0);
+        assertEquals(0.1 / Math.sqrt(0.25), rmsRBM.getWeights().get(0, 0), DELTA);
+    }
+
+    @Test
+    public void floatBuffers() {
+        final LearningParameters learningParameters = new LearningParameters().setLearningRate(0.1).setMomentum(0.5)
+                .setAdaptiveLearningRate(AdaptiveLearningRate.ADAGRAD).setAdaptiveEpsilon(0.0);
+
+        // float weights get float velocity and squared gradient buffers, half the size of double ones
+        final RBM largeRBM = new RBM(FloatMatrix.make(100, 100));
+        final long allocated = Allocations.allocatedBytes();
+        new Optimizer(learningParameters, largeRBM);
+        assertTrue(Allocations.allocatedBytes() - allocated < 2 * 100 * 100 * 8);
+
+        // and step as double ones do
+        final RBM rbm = new RBM(FloatMatrix.make(1, 2));
+        final Optimizer optimizer = new Optimizer(learningParameters, rbm);
+        optimizer.update(FloatMatrix.make(new double[][] {{4.0, -0.01}}), new double[1], new double[2], 0);
+        optimizer.update(FloatMatrix.make(new double[][] {{4.0, 0.0}}), new double[1], new double[2], 1);
+        // 0.1, then 0.1 / sqrt(2) + 0.5 * 0.1
+        assertTrue(rbm.getWeights() instanceof FloatMatrix);
+        assertEquals(0.1 + 0.1 / Math.sqrt(2.0) + 0.05, rbm.getWeights().get(0, 0), 1e-6);
+        assertEquals(-0.1 - 0.05, rbm.getWeights().get(0, 1), 1e-6);
+    }
+
+    @Test
+    public void schedules() {
+        assertEquals(0.1, new LearningParameters().setLearningRate(0.1).getLearningRate(500), DELTA);
+        assertEquals(0.025, new StepSchedule(100, 0.5).learningRate(0.1, 250, 1000), DELTA);
+        assertEquals(0.1 * Math.pow(0.99, 10), new ExponentialSchedule(0.99).learningRate(0.1, 10, 1000), DELTA);
+        assertEquals(0.1, new CosineSchedule(0.01).learningRate(0.1, 0, 1000), DELTA);
+        assertEquals(0.055, new CosineSchedule(0.01).learningRate(0.1, 500, 1000), DELTA);
+        assertEquals(0.01, new CosineSchedule(0.01).learningRate(0.1, 1000, 1000), DELTA);
+    }
+
+    @Test
+    public void learnDoesNotAllocatePerEpoch() {
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(1).setLog(false).setSeed(4)
+                .setMomentum(0.9).setWeightDecay(0.0001)
+                .setAdaptiveLearningRate(AdaptiveLearningRate.RMSPROP).setLearningRateSchedule(new CosineSchedule());
+        final RBM rbm = new RandomRBMFactory(4).build(8, 4);
+        final Matrix trainingData = DenseMatrix.random(16, 8).apply(new Round(0.5));
+        final ContrastiveDivergence contrastiveDivergence = new ContrastiveDivergence(learningParameters);
+
+        // first pass builds the workspace and optimizer buffers
+        contrastiveDivergence.learn(rbm, trainingData);
+
+        // a learn call allocates the same for one epoch as for 500, less than a byte per epoch
+        long allocated = Allocations.allocatedBytes();
+        contrastiveDivergence.learn(rbm, trainingData);
+        final long oneEpoch = Allocations.allocatedBytes() - allocated;
+        learningParameters.setEpochs(500);
+        allocated = Allocations.allocatedBytes();
+        contrastiveDivergence.learn(rbm, trainingData);
+        assertTrue(Allocations.allocatedBytes() - allocated - oneEpoch < 500);
+    }
+
+}
@@ -0,0 +1,112 @@
+package nn.rbm.learn;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import math.random.RandomSource;
+import nn.rbm.RBM;
+import nn.rbm.factory.RandomFloatRBMFactory;
+import nn.rbm.factory.RandomRBMFactory;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import utils.Clock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestParallelContrastiveDivergence {
+
+    private static final Logger LOGGER = Logger.getLogger(TestParallelContrastiveDivergence.class);
+
+    @Test
+    public void learns() {
+        // two repeated patterns, reconstruction error should drop well below that of the random initial weights
+        final Matrix dataSet = DenseMatrix.make(512, 32);
+        for(int i = 0; i < dataSet.rows(); i++) {
+            for(int j = 0; j < dataSet.columns(); j++) {
+                dataSet.set(i, j, (i % 2 == 0) == (j < 16) ? 1.0 : 0.0);
+            }
+        }
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(200).setLog(false).setSeed(7);
+        final RBM rbm = new RandomRBMFactory(42).build(32, 8);
+        final ParallelContrastiveDivergence contrastiveDivergence = new ParallelContrastiveDivergence(learningParameters, 4);
+
+        final double before = reconstructionError(contrastiveDivergence, rbm, dataSet);
+        contrastiveDivergence.learn(rbm, dataSet);
+        final double after = reconstructionError(contrastiveDivergence, rbm, dataSet);
+        LOGGER.info("Reconstruction error before: " + before + ", after: " + after);
+        assertTrue(after < before / 10);
+    }
+
+    @Test
+    public void learnsWithMomentum() {
+        // shard associations are reduced into one gradient before the momentum step
+        final Matrix dataSet = DenseMatrix.make(512, 32);
+        for(int i = 0; i < dataSet.rows(); i++) {
+            for(int j = 0; j < dataSet.columns(); j++) {
+                dataSet.set(i, j, (i % 2 == 0) == (j < 16) ? 1.0 : 0.0);
+            }
+        }
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(200).setLog(false).setSeed(7).setMomentum(0.5).setWeightDecay(0.0001);
+        final RBM rbm = new RandomRBMFactory(42).build(32, 8);
+        final ParallelContrastiveDivergence contrastiveDivergence = new ParallelContrastiveDivergence(learningParameters, 4);
+
+        final double before = reconstructionError(contrastiveDivergence, rbm, dataSet);
+        contrastiveDivergence.learn(rbm, dataSet);
+        final double after = reconstructionError(contrastiveDivergence, rbm, dataSet);
+        assertTrue(after < before / 10);
+    }
+
+    @Test
+    public void learnsWithPersistentChains() {
+        final Matrix dataSet = DenseMatrix.make(512, 32);
+        for(int i = 0; i < dataSet.rows(); i++) {
+            for(int j = 0; j < dataSet.columns(); j++) {
+                dataSet.set(i, j, (i % 2 == 0) == (j < 16) ? 1.0 : 0.0);
+            }
+        }
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(200).setLog(false).setSeed(7).setFantasyParticles(100).setGibbsSteps(2);
+        final RBM rbm = new RandomRBMFactory(42).build(32, 8);
+        final ParallelContrastiveDivergence contrastiveDivergence = new ParallelContrastiveDivergence(learningParameters, 4);
+
+        final double before = reconstructionError(contrastiveDivergence, rbm, dataSet);
+        contrastiveDivergence.learn(rbm, dataSet);
+        final double after = reconstructionError(contrastiveDivergence, rbm, dataSet);
+        assertTrue(after < before / 10);
+    }
+
+    @Test
+    public void seededIsReproducible() {
+        final Matrix dataSet = DenseMatrix.random(300, 20, new RandomSource(1)).apply(new Round(0.5));
+        final Matrix[] weights = new Matrix[2];
+        for(int i = 0; i < weights.length; i++) {
+            final RBM rbm = new RandomFloatRBMFactory(42).build(20, 10);
+            new ParallelContrastiveDivergence(new LearningParameters().setEpochs(20).setLog(false).setSeed(7), 4).learn(rbm, dataSet);
+            weights[i] = rbm.getWeights();
+        }
+        assertEquals(weights[0].data(), weights[1].data());
+    }
+
+    @Test
+    public void serialVsParallel() {
+        final Matrix dataSet = DenseMatrix.random(1024, 256).apply(new Round(0.5));
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(5).setLog(false);
+
+        final Clock clock = new Clock();
+        clock.start();
+        new ContrastiveDivergence(learningParameters).learn(new RandomRBMFactory().build(256, 128), dataSet);
+        final long serial = clock.elapsedMillis();
+
+        final ParallelContrastiveDivergence parallelContrastiveDivergence = new ParallelContrastiveDivergence(learningParameters);
+        clock.reset();
+        parallelContrastiveDivergence.learn(new RandomRBMFactory().build(256, 128), dataSet);
+        final long parallel = clock.elapsedMillis();
+        LOGGER.info("Serial: " + serial + "ms, Parallel (" + parallelContrastiveDivergence.getParallelism() + " threads): " + parallel + "ms");
+    }
+
+    private static double reconstructionError(final ContrastiveDivergence contrastiveDivergence, final RBM rbm, final Matrix dataSet) {
+        final Matrix visible = contrastiveDivergence.runHidden(rbm, contrastiveDivergence.runVisible(rbm, dataSet));
+        return dataSet.copy().subtract(visible).pow(2).sum();
+    }
+
+}
@@ -0,0 +1,111 @@
+package nn.rbm.learn;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.learn.schedule.ExponentialSchedule;
+import nn.rbm.learn.schedule.LearningRateSchedule;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import utils.Clock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPipelinedDeepContrastiveDivergence {
+
+    private static final Logger LOGGER = Logger.getLogger(TestPipelinedDeepContrastiveDivergence.class);
+
+    private static final LayerParameters[] LAYER_PARAMETERS = new LayerParameters[] {
+            new LayerParameters().setNumRBMS(4).setVisibleUnitsPerRBM(16).setHiddenUnitsPerRBM(10),    // 64 in, 40 out
+            new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(20).setHiddenUnitsPerRBM(10),    // 40 in, 20 out
+            new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(20).setHiddenUnitsPerRBM(20)     // 20 in, 20 out
+    };
+
+    @Test
+    public void serialVsPipelined() {
+        // four repeated patterns
+        final Matrix dataSet = DenseMatrix.make(40, 64);
+        for(int i = 0; i < dataSet.rows(); i++) {
+            for(int j = 0; j < dataSet.columns(); j++) {
+                dataSet.set(i, j, j / 16 == i % 4 ? 1.0 : 0.0);
+            }
+        }
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(1000).setLog(false);
+        final double initialError = reconstructionError(new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(42)), dataSet);
+
+        final Clock clock = new Clock();
+        final DeepRBM serial = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(42));
+        clock.start();
+        new DeepContrastiveDivergence(learningParameters).learn(serial, dataSet);
+        final long serialTime = clock.elapsedMillis();
+        final double serialError = reconstructionError(serial, dataSet);
+
+        final DeepRBM pipelined = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(42));
+        clock.reset();
+        new PipelinedDeepContrastiveDivergence(learningParameters, 200, 50).learn(pipelined, dataSet);
+        final long pipelinedTime = clock.elapsedMillis();
+        final double pipelinedError = reconstructionError(pipelined, dataSet);
+
+        LOGGER.info("Initial error: " + initialError);
+        LOGGER.info("Serial: " + serialTime + "ms, error: " + serialError);
+        LOGGER.info("Pipelined: " + pipelinedTime + "ms, error: " + pipelinedError);
+        assertTrue(pipelinedError < initialError);
+    }
+
+    @Test
+    public void scheduleRunsOverAllEpochs() {
+        final Matrix dataSet = DenseMatrix.random(20, 64).apply(new Round(0.5));
+        final RecordingSchedule schedule = new RecordingSchedule(new ExponentialSchedule(0.99));
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(200).setLog(false).setSeed(1).setLearningRateSchedule(schedule);
+        new PipelinedDeepContrastiveDivergence(learningParameters, 50, 25).learn(new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(1)), dataSet);
+
+        // the chunks see the epochs of the whole run, so the rate keeps decaying past the first refresh
+        assertEquals(200, schedule.epochs.get());
+        assertEquals(199, schedule.lastEpoch.get());
+        assertTrue(schedule.minRate < 0.1 * Math.pow(0.99, 150));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refreshLongerThanWarmup() {
+        new PipelinedDeepContrastiveDivergence(new LearningParameters(), 10, 20);
+    }
+
+    // records the epochs asked for, layers train concurrently
+    private static class RecordingSchedule implements LearningRateSchedule {
+
+        private final LearningRateSchedule schedule;
+
+        private final AtomicInteger epochs = new AtomicInteger();
+
+        private final AtomicInteger lastEpoch = new AtomicInteger();
+
+        private double minRate = Double.POSITIVE_INFINITY;
+
+        RecordingSchedule(final LearningRateSchedule schedule) {
+            this.schedule = schedule;
+        }
+
+        @Override
+        public synchronized double learningRate(final double baseRate, final int epoch, final int epochs) {
+            this.epochs.set(epochs);
+            lastEpoch.set(Math.max(lastEpoch.get(), epoch));
+            final double rate = schedule.learningRate(baseRate, epoch, epochs);
+            minRate = Math.min(minRate, rate);
+            return rate;
+        }
+
+    }
+
+    private static double reconstructionError(final DeepRBM deepRBM, final Matrix dataSet) {
+        final DeepContrastiveDivergence deepContrastiveDivergence = new DeepContrastiveDivergence(new LearningParameters());
+        final Matrix visible = deepContrastiveDivergence.runHidden(deepRBM, deepContrastiveDivergence.runVisible(deepRBM, dataSet));
+        return dataSet.copy().subtract(visible).pow(2).sum() / dataSet.rows();
+    }
+
+}
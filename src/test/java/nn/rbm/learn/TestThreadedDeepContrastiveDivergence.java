@@ -3,13 +3,22 @@ package nn.rbm.learn;
 import data.image.Image;
 import data.image.decode.Matrix24BitImageDecoder;
 import data.image.encode.Matrix24BitImageEncoder;
+import math.DenseMatrix;
 import math.Matrix;
+import math.functions.Round;
 import nn.rbm.deep.DeepRBM;
 import nn.rbm.deep.LayerParameters;
 import nn.rbm.factory.RandomRBMFactory;
 import org.apache.log4j.Logger;
 import org.junit.Test;
 import utils.Clock;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * Created by kenny on 5/12/14.
@@ -20,6 +29,11 @@ public class TestThreadedDeepContrastiveDivergence {
 
     private static final RandomRBMFactory RBM_FACTORY = new RandomRBMFactory();
 
+    // a layer of a single rbm, unsplit it keeps one of the executor's threads busy
+    private static final LayerParameters[] SINGLE_RBM_LAYER = new LayerParameters[] {
+            new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(64).setHiddenUnitsPerRBM(32)
+    };
+
     @Test
     public void singleVsMultiThread() {
         // 100 * 63 * 24 input (151200)
@@ -72,4 +86,134 @@ public class TestThreadedDeepContrastiveDivergence {
         outImage2.save("/tmp/fighter_rendered_small_24bit_deep_multithread.bmp");
     }
 
+    @Test
+    public void seededIsIndependentOfThreads() {
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+                new LayerParameters().setNumRBMS(4).setVisibleUnitsPerRBM(10).setHiddenUnitsPerRBM(5),     // 40 in, 20 out
+                new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(10).setHiddenUnitsPerRBM(5),     // 20 in, 10 out
+                new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(10).setHiddenUnitsPerRBM(4)      // 10 in, 4 out
+        };
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(50).setLog(false).setSeed(7);
+        final Matrix dataSet = DenseMatrix.random(8, 40).apply(new Round(0.5));
+
+        final DeepRBM serial = new DeepRBM(layerParameters, new RandomRBMFactory(42));
+        new DeepContrastiveDivergence(learningParameters).learn(serial, dataSet);
+
+        for(int threads : new int[] {1, 4}) {
+            final DeepRBM threaded = new DeepRBM(layerParameters, new RandomRBMFactory(42));
+            new MultiThreadedDeepContrastiveDivergence(learningParameters, threads).learn(threaded, dataSet);
+            for(int layer = 0; layer < layerParameters.length; layer++) {
+                for(int r = 0; r < layerParameters[layer].getNumRBMS(); r++) {
+                    assertEquals(serial.getRbmLayers()[layer].getRBM(r).getWeights().data(), threaded.getRbmLayers()[layer].getRBM(r).getWeights().data());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unequalRBMsAreBalanced() {
+        // a layer of a single rbm leaves all but one thread idle unless the rbm is split
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+                new LayerParameters().setNumRBMS(4).setVisibleUnitsPerRBM(8).setHiddenUnitsPerRBM(4),
+                new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(16).setHiddenUnitsPerRBM(8)
+        };
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(20).setLog(false).setSeed(3);
+        final Matrix dataSet = DenseMatrix.random(256, 32).apply(new Round(0.5));
+
+        final DeepRBM first = new DeepRBM(layerParameters, new RandomRBMFactory(42));
+        final MultiThreadedDeepContrastiveDivergence multiThreadedDeepContrastiveDivergence = new MultiThreadedDeepContrastiveDivergence(learningParameters, 4);
+        multiThreadedDeepContrastiveDivergence.learn(first, dataSet);
+
+        final List<MultiThreadedDeepContrastiveDivergence.LayerStatistics> statistics = multiThreadedDeepContrastiveDivergence.getStatistics();
+        assertEquals(2, statistics.size());
+        assertEquals(0, statistics.get(0).getSplitRBMs());
+        assertEquals(1, statistics.get(1).getSplitRBMs());
+        for(MultiThreadedDeepContrastiveDivergence.LayerStatistics layerStatistics : statistics) {
+            LOGGER.info(layerStatistics);
+        }
+
+        // reproducible for the same number of threads, also when split
+        final DeepRBM second = new DeepRBM(layerParameters, new RandomRBMFactory(42));
+        new MultiThreadedDeepContrastiveDivergence(learningParameters, 4).learn(second, dataSet);
+        for(int layer = 0; layer < layerParameters.length; layer++) {
+            for(int r = 0; r < layerParameters[layer].getNumRBMS(); r++) {
+                assertEquals(first.getRbmLayers()[layer].getRBM(r).getWeights().data(), second.getRbmLayers()[layer].getRBM(r).getWeights().data());
+            }
+        }
+    }
+
+    @Test
+    public void idleTimeIsAgainstTheExecutorsThreads() {
+        // balanced for a single thread, the rbm is not split and the executor's other threads idle
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(20).setLog(false).setSeed(3);
+        final WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        try {
+            final MultiThreadedDeepContrastiveDivergence multiThreadedDeepContrastiveDivergence = new MultiThreadedDeepContrastiveDivergence(learningParameters, executor, 1);
+            multiThreadedDeepContrastiveDivergence.learn(new DeepRBM(SINGLE_RBM_LAYER, new RandomRBMFactory(42)), DenseMatrix.random(512, 64).apply(new Round(0.5)));
+
+            final MultiThreadedDeepContrastiveDivergence.LayerStatistics statistics = multiThreadedDeepContrastiveDivergence.getStatistics().get(0);
+            LOGGER.info(statistics);
+            assertEquals(0, statistics.getSplitRBMs());
+            assertEquals(4, statistics.getThreads());
+            assertTrue(statistics.getIdleMillis() >= 3 * statistics.getElapsedMillis());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void splitRBMsLeaveLessIdleTime() {
+        // shards only overlap in time with more than one core
+        final int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores > 1);
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(20).setLog(false).setSeed(3);
+        final Matrix dataSet = DenseMatrix.random(512, 64).apply(new Round(0.5));
+        final WorkStealingExecutor executor = new WorkStealingExecutor(cores);
+        try {
+            final MultiThreadedDeepContrastiveDivergence unsplit = new MultiThreadedDeepContrastiveDivergence(learningParameters, executor, 1);
+            // warm up first, so that the two runs are timed alike
+            unsplit.learn(new DeepRBM(SINGLE_RBM_LAYER, new RandomRBMFactory(42)), dataSet);
+            unsplit.learn(new DeepRBM(SINGLE_RBM_LAYER, new RandomRBMFactory(42)), dataSet);
+            final MultiThreadedDeepContrastiveDivergence split = new MultiThreadedDeepContrastiveDivergence(learningParameters, executor, cores);
+            split.learn(new DeepRBM(SINGLE_RBM_LAYER, new RandomRBMFactory(42)), dataSet);
+
+            final MultiThreadedDeepContrastiveDivergence.LayerStatistics unsplitStatistics = unsplit.getStatistics().get(0);
+            final MultiThreadedDeepContrastiveDivergence.LayerStatistics splitStatistics = split.getStatistics().get(0);
+            LOGGER.info(unsplitStatistics);
+            LOGGER.info(splitStatistics);
+            assertEquals(0, unsplitStatistics.getSplitRBMs());
+            assertEquals(1, splitStatistics.getSplitRBMs());
+            assertTrue(splitStatistics.getIdleMillis() < unsplitStatistics.getIdleMillis());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelInferenceMatchesSerial() {
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+                new LayerParameters().setNumRBMS(4).setVisibleUnitsPerRBM(10).setHiddenUnitsPerRBM(5),
+                new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(10).setHiddenUnitsPerRBM(6)
+        };
+        final LearningParameters learningParameters = new LearningParameters().setEpochs(5).setLog(false).setSeed(11);
+        // several row blocks per rbm
+        final Matrix dataSet = DenseMatrix.random(600, 40).apply(new Round(0.5));
+        final DeepRBM deepRBM = new DeepRBM(layerParameters, new RandomRBMFactory(42));
+        new DeepContrastiveDivergence(learningParameters).learn(deepRBM, dataSet);
+
+        final DeepContrastiveDivergence serial = new DeepContrastiveDivergence(learningParameters);
+        final MultiThreadedDeepContrastiveDivergence parallel = new MultiThreadedDeepContrastiveDivergence(learningParameters, 4);
+
+        final Matrix serialHidden = serial.runVisible(deepRBM, dataSet);
+        final Matrix parallelHidden = parallel.runVisible(deepRBM, dataSet);
+        assertEquals(600, parallelHidden.rows());
+        assertEquals(12, parallelHidden.columns());
+        assertEquals(serialHidden.data(), parallelHidden.data());
+
+        final Matrix serialVisible = serial.runHidden(deepRBM, serialHidden);
+        final Matrix parallelVisible = parallel.runHidden(deepRBM, parallelHidden);
+        assertEquals(40, parallelVisible.columns());
+        assertEquals(serialVisible.data(), parallelVisible.data());
+    }
+
 }
@@ -0,0 +1,154 @@
+package save;
+
+import math.FloatMatrix;
+import math.Matrix;
+import nn.rbm.RBM;
+import nn.rbm.factory.RandomFloatRBMFactory;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.save.BinaryRBMPersister;
+import nn.rbm.save.RBMFormatConverter;
+import nn.rbm.save.RBMPersister;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestBinaryRBMPersister {
+
+    private static final double DELTA = 0.0;
+
+    private final BinaryRBMPersister binaryRBMPersister = new BinaryRBMPersister();
+
+    @Test
+    public void saveLoad() {
+        // more weights than fit in one write chunk
+        final RBM rbm = new RandomRBMFactory(1).build(100, 130);
+        rbm.getVisibleBias()[3] = 0.25;
+        rbm.getHiddenBias()[129] = -1.5;
+        binaryRBMPersister.save(rbm, "/tmp/rbm.bin");
+
+        assertEquals(BinaryRBMPersister.size(rbm), new File("/tmp/rbm.bin").length());
+        assertTrue(BinaryRBMPersister.isBinary("/tmp/rbm.bin"));
+        final RBM loaded = binaryRBMPersister.load("/tmp/rbm.bin");
+        assertMatrixEquals(rbm.getWeights(), loaded.getWeights());
+        assertArrayEquals(rbm.getVisibleBias(), loaded.getVisibleBias(), DELTA);
+        assertArrayEquals(rbm.getHiddenBias(), loaded.getHiddenBias(), DELTA);
+    }
+
+    @Test
+    public void saveLoadFloat() {
+        final RBM rbm = new RandomFloatRBMFactory(2).build(7, 3);
+        binaryRBMPersister.save(rbm, "/tmp/rbm_float.bin");
+
+        assertEquals(BinaryRBMPersister.HEADER_BYTES + (7 * 3 + 7 + 3) * 4, new File("/tmp/rbm_float.bin").length());
+        final RBM loaded = binaryRBMPersister.load("/tmp/rbm_float.bin");
+        assertTrue(loaded.getWeights() instanceof FloatMatrix);
+        assertMatrixEquals(rbm.getWeights(), loaded.getWeights());
+    }
+
+    @Test
+    public void saveLoadView() {
+        // views are written cell by cell
+        final RBM full = new RandomRBMFactory(3).build(6, 4);
+        final RBM rbm = new RBM(full.getWeights().viewRows(2, 3));
+        binaryRBMPersister.save(rbm, "/tmp/rbm_view.bin");
+        assertMatrixEquals(rbm.getWeights(), binaryRBMPersister.load("/tmp/rbm_view.bin").getWeights());
+    }
+
+    @Test
+    public void readFromChannel() throws IOException {
+        // rbms one after the other, the second with more float weights than fit in one read chunk
+        final RBM first = new RandomRBMFactory(5).build(3, 2);
+        final RBM second = new RandomFloatRBMFactory(6).build(150, 130);
+        second.getHiddenBias()[129] = 0.75;
+        try(RandomAccessFile file = new RandomAccessFile("/tmp/rbm_channel.bin", "rw")) {
+            file.setLength(0);
+            binaryRBMPersister.write(first, file.getChannel());
+            binaryRBMPersister.write(second, file.getChannel());
+
+            final RBM loaded = binaryRBMPersister.read(file.getChannel(), BinaryRBMPersister.size(first));
+            assertTrue(loaded.getWeights() instanceof FloatMatrix);
+            assertMatrixEquals(second.getWeights(), loaded.getWeights());
+            assertArrayEquals(second.getHiddenBias(), loaded.getHiddenBias(), DELTA);
+            assertMatrixEquals(first.getWeights(), binaryRBMPersister.read(file.getChannel(), 0).getWeights());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncated() throws IOException {
+        binaryRBMPersister.save(new RandomRBMFactory(7).build(4, 3), "/tmp/rbm_truncated.bin");
+        try(RandomAccessFile file = new RandomAccessFile("/tmp/rbm_truncated.bin", "rw")) {
+            file.setLength(file.length() - 8);
+            binaryRBMPersister.read(file.getChannel(), 0);
+        }
+    }
+
+    @Test
+    public void convert() {
+        final RBM rbm = new RandomRBMFactory(4).build(5, 2);
+        new RBMPersister().save(rbm, "/tmp/rbm_convert.csv");
+        assertFalse(BinaryRBMPersister.isBinary("/tmp/rbm_convert.csv"));
+
+        final RBMFormatConverter converter = new RBMFormatConverter();
+        assertTrue(converter.convert("/tmp/rbm_convert.csv", "/tmp/rbm_convert.bin"));
+        assertMatrixEquals(rbm.getWeights(), binaryRBMPersister.load("/tmp/rbm_convert.bin").getWeights());
+
+        assertTrue(converter.convert("/tmp/rbm_convert.bin", "/tmp/rbm_convert2.csv"));
+        assertMatrixEquals(rbm.getWeights(), new RBMPersister().load("/tmp/rbm_convert2.csv").getWeights());
+    }
+
+    @Test
+    public void loadVersion1() throws IOException {
+        // written before biases were saved
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryRBMPersister.HEADER_BYTES + 2 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(BinaryRBMPersister.MAGIC).putInt(1).putInt(BinaryRBMPersister.FLOAT64).putInt(2).putInt(1);
+        buffer.position(BinaryRBMPersister.HEADER_BYTES);
+        buffer.putDouble(0.5).putDouble(-0.5);
+        Files.write(Paths.get("/tmp/rbm_v1.bin"), buffer.array());
+
+        final RBM rbm = binaryRBMPersister.load("/tmp/rbm_v1.bin");
+        assertEquals(-0.5, rbm.getWeights().get(1, 0), DELTA);
+        assertArrayEquals(new double[2], rbm.getVisibleBias(), DELTA);
+        assertArrayEquals(new double[1], rbm.getHiddenBias(), DELTA);
+    }
+
+    @Test
+    public void notBinary() throws IOException {
+        try(FileWriter writer = new FileWriter("/tmp/rbm_not_binary.bin")) {
+            writer.write("5,2\n");
+        }
+        assertNull(binaryRBMPersister.load("/tmp/rbm_not_binary.bin"));
+    }
+
+    @Test(expected = IOException.class)
+    public void tooLarge() throws IOException {
+        // 65536 x 65536 weights overflow an int
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryRBMPersister.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(BinaryRBMPersister.MAGIC).putInt(BinaryRBMPersister.VERSION).putInt(BinaryRBMPersister.FLOAT32).putInt(65536).putInt(65536);
+        buffer.rewind();
+        binaryRBMPersister.read(buffer);
+    }
+
+    private static void assertMatrixEquals(final Matrix expected, final Matrix actual) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for(int i = 0; i < expected.rows(); i++) {
+            for(int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), DELTA);
+            }
+        }
+    }
+
+}
@@ -8,7 +8,11 @@ import nn.rbm.factory.RandomRBMFactory;
 import nn.rbm.save.DeepRBMPersister;
 import org.junit.Test;
 
+import java.io.FileWriter;
+import java.io.IOException;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * Created by kenny on 5/22/14.
@@ -50,4 +54,38 @@ public class TestDeepRBMPersister {
         }
     }
 
+    @Test
+    public void loadSingleRBM() {
+        final LayerParameters[] layerParameters = new LayerParameters[] {
+            new LayerParameters().setNumRBMS(3).setVisibleUnitsPerRBM(4).setHiddenUnitsPerRBM(2),
+            new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(3).setHiddenUnitsPerRBM(5),
+        };
+
+        final DeepRBMPersister deepRBMPersister = new DeepRBMPersister();
+        final DeepRBM deepRBM = new DeepRBM(layerParameters, new RandomRBMFactory());
+        deepRBMPersister.save(deepRBM, "/tmp/deep_rbm_single.csv");
+
+        for(int l = 0; l < layerParameters.length; l++) {
+            for(int r = 0; r < layerParameters[l].getNumRBMS(); r++) {
+                final Matrix rbmWeights = deepRBM.getRbmLayers()[l].getRBM(r).getWeights();
+                final Matrix rbm2Weights = deepRBMPersister.loadRBM("/tmp/deep_rbm_single.csv", l, r).getWeights();
+                assertEquals(rbmWeights.rows(), rbm2Weights.rows());
+                assertEquals(rbmWeights.columns(), rbm2Weights.columns());
+                for(int i = 0; i < rbmWeights.rows(); i++) {
+                    for(int j = 0; j < rbmWeights.columns(); j++) {
+                        assertEquals(rbmWeights.get(i, j), rbm2Weights.get(i, j), DELTA);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        try(FileWriter writer = new FileWriter("/tmp/deep_rbm_truncated.csv")) {
+            writer.write("1,2,2\n2,2\n0.5,0.5\n");
+        }
+        assertNull(new DeepRBMPersister().load("/tmp/deep_rbm_truncated.csv"));
+    }
+
 }
@@ -0,0 +1,139 @@
+package save;
+
+import math.DenseMatrix;
+import math.Matrix;
+import math.functions.Round;
+import nn.rbm.RBM;
+import nn.rbm.deep.DeepRBM;
+import nn.rbm.deep.LayerParameters;
+import nn.rbm.factory.RandomRBMFactory;
+import nn.rbm.learn.DeepContrastiveDivergence;
+import nn.rbm.learn.LearningParameters;
+import nn.rbm.save.IndexedDeepRBMPersister;
+import nn.rbm.save.LazyDeepRBM;
+import org.junit.Test;
+import utils.concurrent.WorkStealingExecutor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestIndexedDeepRBMPersister {
+
+    private static final double DELTA = 0.0;
+
+    private static final LayerParameters[] LAYER_PARAMETERS = new LayerParameters[] {
+        new LayerParameters().setNumRBMS(3).setVisibleUnitsPerRBM(4).setHiddenUnitsPerRBM(2),
+        new LayerParameters().setNumRBMS(2).setVisibleUnitsPerRBM(3).setHiddenUnitsPerRBM(5),
+        new LayerParameters().setNumRBMS(1).setVisibleUnitsPerRBM(10).setHiddenUnitsPerRBM(2)
+    };
+
+    private final IndexedDeepRBMPersister persister = new IndexedDeepRBMPersister();
+
+    @Test
+    public void saveLoad() {
+        final DeepRBM deepRBM = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(1));
+        persister.save(deepRBM, "/tmp/deep_rbm.drbm");
+        assertDeepRBMEquals(deepRBM, persister.load("/tmp/deep_rbm.drbm"));
+    }
+
+    @Test
+    public void lazy() throws IOException {
+        final DeepRBM deepRBM = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(2));
+        persister.save(deepRBM, "/tmp/deep_rbm_lazy.drbm");
+
+        try(LazyDeepRBM lazyDeepRBM = persister.open("/tmp/deep_rbm_lazy.drbm", 2)) {
+            assertEquals(0, lazyDeepRBM.getResidentRBMs());
+            assertEquals(12, lazyDeepRBM.getVisibleSize());
+            assertEquals(2, lazyDeepRBM.getHiddenSize());
+
+            // only the requested rbm is read
+            assertMatrixEquals(deepRBM.getRbmLayers()[1].getRBM(1).getWeights(), lazyDeepRBM.getRbmLayers()[1].getRBM(1).getWeights());
+            assertEquals(1, lazyDeepRBM.getLoads());
+            lazyDeepRBM.getRbmLayers()[1].getRBM(1);
+            assertEquals(1, lazyDeepRBM.getLoads());
+
+            // bounded, the least recently used rbm is dropped and read again when needed
+            assertDeepRBMEquals(deepRBM, lazyDeepRBM);
+            assertEquals(2, lazyDeepRBM.getResidentRBMs());
+            final long loads = lazyDeepRBM.getLoads();
+            lazyDeepRBM.getRbmLayers()[0].getRBM(0);
+            assertEquals(loads + 1, lazyDeepRBM.getLoads());
+        }
+    }
+
+    @Test
+    public void lazyConcurrent() throws IOException {
+        final DeepRBM deepRBM = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(4));
+        persister.save(deepRBM, "/tmp/deep_rbm_concurrent.drbm");
+
+        final WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        try(final LazyDeepRBM lazyDeepRBM = persister.open("/tmp/deep_rbm_concurrent.drbm", 6)) {
+            final List<Callable<RBM[]>> readers = new ArrayList<>();
+            for(int reader = 0; reader < 8; reader++) {
+                readers.add(new Callable<RBM[]>() {
+                    @Override
+                    public RBM[] call() {
+                        final RBM[] rbms = new RBM[6];
+                        for(int l = 0, i = 0; l < LAYER_PARAMETERS.length; l++) {
+                            for(int r = 0; r < LAYER_PARAMETERS[l].getNumRBMS(); r++, i++) {
+                                rbms[i] = lazyDeepRBM.getRbmLayers()[l].getRBM(r);
+                            }
+                        }
+                        return rbms;
+                    }
+                });
+            }
+            final List<RBM[]> read = executor.invokeAll(readers);
+
+            // every rbm is read from the file once, readers asking for it meanwhile wait for that load
+            assertEquals(6, lazyDeepRBM.getLoads());
+            for(RBM[] rbms : read) {
+                assertArrayEquals(read.get(0), rbms);
+            }
+            assertDeepRBMEquals(deepRBM, lazyDeepRBM);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void lazyInference() throws IOException {
+        final LearningParameters learningParameters = new LearningParameters().setSeed(5).setLog(false);
+        final DeepRBM deepRBM = new DeepRBM(LAYER_PARAMETERS, new RandomRBMFactory(3));
+        persister.save(deepRBM, "/tmp/deep_rbm_inference.drbm");
+        final Matrix dataSet = DenseMatrix.random(20, 12).apply(new Round(0.5));
+
+        final Matrix expected = new DeepContrastiveDivergence(learningParameters).runVisible(deepRBM, dataSet);
+        try(LazyDeepRBM lazyDeepRBM = persister.open("/tmp/deep_rbm_inference.drbm", 1)) {
+            assertMatrixEquals(expected, new DeepContrastiveDivergence(learningParameters).runVisible(lazyDeepRBM, dataSet));
+        }
+    }
+
+    private static void assertDeepRBMEquals(final DeepRBM expected, final DeepRBM actual) {
+        assertEquals(expected.getVisibleSize(), actual.getVisibleSize());
+        assertEquals(expected.getHiddenSize(), actual.getHiddenSize());
+        assertEquals(expected.getRbmLayers().length, actual.getRbmLayers().length);
+        for(int l = 0; l < expected.getRbmLayers().length; l++) {
+            assertEquals(expected.getRbmLayers()[l].size(), actual.getRbmLayers()[l].size());
+            for(int r = 0; r < expected.getRbmLayers()[l].size(); r++) {
+                assertMatrixEquals(expected.getRbmLayers()[l].getRBM(r).getWeights(), actual.getRbmLayers()[l].getRBM(r).getWeights());
+            }
+        }
+    }
+
+    private static void assertMatrixEquals(final Matrix expected, final Matrix actual) {
+        assertEquals(expected.rows(), actual.rows());
+        assertEquals(expected.columns(), actual.columns());
+        for(int i = 0; i < expected.rows(); i++) {
+            for(int j = 0; j < expected.columns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), DELTA);
+            }
+        }
+    }
+
+}
@@ -6,6 +6,10 @@ import nn.rbm.factory.RandomRBMFactory;
 import nn.rbm.save.RBMPersister;
 import org.junit.Test;
 
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -19,6 +23,8 @@ public class TestRBMPersister {
     public void saveLoadTest() {
         final RBMPersister rbmPersister = new RBMPersister();
         final RBM rbm = new RandomRBMFactory().build(5, 2);
+        rbm.getVisibleBias()[4] = 0.75;
+        rbm.getHiddenBias()[0] = -0.125;
 
         rbmPersister.save(rbm, "/tmp/rbm.csv");
         final RBM rbm2 = rbmPersister.load("/tmp/rbm.csv");
@@ -34,6 +40,20 @@ public class TestRBMPersister {
                 assertEquals(rbmWeights.get(i, j), rbm2Weights.get(i, j), DELTA);
             }
         }
+        assertArrayEquals(rbm.getVisibleBias(), rbm2.getVisibleBias(), DELTA);
+        assertArrayEquals(rbm.getHiddenBias(), rbm2.getHiddenBias(), DELTA);
+    }
+
+    @Test
+    public void loadWithoutBiases() throws IOException {
+        // written before biases were saved
+        try(FileWriter writer = new FileWriter("/tmp/rbm_no_bias.csv")) {
+            writer.write("2,1\n0.5\n-0.5\n");
+        }
+        final RBM rbm = new RBMPersister().load("/tmp/rbm_no_bias.csv");
+        assertEquals(-0.5, rbm.getWeights().get(1, 0), DELTA);
+        assertArrayEquals(new double[2], rbm.getVisibleBias(), DELTA);
+        assertArrayEquals(new double[1], rbm.getHiddenBias(), DELTA);
     }
 
 }
@@ -0,0 +1,22 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated on the heap by the calling thread, for catching allocations in hot loops.
+ * Counts everything the thread allocates (matrices, Colt views, arrays, boxing), as reported by the JVM.
+ */
+public final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {}
+
+    /**
+     * @return bytes allocated by the calling thread so far
+     */
+    public static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,173 @@
+package utils.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestWorkStealingExecutor {
+
+    @Test
+    public void invokeAllInOrder() {
+        final WorkStealingExecutor executor = new WorkStealingExecutor(2);
+        final List<Callable<Integer>> callables = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            final int value = i;
+            callables.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Thread.sleep(10 - value);
+                    return value * value;
+                }
+            });
+        }
+        // threads are kept between calls
+        for(int run = 0; run < 3; run++) {
+            final List<Integer> results = executor.invokeAll(callables);
+            for(int i = 0; i < 10; i++) {
+                assertEquals(i * i, (int) results.get(i));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void failurePropagatesAndCancels() {
+        final WorkStealingExecutor executor = new WorkStealingExecutor(1);
+        final AtomicInteger ran = new AtomicInteger();
+        final Runnable failing = new Runnable() {
+            @Override
+            public void run() {
+                throw new UnsupportedOperationException("failed");
+            }
+        };
+        final Runnable slow = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(1000);
+                    ran.incrementAndGet();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            executor.runAll(Arrays.asList(failing, slow, slow, slow));
+            fail("Expected failure");
+        } catch(UnsupportedOperationException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(0, ran.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void checkedFailureIsWrapped() {
+        final WorkStealingExecutor executor = new WorkStealingExecutor(1);
+        try {
+            executor.invokeAll(Arrays.asList(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    throw new Exception("checked");
+                }
+            }));
+            fail("Expected failure");
+        } catch(IllegalStateException e) {
+            assertEquals("checked", e.getCause().getMessage());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void invokeAllWithoutExecutor() {
+        final Thread caller = Thread.currentThread();
+        final List<Callable<Boolean>> callables = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            callables.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread() == caller;
+                }
+            });
+        }
+        assertEquals(Arrays.asList(true, true, true), WorkStealingExecutor.invokeAll(null, callables));
+
+        // failures as on an executor
+        try {
+            WorkStealingExecutor.invokeAll(null, Arrays.asList(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    throw new Exception("checked");
+                }
+            }));
+            fail("Expected failure");
+        } catch(IllegalStateException e) {
+            assertEquals("checked", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void timing() {
+        final WorkStealingExecutor executor = new WorkStealingExecutor(1);
+        final List<TimedTask<Void>> tasks = executor.runAll(Arrays.asList(sleep(50), sleep(50)));
+        assertTrue(tasks.get(0).getElapsedMillis() >= 40);
+        assertTrue(tasks.get(1).getElapsedMillis() >= 40);
+        // the second task waited for the only thread
+        assertTrue(tasks.get(1).getQueuedMillis() >= 40);
+        executor.shutdown();
+    }
+
+    @Test
+    public void blockingTasksDoNotStarve() {
+        // more tasks waiting on each other than threads, the pool compensates for the managed blocks
+        final WorkStealingExecutor executor = new WorkStealingExecutor(1);
+        final int tasks = 4;
+        final CountDownLatch[] latches = new CountDownLatch[tasks];
+        for(int i = 0; i < tasks; i++) {
+            latches[i] = new CountDownLatch(1);
+        }
+        final List<Runnable> runnables = new ArrayList<>();
+        for(int i = tasks - 1; i >= 0; i--) {
+            final int task = i;
+            runnables.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if(task > 0) {
+                            WorkStealingExecutor.await(latches[task - 1]);
+                        }
+                        latches[task].countDown();
+                    } catch(InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+        executor.runAll(runnables);
+        assertEquals(0, latches[tasks - 1].getCount());
+        executor.shutdown();
+    }
+
+    private static Runnable sleep(final long millis) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(millis);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+}